@@ -0,0 +1,47 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.converter.SensorAggregateDTOConverter;
+import com.example.demo.converter.SensorDTOConverter;
+import com.example.demo.repository.HistoryRowRepository;
+import com.example.demo.service.impl.HistoryCacheServiceImpl;
+import com.example.demo.service.impl.LatestStateServiceImpl;
+import com.example.demo.service.impl.SensorRollupServiceImpl;
+import com.example.demo.service.impl.SensorServiceImpl;
+import org.springframework.boot.Banner;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+/**
+ * Context Spring tối thiểu cho benchmark tầng persistence: chỉ repository và service ghi/đọc sensor,
+ * chạy trên H2 in-memory (chế độ MySQL), không cần MQTT broker hay MySQL thật.
+ */
+@SpringBootConfiguration
+@EnableAutoConfiguration
+@EntityScan("com.example.demo.repository.entity")
+@EnableJpaRepositories("com.example.demo.repository")
+@Import({SensorServiceImpl.class, SensorRollupServiceImpl.class, LatestStateServiceImpl.class,
+        HistoryCacheServiceImpl.class, HistoryRowRepository.class, SensorDTOConverter.class,
+        SensorAggregateDTOConverter.class})
+public class BenchmarkApplication {
+
+    public static ConfigurableApplicationContext start() {
+        // Tham số dòng lệnh có độ ưu tiên cao nhất, ghi đè profile uat và dialect MySQL trong application.properties
+        return new SpringApplicationBuilder(BenchmarkApplication.class)
+                .web(WebApplicationType.NONE)
+                .bannerMode(Banner.Mode.OFF)
+                .logStartupInfo(false)
+                .run("--spring.profiles.active=benchmark",
+                        "--spring.datasource.url=jdbc:h2:mem:benchmark;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.jpa.hibernate.ddl-auto=create-drop",
+                        "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                        "--logging.level.root=WARN");
+    }
+}
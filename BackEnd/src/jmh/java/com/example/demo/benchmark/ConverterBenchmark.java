@@ -0,0 +1,68 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.converter.LedDTOConverter;
+import com.example.demo.converter.SensorDTOConverter;
+import com.example.demo.model.LedDTO;
+import com.example.demo.model.SensorDTO;
+import com.example.demo.repository.entity.LedEntity;
+import com.example.demo.repository.entity.SensorEntity;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chuyển entity sang DTO cho một trang lịch sử lớn.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConverterBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    private int pageSize;
+
+    private final SensorDTOConverter sensorDTOConverter = new SensorDTOConverter();
+    private final LedDTOConverter ledDTOConverter = new LedDTOConverter();
+
+    private List<SensorEntity> sensorPage;
+    private List<LedEntity> ledPage;
+
+    @Setup
+    public void setup() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        sensorPage = new ArrayList<>(pageSize);
+        ledPage = new ArrayList<>(pageSize);
+        for (int i = 0; i < pageSize; i++) {
+            SensorEntity sensor = new SensorEntity();
+            sensor.setId((long) i);
+            sensor.setDeviceId("node-" + (i % 8));
+            sensor.setTemperature(20 + i % 15);
+            // Một phần metric null để đi qua nhánh mặc định 0
+            sensor.setHumidity(i % 10 == 0 ? null : 50 + i % 40);
+            sensor.setLight(300 + i % 500);
+            sensor.setWind(i % 20);
+            sensor.setTimestamp(start.plusSeconds(i));
+            sensorPage.add(sensor);
+
+            LedEntity led = new LedEntity();
+            led.setId((long) i);
+            led.setDeviceName(i % 2 == 0 ? "fan" : "lightbulb");
+            led.setActive(i % 3 == 0 ? "off" : "on");
+            led.setTimestamp(start.plusSeconds(i));
+            ledPage.add(led);
+        }
+    }
+
+    @Benchmark
+    public List<SensorDTO> toSensorDTOs() {
+        return sensorDTOConverter.toSensorDTOs(sensorPage);
+    }
+
+    @Benchmark
+    public List<LedDTO> toLedDTOs() {
+        return ledDTOConverter.toLedDTOs(ledPage);
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.repository.entity.SensorEntity;
+import com.example.demo.service.SensorService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ghi một batch như writer của SensorIngestService: saveAll + cập nhật rollup trong một transaction.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SaveSensorDataBenchmark {
+
+    @Param({"1", "200"})
+    private int batchSize;
+
+    private ConfigurableApplicationContext context;
+    private SensorService sensorService;
+    private LocalDateTime clock;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = BenchmarkApplication.start();
+        sensorService = context.getBean(SensorService.class);
+        clock = LocalDateTime.of(2024, 1, 1, 0, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void saveBatch() {
+        // Entity mới cho mỗi lần gọi vì Hibernate gán id vào entity sau khi persist
+        List<SensorEntity> batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            clock = clock.plusSeconds(1);
+            SensorEntity sensor = new SensorEntity();
+            sensor.setDeviceId("node-" + (i % 8));
+            sensor.setTemperature(20 + i % 15);
+            sensor.setHumidity(50 + i % 40);
+            sensor.setLight(300 + i % 500);
+            sensor.setWind(i % 20);
+            sensor.setTimestamp(clock);
+            batch.add(sensor);
+        }
+        sensorService.saveSensorData(batch);
+    }
+}
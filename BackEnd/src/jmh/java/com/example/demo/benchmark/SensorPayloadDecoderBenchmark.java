@@ -0,0 +1,80 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.converter.SensorBinaryCodec;
+import com.example.demo.converter.SensorPayloadDecoder;
+import com.example.demo.repository.entity.SensorEntity;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Giải mã payload topic sensors như trong MqttConfig.handleSensorMessage: JSON và frame nhị phân
+ * (chỉ phần giải mã, không tạo SensorEntity, để so với -prof gc xem có cấp phát không).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SensorPayloadDecoderBenchmark {
+
+    private final SensorPayloadDecoder decoder = new SensorPayloadDecoder();
+    private final SensorBinaryCodec binaryCodec = new SensorBinaryCodec();
+
+    private byte[] numericPayload;
+    private byte[] stringPayload;
+    private byte[] binaryPayload;
+    private byte[] binaryBatchPayload;
+
+    @Setup
+    public void setup() {
+        numericPayload = "{\"temperature\":28,\"humidity\":65,\"light\":420,\"wind\":12,\"timestamp\":1717000000000}"
+                .getBytes(StandardCharsets.UTF_8);
+        // Firmware cũ gửi số dạng chuỗi và timestamp ISO
+        stringPayload = "{\"temperature\":\"28\",\"humidity\":\"65\",\"light\":\"420\",\"wind\":\"12\",\"timestamp\":\"2024-05-29T16:26:40\"}"
+                .getBytes(StandardCharsets.UTF_8);
+        binaryPayload = SensorBinaryCodec.encode(new long[]{1717000000000L},
+                new Integer[]{28}, new Integer[]{65}, new Integer[]{420}, new Integer[]{12});
+        // Node gom 10 bản ghi (1 giây một bản ghi) vào một frame
+        long[] times = new long[10];
+        Integer[] temperature = new Integer[10];
+        Integer[] humidity = new Integer[10];
+        Integer[] light = new Integer[10];
+        Integer[] wind = new Integer[10];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = 1717000000000L + i * 1000L;
+            temperature[i] = 28;
+            humidity[i] = 65 + i;
+            light[i] = 420 - i;
+            wind[i] = 12;
+        }
+        binaryBatchPayload = SensorBinaryCodec.encode(times, temperature, humidity, light, wind);
+    }
+
+    @Benchmark
+    public SensorEntity decodeNumeric() {
+        return decoder.decode(numericPayload);
+    }
+
+    @Benchmark
+    public SensorEntity decodeStrings() {
+        return decoder.decode(stringPayload);
+    }
+
+    @Benchmark
+    public int decodeBinary(Blackhole blackhole) {
+        return binaryCodec.decode(binaryPayload, (epochMillis, temperature, humidity, light, wind) -> {
+            blackhole.consume(epochMillis);
+            blackhole.consume(temperature + humidity + light + wind);
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(10)
+    public int decodeBinaryBatch(Blackhole blackhole) {
+        return binaryCodec.decode(binaryBatchPayload, (epochMillis, temperature, humidity, light, wind) -> {
+            blackhole.consume(epochMillis);
+            blackhole.consume(temperature + humidity + light + wind);
+        });
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.model.CachedPage;
+import com.example.demo.model.HistoryPageDTO;
+import com.example.demo.model.SensorRowDTO;
+import com.example.demo.repository.entity.SensorEntity;
+import com.example.demo.repository.specification.HistoryFilter;
+import com.example.demo.service.HistoryCacheService;
+import com.example.demo.service.SensorService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Xử lý tham số và truy vấn của SensorServiceImpl.getSensor trên H2 đã nạp sẵn dữ liệu,
+ * và cùng trang đó khi lấy từ HistoryCacheService như GET /sensor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SensorQueryBenchmark {
+
+    private static final int ROWS = 20_000;
+
+    private ConfigurableApplicationContext context;
+    private SensorService sensorService;
+    private HistoryCacheService historyCacheService;
+
+    private Map<String, Object> filterParams;
+    private Map<String, Object> cursorParams;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = BenchmarkApplication.start();
+        sensorService = context.getBean(SensorService.class);
+        historyCacheService = context.getBean(HistoryCacheService.class);
+
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        List<SensorEntity> batch = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            SensorEntity sensor = new SensorEntity();
+            sensor.setDeviceId("node-" + (i % 8));
+            sensor.setTemperature(20 + i % 15);
+            sensor.setHumidity(50 + i % 40);
+            sensor.setLight(300 + i % 500);
+            sensor.setWind(i % 20);
+            sensor.setTimestamp(start.plusSeconds(i));
+            batch.add(sensor);
+            if (batch.size() == 1000) {
+                sensorService.saveSensorData(batch);
+                batch = new ArrayList<>();
+            }
+        }
+
+        filterParams = new HashMap<>();
+        filterParams.put("deviceId", "node-3");
+        filterParams.put("temperatureMin", "25");
+        filterParams.put("from", "01/01/2024, 01:00:00");
+        filterParams.put("to", "01/01/2024, 04:00:00");
+        filterParams.put("pageSize", "50");
+        filterParams.put("pageNumber", "2");
+
+        cursorParams = new HashMap<>(filterParams);
+        cursorParams.remove("pageNumber");
+        cursorParams.put("paging", "cursor");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Specification<SensorEntity> buildFilter() {
+        // Chỉ phần parse tham số, không chạm DB
+        return HistoryFilter.<SensorEntity>of(filterParams)
+                .equal("deviceId")
+                .intRange("temperature")
+                .intRange("humidity")
+                .intRange("light")
+                .intRange("wind")
+                .timestampRange("timestamp")
+                .build();
+    }
+
+    @Benchmark
+    public HistoryPageDTO<SensorRowDTO> offsetPage() {
+        return sensorService.getSensor(filterParams);
+    }
+
+    @Benchmark
+    public HistoryPageDTO<SensorRowDTO> cursorPage() {
+        return sensorService.getSensor(cursorParams);
+    }
+
+    @Benchmark
+    public CachedPage<HistoryPageDTO<SensorRowDTO>> cachedOffsetPage() {
+        return historyCacheService.get(HistoryCacheService.SENSOR, filterParams, () -> sensorService.getSensor(filterParams));
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.demo.loadtest;
+
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Giả lập các thiết bị điều khiển: nhận lệnh trên topic "<device>" và trả lời "<device>/confirmation"
+ * sau confirmDelayMs. Một tỉ lệ lệnh được trả lời lỗi (failureRate) hoặc bị bỏ qua để backend timeout (dropRate).
+ */
+class DeviceSimulator {
+
+    static final List<String> DEVICES = List.of("fan", "airConditioner", "lightbulb", "warning");
+
+    private static final String CORRELATION_SEPARATOR = "|";
+
+    private final String brokerUrl;
+    private final long confirmDelayMs;
+    private final double failureRate;
+    private final double dropRate;
+
+    private final LongAdder confirmed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private MqttClient client;
+    private ScheduledExecutorService scheduler;
+
+    DeviceSimulator(String brokerUrl, long confirmDelayMs, double failureRate, double dropRate) {
+        this.brokerUrl = brokerUrl;
+        this.confirmDelayMs = confirmDelayMs;
+        this.failureRate = failureRate;
+        this.dropRate = dropRate;
+    }
+
+    void start() throws MqttException {
+        scheduler = Executors.newScheduledThreadPool(2);
+        client = new MqttClient(brokerUrl, "loadtest-devices", new MemoryPersistence());
+        MqttConnectOptions options = new MqttConnectOptions();
+        options.setCleanSession(true);
+        options.setMaxInflight(1000);
+        client.connect(options);
+        for (String device : DEVICES) {
+            client.subscribe(device, (topic, message) -> onCommand(topic, message));
+        }
+    }
+
+    void stop() {
+        scheduler.shutdownNow();
+        try {
+            client.disconnect();
+            client.close();
+        } catch (MqttException e) {
+            System.err.println("Failed to close simulated devices: " + e.getMessage());
+        }
+    }
+
+    long getConfirmed() {
+        return confirmed.sum();
+    }
+
+    long getFailed() {
+        return failed.sum();
+    }
+
+    long getDropped() {
+        return dropped.sum();
+    }
+
+    private void onCommand(String device, MqttMessage message) {
+        // Lệnh có dạng "on|<correlationId>", firmware cũ chỉ nhận "on"/"off"
+        String payload = new String(message.getPayload(), StandardCharsets.UTF_8);
+        int separator = payload.lastIndexOf(CORRELATION_SEPARATOR);
+        String action = separator >= 0 ? payload.substring(0, separator) : payload;
+        String suffix = separator >= 0 ? payload.substring(separator) : "";
+
+        double roll = ThreadLocalRandom.current().nextDouble();
+        if (roll < dropRate) {
+            dropped.increment();
+            return;
+        }
+        boolean fail = roll < dropRate + failureRate;
+        String reply = (fail ? "error" : action) + suffix;
+        scheduler.schedule(() -> {
+            try {
+                client.publish(device + "/confirmation", reply.getBytes(StandardCharsets.UTF_8), 1, false);
+                (fail ? failed : confirmed).increment();
+            } catch (MqttException e) {
+                System.err.println("Failed to confirm command on " + device + ": " + e.getMessage());
+            }
+        }, confirmDelayMs, TimeUnit.MILLISECONDS);
+    }
+}
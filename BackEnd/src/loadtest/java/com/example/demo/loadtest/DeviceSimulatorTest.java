@@ -0,0 +1,113 @@
+package com.example.demo.loadtest;
+
+import io.moquette.broker.Server;
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DeviceSimulatorTest {
+
+    private final BlockingQueue<String> confirmations = new LinkedBlockingQueue<>();
+    private Server broker;
+    private DeviceSimulator devices;
+    private MqttClient backend;
+
+    @AfterEach
+    void stop() throws MqttException {
+        if (backend != null) {
+            backend.disconnect();
+            backend.close();
+        }
+        if (devices != null) {
+            devices.stop();
+        }
+        if (broker != null) {
+            broker.stopServer();
+        }
+    }
+
+    @Test
+    void echoesActionAndCorrelationIdAfterDelay() throws Exception {
+        start(100, 0, 0);
+
+        long start = System.nanoTime();
+        command("fan", "on|3f2a9c1d");
+        assertThat(confirmations.poll(5, TimeUnit.SECONDS)).isEqualTo("fan/confirmation:on|3f2a9c1d");
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+
+        // Firmware cũ: lệnh không có correlation ID thì xác nhận cũng không có
+        command("lightbulb", "off");
+        assertThat(confirmations.poll(5, TimeUnit.SECONDS)).isEqualTo("lightbulb/confirmation:off");
+        await(() -> devices.getConfirmed() == 2);
+    }
+
+    @Test
+    void repliesWithErrorAtFailureRate() throws Exception {
+        start(0, 1.0, 0);
+
+        command("airConditioner", "on|3f2a9c1d");
+
+        assertThat(confirmations.poll(5, TimeUnit.SECONDS)).isEqualTo("airConditioner/confirmation:error|3f2a9c1d");
+        await(() -> devices.getFailed() == 1);
+        assertThat(devices.getConfirmed()).isZero();
+    }
+
+    @Test
+    void leavesCommandUnansweredAtDropRate() throws Exception {
+        start(0, 0, 1.0);
+
+        command("warning", "on");
+
+        await(() -> devices.getDropped() == 1);
+        assertThat(confirmations.poll(300, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    private void start(long confirmDelayMs, double failureRate, double dropRate) throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        Properties config = new Properties();
+        config.setProperty("host", "127.0.0.1");
+        config.setProperty("port", String.valueOf(port));
+        config.setProperty("allow_anonymous", "true");
+        config.setProperty("persistence_enabled", "false");
+        config.setProperty("websocket_port", "disabled");
+        config.setProperty("telemetry_enabled", "false");
+        broker = new Server();
+        broker.startServer(config);
+
+        String brokerUrl = "tcp://127.0.0.1:" + port;
+        devices = new DeviceSimulator(brokerUrl, confirmDelayMs, failureRate, dropRate);
+        devices.start();
+        // Đóng vai backend: gửi lệnh và nhận mọi /confirmation
+        backend = new MqttClient(brokerUrl, "loadtest-backend", new MemoryPersistence());
+        backend.connect();
+        backend.subscribe("+/confirmation", 1, (topic, message) ->
+                confirmations.add(topic + ":" + new String(message.getPayload(), StandardCharsets.UTF_8)));
+    }
+
+    private void command(String device, String payload) throws MqttException {
+        backend.publish(device, payload.getBytes(StandardCharsets.UTF_8), 1, false);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("condition not met in time").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.example.demo.loadtest;
+
+import com.example.demo.DemoApplication;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.CountAtBucket;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.moquette.broker.Server;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load test toàn ứng dụng trên một máy: broker Moquette nhúng, backend chạy thật (H2 thay MySQL),
+ * N node cảm biến giả lập và thiết bị trả lời /confirmation với độ trễ/tỉ lệ lỗi cấu hình được.
+ * <p>
+ * Cấu hình qua system property {@code loadtest.*} (xem profile loadtest trong pom.xml);
+ * {@code loadtest.rules} trỏ tới file luật tự động (file:/...) để đo cả đường rule engine,
+ * {@code loadtest.payload} = json | binary chọn định dạng node gửi.
+ * Báo cáo throughput ingest ổn định và độ trễ điều khiển, ghi JSON ra {@code loadtest.output}.
+ */
+public class LoadTestHarness {
+
+    public static void main(String[] args) throws Exception {
+        int nodes = Integer.getInteger("loadtest.nodes", 20);
+        double rate = Double.parseDouble(System.getProperty("loadtest.rate", "5"));
+        int qos = Integer.getInteger("loadtest.qos", 0);
+        double controlRate = Double.parseDouble(System.getProperty("loadtest.control-rate", "5"));
+        long confirmDelayMs = Long.getLong("loadtest.confirm-delay-ms", 50);
+        double failureRate = Double.parseDouble(System.getProperty("loadtest.failure-rate", "0.02"));
+        double dropRate = Double.parseDouble(System.getProperty("loadtest.drop-rate", "0.0"));
+        int warmupSeconds = Integer.getInteger("loadtest.warmup-s", 10);
+        int durationSeconds = Integer.getInteger("loadtest.duration-s", 60);
+        String output = System.getProperty("loadtest.output", "target/loadtest-result.json");
+        String rules = System.getProperty("loadtest.rules", "classpath:rules.json");
+        String payload = System.getProperty("loadtest.payload", "json");
+
+        int brokerPort = freePort();
+        String brokerUrl = "tcp://127.0.0.1:" + brokerPort;
+        Server broker = startBroker(brokerPort);
+
+        ConfigurableApplicationContext app = new SpringApplicationBuilder(DemoApplication.class).run(
+                "--spring.profiles.active=loadtest",
+                "--server.port=0",
+                "--iot.mqtt.broker-url=" + brokerUrl,
+                "--iot.mqtt.client-id=loadtest-backend",
+                "--iot.ingest.wal.directory=target/loadtest-wal",
+                "--iot.rules.location=" + rules,
+                // DeviceSimulator gửi lại correlation ID, mỗi xác nhận khớp đúng lệnh của nó
+                "--iot.control.correlation-id-enabled=true",
+                "--spring.datasource.url=jdbc:h2:mem:loadtest;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.jpa.hibernate.ddl-auto=create-drop",
+                "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                "--logging.level.root=WARN");
+        MeterRegistry meters = app.getBean(MeterRegistry.class);
+        String baseUrl = "http://127.0.0.1:" + app.getEnvironment().getProperty("local.server.port");
+
+        DeviceSimulator devices = new DeviceSimulator(brokerUrl, confirmDelayMs, failureRate, dropRate);
+        devices.start();
+        SensorNodeSimulator sensors = new SensorNodeSimulator(brokerUrl, nodes, rate, qos, "binary".equals(payload));
+        sensors.start();
+
+        ControlLoad control = new ControlLoad(baseUrl, controlRate);
+        System.out.printf("Load test: %d nodes x %.1f msg/s (%s), %.1f control req/s, warmup %ds, measure %ds%n",
+                nodes, rate, payload, controlRate, warmupSeconds, durationSeconds);
+
+        TimeUnit.SECONDS.sleep(warmupSeconds);
+        control.start();
+        long publishedBefore = sensors.getPublished();
+        double committedBefore = committed(meters);
+        long startNanos = System.nanoTime();
+
+        TimeUnit.SECONDS.sleep(durationSeconds);
+        double elapsed = (System.nanoTime() - startNanos) / 1e9;
+        long published = sensors.getPublished() - publishedBefore;
+        double committed = committed(meters) - committedBefore;
+        double queueDepth = meters.get("iot.ingest.queue.depth").gauge().value();
+
+        control.stop();
+        sensors.stop();
+        devices.stop();
+
+        Map<String, Object> ingest = new LinkedHashMap<>();
+        ingest.put("publishedPerSecond", published / elapsed);
+        ingest.put("committedPerSecond", committed / elapsed);
+        ingest.put("queueDepthAtEnd", queueDepth);
+        ingest.put("publishFailures", sensors.getFailed());
+        ingest.put("malformed", meters.find("iot.mqtt.messages.malformed").counters().stream()
+                .mapToDouble(c -> c.count()).sum());
+        ingest.put("dropped", meters.get("iot.ingest.dropped").functionCounter().count());
+        Timer commitLatency = meters.get("iot.ingest.commit.latency").timer();
+        ingest.put("commitLatencyMeanMs", commitLatency.mean(TimeUnit.MILLISECONDS));
+        ingest.put("commitLatencyP99Ms", histogramPercentileMs(commitLatency.takeSnapshot(), 0.99));
+        ingest.put("commitLatencyMaxMs", commitLatency.max(TimeUnit.MILLISECONDS));
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("nodes", nodes);
+        report.put("ratePerNode", rate);
+        report.put("payload", payload);
+        report.put("durationSeconds", elapsed);
+        report.put("ingest", ingest);
+        report.put("control", control.report());
+        report.put("devices", Map.of("confirmed", devices.getConfirmed(),
+                "failed", devices.getFailed(), "dropped", devices.getDropped()));
+
+        ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        String json = mapper.writeValueAsString(report);
+        System.out.println(json);
+        File file = new File(output);
+        file.getParentFile().mkdirs();
+        mapper.writeValue(file, report);
+        System.out.println("Load test report written to " + file.getAbsolutePath());
+
+        app.close();
+        broker.stopServer();
+        System.exit(0);
+    }
+
+    private static double committed(MeterRegistry meters) {
+        // Tổng số bản ghi đã commit = tổng của các batch đã flush thành công
+        DistributionSummary batches = meters.get("iot.ingest.batch.size").summary();
+        return batches.totalAmount();
+    }
+
+    private static Double histogramPercentileMs(HistogramSnapshot snapshot, double percentile) {
+        // Cận trên của bucket đầu tiên chứa percentile (độ chính xác theo bucket của Micrometer)
+        double target = percentile * snapshot.count();
+        for (CountAtBucket bucket : snapshot.histogramCounts()) {
+            if (bucket.count() >= target) {
+                return bucket.bucket(TimeUnit.MILLISECONDS);
+            }
+        }
+        return null;
+    }
+
+    private static Server startBroker(int port) throws IOException {
+        Properties config = new Properties();
+        config.setProperty("host", "127.0.0.1");
+        config.setProperty("port", String.valueOf(port));
+        config.setProperty("allow_anonymous", "true");
+        config.setProperty("persistence_enabled", "false");
+        config.setProperty("websocket_port", "disabled");
+        config.setProperty("telemetry_enabled", "false");
+        Server broker = new Server();
+        broker.startServer(config);
+        return broker;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * Gửi POST /led/control với tần suất cố định, đo độ trễ từ phía client tới khi có phản hồi.
+     */
+    private static final class ControlLoad {
+        private final String baseUrl;
+        private final double ratePerSecond;
+        private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        private final ConcurrentLinkedQueue<Long> latenciesNanos = new ConcurrentLinkedQueue<>();
+        private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        private final LongAdder errors = new LongAdder();
+        private ScheduledExecutorService scheduler;
+
+        private ControlLoad(String baseUrl, double ratePerSecond) {
+            this.baseUrl = baseUrl;
+            this.ratePerSecond = ratePerSecond;
+        }
+
+        private void start() {
+            if (ratePerSecond <= 0) {
+                return;
+            }
+            scheduler = Executors.newSingleThreadScheduledExecutor();
+            long periodMicros = Math.max(1, (long) (1_000_000 / ratePerSecond));
+            scheduler.scheduleAtFixedRate(this::send, 0, periodMicros, TimeUnit.MICROSECONDS);
+        }
+
+        private void stop() throws InterruptedException {
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+                // Chờ các request đang bay nhận phản hồi hoặc timeout phía backend
+                TimeUnit.SECONDS.sleep(6);
+            }
+        }
+
+        private void send() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            String device = DeviceSimulator.DEVICES.get(random.nextInt(DeviceSimulator.DEVICES.size()));
+            String body = "{\"deviceName\":\"" + device + "\",\"active\":\"" + (random.nextBoolean() ? "on" : "off") + "\"}";
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/led/control"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body))
+                    .build();
+            long start = System.nanoTime();
+            http.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+                if (error != null) {
+                    errors.increment();
+                    return;
+                }
+                latenciesNanos.add(System.nanoTime() - start);
+                statuses.computeIfAbsent(response.statusCode(), s -> new LongAdder()).increment();
+            });
+        }
+
+        private Map<String, Object> report() {
+            List<Long> sorted = new ArrayList<>(latenciesNanos);
+            sorted.sort(null);
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("requests", sorted.size() + errors.sum());
+            report.put("transportErrors", errors.sum());
+            Map<String, Long> byStatus = new LinkedHashMap<>();
+            statuses.forEach((status, count) -> byStatus.put(String.valueOf(status), count.sum()));
+            report.put("statuses", byStatus);
+            report.put("latencyP50Ms", percentileMs(sorted, 0.50));
+            report.put("latencyP95Ms", percentileMs(sorted, 0.95));
+            report.put("latencyP99Ms", percentileMs(sorted, 0.99));
+            report.put("latencyMaxMs", sorted.isEmpty() ? null : sorted.get(sorted.size() - 1) / 1e6);
+            return report;
+        }
+
+        private static Double percentileMs(List<Long> sorted, double percentile) {
+            if (sorted.isEmpty()) {
+                return null;
+            }
+            int index = (int) Math.ceil(percentile * sorted.size()) - 1;
+            return sorted.get(Math.max(0, index)) / 1e6;
+        }
+    }
+}
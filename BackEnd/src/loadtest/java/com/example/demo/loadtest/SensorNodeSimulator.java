@@ -0,0 +1,103 @@
+package com.example.demo.loadtest;
+
+import com.example.demo.converter.SensorBinaryCodec;
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Giả lập N node cảm biến, mỗi node một kết nối MQTT riêng, publish lên "sensors/node-i" với tần suất cố định.
+ * Payload là JSON như firmware cũ hoặc frame nhị phân {@link SensorBinaryCodec} (một bản ghi mỗi frame).
+ */
+class SensorNodeSimulator {
+
+    private final String brokerUrl;
+    private final int nodes;
+    private final double ratePerNode;
+    private final int qos;
+    private final boolean binary;
+
+    private final List<MqttClient> clients = new ArrayList<>();
+    private final LongAdder published = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private ScheduledExecutorService scheduler;
+
+    SensorNodeSimulator(String brokerUrl, int nodes, double ratePerNode, int qos, boolean binary) {
+        this.brokerUrl = brokerUrl;
+        this.nodes = nodes;
+        this.ratePerNode = ratePerNode;
+        this.qos = qos;
+        this.binary = binary;
+    }
+
+    void start() throws MqttException {
+        scheduler = Executors.newScheduledThreadPool(Math.min(nodes, Runtime.getRuntime().availableProcessors()));
+        long periodMicros = Math.max(1, (long) (1_000_000 / ratePerNode));
+        for (int i = 0; i < nodes; i++) {
+            String topic = "sensors/node-" + i;
+            MqttClient client = new MqttClient(brokerUrl, "loadtest-node-" + i, new MemoryPersistence());
+            MqttConnectOptions options = new MqttConnectOptions();
+            options.setCleanSession(true);
+            options.setMaxInflight(1000);
+            client.connect(options);
+            clients.add(client);
+
+            // Lệch pha các node để tải đều thay vì dồn vào cùng một thời điểm
+            long initialDelay = ThreadLocalRandom.current().nextLong(periodMicros);
+            scheduler.scheduleAtFixedRate(() -> publish(client, topic), initialDelay, periodMicros, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    void stop() {
+        scheduler.shutdownNow();
+        for (MqttClient client : clients) {
+            try {
+                client.disconnect();
+                client.close();
+            } catch (MqttException e) {
+                System.err.println("Failed to close simulated node " + client.getClientId() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    long getPublished() {
+        return published.sum();
+    }
+
+    long getFailed() {
+        return failed.sum();
+    }
+
+    private void publish(MqttClient client, String topic) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int temperature = random.nextInt(15, 40);
+        int humidity = random.nextInt(30, 95);
+        int light = random.nextInt(0, 1000);
+        int wind = random.nextInt(0, 30);
+        long timestamp = System.currentTimeMillis();
+        byte[] payload = binary
+                ? SensorBinaryCodec.encode(new long[]{timestamp}, new Integer[]{temperature},
+                        new Integer[]{humidity}, new Integer[]{light}, new Integer[]{wind})
+                : ("{\"temperature\":" + temperature
+                        + ",\"humidity\":" + humidity
+                        + ",\"light\":" + light
+                        + ",\"wind\":" + wind
+                        + ",\"timestamp\":" + timestamp + "}").getBytes(StandardCharsets.UTF_8);
+        try {
+            client.publish(topic, payload, qos, false);
+            published.increment();
+        } catch (MqttException e) {
+            failed.increment();
+        }
+    }
+}
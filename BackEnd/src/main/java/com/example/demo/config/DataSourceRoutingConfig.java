@@ -0,0 +1,85 @@
+package com.example.demo.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+
+/**
+ * Bật khi có iot.datasource.replica.url: pool "primary" (spring.datasource.*) nhận mọi lệnh ghi,
+ * pool "replica" nhận các transaction chỉ đọc (lịch sử /sensor, /led và export).
+ * Không cấu hình replica thì Spring Boot tự tạo một DataSource như trước.
+ */
+@Configuration
+@ConditionalOnProperty(name = "iot.datasource.replica.url")
+public class DataSourceRoutingConfig {
+
+    @Value("${iot.datasource.replica.url}")
+    private String replicaUrl;
+
+    @Value("${iot.datasource.replica.username:}")
+    private String replicaUsername;
+
+    @Value("${iot.datasource.replica.password:}")
+    private String replicaPassword;
+
+    @Value("${iot.datasource.replica.max-lag-ms:5000}")
+    private long maxLagMs;
+
+    @Value("${iot.datasource.replica.lag-query:}")
+    private String lagQuery;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private ReadReplicaRoutingDataSource routingDataSource;
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    @Bean
+    @ConfigurationProperties("iot.datasource.replica.hikari")
+    public HikariDataSource replicaDataSource() {
+        HikariDataSource dataSource = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .url(replicaUrl)
+                .username(replicaUsername)
+                .password(replicaPassword)
+                .build();
+        dataSource.setPoolName("replica");
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary,
+                                 @Qualifier("replicaDataSource") DataSource replica) {
+        routingDataSource = new ReadReplicaRoutingDataSource(primary, replica, maxLagMs, lagQuery, meterRegistry);
+        routingDataSource.checkReplica();
+        // Connection thật chỉ được lấy ở câu lệnh đầu tiên, khi đã biết transaction có chỉ đọc hay không
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    @Scheduled(fixedDelayString = "${iot.datasource.replica.check-interval-ms:2000}")
+    public void checkReplica() {
+        routingDataSource.checkReplica();
+    }
+}
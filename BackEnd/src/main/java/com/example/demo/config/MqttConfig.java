@@ -1,62 +1,206 @@
 package com.example.demo.config;
 
+import com.example.demo.converter.SensorBinaryCodec;
+import com.example.demo.converter.SensorPayloadDecoder;
 import com.example.demo.repository.entity.SensorEntity;
-import com.example.demo.service.SensorService;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.example.demo.service.LatestStateService;
+import com.example.demo.service.LiveStatsService;
+import com.example.demo.service.LiveStreamService;
+import com.example.demo.service.RuleEngineService;
+import com.example.demo.service.SensorIngestService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.eclipse.paho.client.mqttv3.*;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.eclipse.paho.client.mqttv3.persist.MqttDefaultFilePersistence;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
 
 @Configuration
 public class MqttConfig {
 
-    private static final String BROKER_URL = "tcp://172.20.10.4:1889";
-    private static final String CLIENT_ID = "iotClient";
-    private static final String USERNAME = "nguyen";
-    private static final String PASSWORD = "12345";
+    // Node cũ publish lên "sensors", node mới publish lên "sensors/<deviceId>"
+    private static final String SENSOR_TOPIC = "sensors";
+    private static final String DEFAULT_DEVICE_ID = "default";
+    // Khớp cột device_id VARCHAR(64); chỉ ký tự an toàn vì deviceId còn dùng làm khoá cache và trong log
+    private static final Pattern DEVICE_ID = Pattern.compile("[A-Za-z0-9_.:-]{1,64}");
+
+    @Value("${iot.mqtt.broker-url:tcp://172.20.10.4:1889}")
+    private String brokerUrl;
+
+    @Value("${iot.mqtt.client-id:iotClient}")
+    private String clientId;
+
+    @Value("${iot.mqtt.username:nguyen}")
+    private String username;
+
+    @Value("${iot.mqtt.password:12345}")
+    private String password;
+
+    @Value("${iot.mqtt.connection-timeout-s:10}")
+    private int connectionTimeoutSeconds;
+
+    @Value("${iot.mqtt.reconnect-initial-backoff-ms:1000}")
+    private long reconnectInitialBackoffMs;
+
+    @Value("${iot.mqtt.reconnect-max-backoff-ms:30000}")
+    private long reconnectMaxBackoffMs;
+
+    // memory | file
+    @Value("${iot.mqtt.persistence:memory}")
+    private String persistenceType;
+
+    @Value("${iot.mqtt.persistence-directory:.}")
+    private String persistenceDirectory;
+
+    @Autowired
+    private SensorPayloadDecoder sensorPayloadDecoder;
+
+    @Autowired
+    private SensorBinaryCodec sensorBinaryCodec;
+
+    @Autowired
+    private SensorIngestService sensorIngestService;
+
+    @Autowired
+    private LatestStateService latestStateService;
+
+    @Autowired
+    private LiveStreamService liveStreamService;
 
     @Autowired
-    private SensorService sensorService;
+    private RuleEngineService ruleEngineService;
+
+    @Autowired
+    private LiveStatsService liveStatsService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Tag topic theo topic filter đã subscribe ("sensors" / "sensors/+") để số series không tăng theo số thiết bị
+    private Counter legacyReceived;
+    private Counter legacyMalformed;
+    private Counter deviceReceived;
+    private Counter deviceMalformed;
+    private Counter deviceRejected;
+    private Counter staleReadings;
 
     @Bean
     public MqttClient mqttClient() throws MqttException {
-        MqttClient client = new MqttClient(BROKER_URL, CLIENT_ID);
+        // Phiên clean session không cần giữ trạng thái qua lần khởi động sau, bộ nhớ là đủ và không tạo thư mục .lck
+        MqttClientPersistence persistence = "file".equalsIgnoreCase(persistenceType)
+                ? new MqttDefaultFilePersistence(persistenceDirectory)
+                : new MemoryPersistence();
+        return new MqttClient(brokerUrl, clientId, persistence);
+    }
+
+    @Bean
+    public MqttConnectionManager mqttConnectionManager(MqttClient mqttClient) {
+        legacyReceived = meterRegistry.counter("iot.mqtt.messages.received", "topic", SENSOR_TOPIC);
+        legacyMalformed = meterRegistry.counter("iot.mqtt.messages.malformed", "topic", SENSOR_TOPIC);
+        deviceReceived = meterRegistry.counter("iot.mqtt.messages.received", "topic", SENSOR_TOPIC + "/+");
+        deviceMalformed = meterRegistry.counter("iot.mqtt.messages.malformed", "topic", SENSOR_TOPIC + "/+");
+        deviceRejected = meterRegistry.counter("iot.mqtt.messages.rejected", "topic", SENSOR_TOPIC + "/+");
+        staleReadings = meterRegistry.counter("iot.mqtt.readings.stale");
+
         MqttConnectOptions options = new MqttConnectOptions();
-        options.setUserName(USERNAME);
-        options.setPassword(PASSWORD.toCharArray());
-        options.setAutomaticReconnect(true);
+        options.setUserName(username);
+        options.setPassword(password.toCharArray());
+        options.setConnectionTimeout(connectionTimeoutSeconds);
+        // Kết nối lại do MqttConnectionManager đảm nhận (backoff cấu hình được, subscribe lại sau khi kết nối)
+        options.setAutomaticReconnect(false);
         options.setCleanSession(true);
-        client.connect(options);
 
-        client.subscribe("sensors", this::handleSensorMessage);
-        client.subscribe("fan", this::handleDeviceMessage);
-        client.subscribe("airConditioner", this::handleDeviceMessage);
-        client.subscribe("lightbulb", this::handleDeviceMessage);
-        return client;
+        MqttConnectionManager connection = new MqttConnectionManager(mqttClient, options,
+                reconnectInitialBackoffMs, reconnectMaxBackoffMs, meterRegistry);
+        connection.subscribe(SENSOR_TOPIC, this::handleSensorMessage);
+        connection.subscribe(SENSOR_TOPIC + "/+", this::handleSensorMessage);
+        connection.subscribe("fan", this::handleDeviceMessage);
+        connection.subscribe("airConditioner", this::handleDeviceMessage);
+        connection.subscribe("lightbulb", this::handleDeviceMessage);
+        return connection;
     }
 
     private void handleSensorMessage(String topic, MqttMessage message) {
-        String payload = new String(message.getPayload());
-        try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            SensorEntity sensorData = objectMapper.readValue(payload, SensorEntity.class);
+        boolean perDevice = topic.length() > SENSOR_TOPIC.length();
+        (perDevice ? deviceReceived : legacyReceived).increment();
+        String deviceId = perDevice ? topic.substring(SENSOR_TOPIC.length() + 1) : DEFAULT_DEVICE_ID;
+        if (!DEVICE_ID.matcher(deviceId).matches()) {
+            // Bản ghi như vậy không bao giờ ghi được xuống DB, bỏ ngay thay vì để writer thử lại mãi
+            deviceRejected.increment();
+            System.err.println("Rejected sensor message with invalid device id on topic of "
+                    + topic.length() + " chars");
+            return;
+        }
+        byte[] payload = message.getPayload();
 
-            // Set current timestamp if it's null
-            if (sensorData.getTimestamp() == null) {
-                sensorData.setTimestamp(LocalDateTime.now());
+        // Firmware mới gửi frame nhị phân (có thể nhiều bản ghi), firmware cũ gửi JSON trên cùng topic
+        if (SensorBinaryCodec.isBinary(payload)) {
+            List<SensorEntity> readings = new ArrayList<>();
+            int count = sensorBinaryCodec.decode(payload, (epochMillis, temperature, humidity, light, wind) -> {
+                SensorEntity sensorData = new SensorEntity();
+                sensorData.setTemperature(temperature != SensorBinaryCodec.MISSING ? temperature : null);
+                sensorData.setHumidity(humidity != SensorBinaryCodec.MISSING ? humidity : null);
+                sensorData.setLight(light != SensorBinaryCodec.MISSING ? light : null);
+                sensorData.setWind(wind != SensorBinaryCodec.MISSING ? wind : null);
+                sensorData.setTimestamp(LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault()));
+                readings.add(sensorData);
+            });
+            if (count < 0) {
+                (perDevice ? deviceMalformed : legacyMalformed).increment();
+                System.err.println("Malformed binary sensor frame on [" + topic + "] (" + payload.length + " bytes)");
+                return;
+            }
+            // Bản ghi trong frame tăng dần theo thời gian: chỉ bản ghi cuối là trạng thái hiện tại của node
+            for (int i = 0; i < readings.size(); i++) {
+                handleSensorReading(deviceId, readings.get(i), i == readings.size() - 1);
             }
+            return;
+        }
+
+        SensorEntity sensorData = sensorPayloadDecoder.decode(payload);
+        if (sensorData == null) {
+            (perDevice ? deviceMalformed : legacyMalformed).increment();
+            System.err.println("Malformed sensor payload on [" + topic + "] (total malformed: "
+                    + sensorPayloadDecoder.getMalformedCount() + ")");
+            return;
+        }
+        handleSensorReading(deviceId, sensorData, true);
+    }
+
+    /**
+     * @param live false với các bản ghi cũ hơn trong một frame gom nhiều bản ghi: chỉ ghi DB, không kích hoạt luật,
+     *             không vào thống kê trượt và không ghi đè trạng thái mới nhất. Xét theo thứ tự nhận, không so
+     *             timestamp với đồng hồ của backend nên node lệch giờ hay không có NTP vẫn được cập nhật bình thường
+     */
+    private void handleSensorReading(String deviceId, SensorEntity sensorData, boolean live) {
+        sensorData.setDeviceId(deviceId);
+
+        if (live) {
+            // Luật tự động chạy trước khi ghi DB để thiết bị phản ứng ngay, không chờ client polling
+            ruleEngineService.evaluate(sensorData);
+            liveStatsService.record(sensorData);
+        } else {
+            staleReadings.increment();
+        }
 
-            sensorService.saveSensorData(sensorData);
-        } catch (Exception e) {
-            System.err.println("Failed to parse sensor data: " + payload);
-            e.printStackTrace();
+        // Chỉ đưa vào hàng đợi, việc ghi DB do writer của ingest pipeline đảm nhận
+        if (sensorIngestService.submit(sensorData) && live) {
+            liveStreamService.publishSensorData(latestStateService.updateSensorData(sensorData));
         }
     }
 
     private void handleDeviceMessage(String topic, MqttMessage message) {
+        meterRegistry.counter("iot.mqtt.messages.received", "topic", topic).increment();
         String payload = new String(message.getPayload());
         System.out.println("Received command on topic [" + topic + "]: " + payload);
 
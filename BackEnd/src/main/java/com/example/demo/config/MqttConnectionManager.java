@@ -0,0 +1,145 @@
+package com.example.demo.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttMessageListener;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.springframework.context.SmartLifecycle;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Kết nối MQTT nằm ngoài đường khởi động: context sẵn sàng ngay, kết nối chạy nền và thử lại với backoff
+ * luỹ thừa cho tới khi được, kể cả khi mất kết nối về sau. Subscription được đăng ký trước và subscribe lại
+ * sau mỗi lần kết nối (clean session nên broker không giữ subscription cũ).
+ * <p>
+ * Là SmartLifecycle ở phase cuối: bắt đầu kết nối khi mọi bean đã sẵn sàng, ngắt kết nối trước khi các service
+ * đóng, để MqttClient.close() lúc huỷ bean không lỗi "Client is connected".
+ */
+public class MqttConnectionManager implements SmartLifecycle {
+
+    private final MqttClient client;
+    private final MqttConnectOptions options;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, IMqttMessageListener> subscriptions = new ConcurrentHashMap<>();
+    private ScheduledExecutorService connector;
+    private volatile boolean running;
+    private long backoffMs;
+
+    public MqttConnectionManager(MqttClient client, MqttConnectOptions options, long initialBackoffMs,
+                                 long maxBackoffMs, MeterRegistry meterRegistry) {
+        this.client = client;
+        this.options = options;
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.meterRegistry = meterRegistry;
+        this.backoffMs = initialBackoffMs;
+        Gauge.builder("iot.mqtt.connected", client, c -> c.isConnected() ? 1 : 0).register(meterRegistry);
+    }
+
+    /**
+     * Đăng ký subscription, áp dụng ngay nếu đang kết nối và sau mỗi lần kết nối lại.
+     */
+    public void subscribe(String topic, IMqttMessageListener listener) {
+        subscriptions.put(topic, listener);
+        if (client.isConnected()) {
+            try {
+                client.subscribe(topic, listener);
+            } catch (MqttException e) {
+                System.err.println("Failed to subscribe to [" + topic + "], will retry on reconnect: " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void start() {
+        connector = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "mqtt-connect");
+            thread.setDaemon(true);
+            return thread;
+        });
+        client.setCallback(new MqttCallback() {
+            @Override
+            public void connectionLost(Throwable cause) {
+                System.err.println("MQTT connection lost: " + cause.getMessage());
+                scheduleConnect(0);
+            }
+
+            @Override
+            public void messageArrived(String topic, MqttMessage message) {
+                // Mọi topic đều subscribe kèm listener riêng
+            }
+
+            @Override
+            public void deliveryComplete(IMqttDeliveryToken token) {
+            }
+        });
+        running = true;
+        scheduleConnect(0);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        connector.shutdownNow();
+        if (client.isConnected()) {
+            try {
+                client.disconnect(1000);
+            } catch (MqttException e) {
+                System.err.println("Failed to disconnect from MQTT broker: " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void scheduleConnect(long delayMs) {
+        if (running) {
+            connector.schedule(this::connect, delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void connect() {
+        if (!running || client.isConnected()) {
+            return;
+        }
+        try {
+            client.connect(options);
+            for (Map.Entry<String, IMqttMessageListener> subscription : subscriptions.entrySet()) {
+                client.subscribe(subscription.getKey(), subscription.getValue());
+            }
+            meterRegistry.counter("iot.mqtt.connect.attempts", "result", "success").increment();
+            System.out.println("Connected to MQTT broker " + client.getServerURI());
+            backoffMs = initialBackoffMs;
+        } catch (MqttException e) {
+            meterRegistry.counter("iot.mqtt.connect.attempts", "result", "failure").increment();
+            System.err.println("MQTT connect to " + client.getServerURI() + " failed, retrying in "
+                    + backoffMs + " ms: " + e.getMessage());
+            if (client.isConnected()) {
+                // Kết nối được nhưng subscribe lỗi: ngắt để lần thử sau làm lại từ đầu
+                try {
+                    client.disconnect(1000);
+                } catch (MqttException ignored) {
+                    // Lần kết nối sau sẽ tạo lại phiên
+                }
+            }
+            scheduleConnect(backoffMs);
+            backoffMs = Math.min(backoffMs * 2, maxBackoffMs);
+        }
+    }
+}
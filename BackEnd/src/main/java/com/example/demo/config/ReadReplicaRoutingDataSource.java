@@ -0,0 +1,154 @@
+package com.example.demo.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+
+/**
+ * Transaction chỉ đọc lấy connection từ replica, mọi thứ khác (ghi, không có transaction) dùng primary.
+ * <p>
+ * Replica chỉ được dùng khi lần kiểm tra gần nhất thành công và độ trễ không vượt max-lag; ngược lại (hoặc khi
+ * không lấy được connection replica) transaction chỉ đọc chạy trên primary. Phải bọc trong
+ * LazyConnectionDataSourceProxy: JpaTransactionManager xin connection trước khi transaction được đánh dấu chỉ đọc.
+ */
+public class ReadReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    enum Target { PRIMARY, REPLICA }
+
+    // Cột độ trễ (giây) của SHOW REPLICA STATUS (MySQL 8.0.22+) và SHOW SLAVE STATUS (bản cũ)
+    private static final String[] LAG_COLUMNS = {"Seconds_Behind_Source", "Seconds_Behind_Master"};
+
+    private final DataSource primary;
+    private final DataSource replica;
+    private final long maxLagMillis;
+    private final String lagQuery;
+
+    // Chưa kiểm tra lần nào thì chưa dùng replica
+    private volatile boolean replicaUsable;
+    private volatile boolean checked;
+    private volatile double lagMillis = Double.NaN;
+
+    private final Counter replicaReads;
+    private final Counter primaryReads;
+
+    public ReadReplicaRoutingDataSource(DataSource primary, DataSource replica, long maxLagMillis, String lagQuery,
+                                        MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.replica = replica;
+        this.maxLagMillis = maxLagMillis;
+        this.lagQuery = lagQuery != null ? lagQuery.trim() : "";
+        setTargetDataSources(Map.of(Target.PRIMARY, primary, Target.REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+
+        replicaReads = meterRegistry.counter("iot.datasource.reads", "target", "replica");
+        primaryReads = meterRegistry.counter("iot.datasource.reads", "target", "primary");
+        Gauge.builder("iot.datasource.replica.lag", this, routing -> routing.lagMillis)
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        Gauge.builder("iot.datasource.replica.usable", this, routing -> routing.replicaUsable ? 1 : 0)
+                .register(meterRegistry);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return TransactionSynchronizationManager.isCurrentTransactionReadOnly() && replicaUsable
+                ? Target.REPLICA : Target.PRIMARY;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return primary.getConnection();
+        }
+        if (determineCurrentLookupKey() == Target.REPLICA) {
+            try {
+                Connection connection = replica.getConnection();
+                replicaReads.increment();
+                return connection;
+            } catch (SQLException e) {
+                // Không chờ tới lần kiểm tra sau: các transaction chỉ đọc tiếp theo dùng primary ngay
+                markUnusable("connection failed: " + e.getMessage());
+            }
+        }
+        primaryReads.increment();
+        return primary.getConnection();
+    }
+
+    /**
+     * Đo độ trễ replica và bật/tắt việc định tuyến đọc sang replica, gọi định kỳ.
+     * Không có lag-query thì chỉ kiểm tra connection còn dùng được.
+     */
+    public void checkReplica() {
+        try (Connection connection = replica.getConnection()) {
+            if (lagQuery.isEmpty()) {
+                if (!connection.isValid(5)) {
+                    markUnusable("connection is not valid");
+                    return;
+                }
+                lagMillis = 0;
+            } else {
+                Double lagSeconds = queryLagSeconds(connection);
+                if (lagSeconds == null) {
+                    lagMillis = Double.NaN;
+                    markUnusable("replication is not running");
+                    return;
+                }
+                lagMillis = lagSeconds * 1000;
+            }
+        } catch (SQLException e) {
+            lagMillis = Double.NaN;
+            markUnusable("check failed: " + e.getMessage());
+            return;
+        }
+        if (lagMillis > maxLagMillis) {
+            markUnusable("lag " + (long) lagMillis + " ms exceeds " + maxLagMillis + " ms");
+        } else if (!replicaUsable) {
+            replicaUsable = true;
+            checked = true;
+            System.out.println("Read replica enabled (lag " + (long) lagMillis + " ms)");
+        }
+    }
+
+    /**
+     * @return độ trễ tính bằng giây, null nếu replica không báo độ trễ (không có dòng hoặc giá trị NULL)
+     */
+    private Double queryLagSeconds(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(lagQuery)) {
+            if (!rs.next()) {
+                return null;
+            }
+            ResultSetMetaData metaData = rs.getMetaData();
+            int column = 1;
+            for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                for (String lagColumn : LAG_COLUMNS) {
+                    if (lagColumn.equalsIgnoreCase(metaData.getColumnLabel(i))) {
+                        column = i;
+                    }
+                }
+            }
+            double lag = rs.getDouble(column);
+            return rs.wasNull() ? null : lag;
+        }
+    }
+
+    private void markUnusable(String reason) {
+        // Chỉ log khi đổi trạng thái (và lần kiểm tra đầu tiên), không log lặp lại mỗi chu kỳ
+        if (replicaUsable || !checked) {
+            replicaUsable = false;
+            checked = true;
+            System.err.println("Read replica disabled, reads fall back to primary: " + reason);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.demo.controller;
+
+import com.example.demo.exception.InvalidRequestException;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+// Kiểm tra tham số (cursor, window, format export, luật, phân trang) ném InvalidRequestException: trả 400.
+// Các exception khác, kể cả IllegalArgumentException từ bên trong server, vẫn là 500 để không che lỗi thật.
+// Response đã commit (export đang stream) thì để exception lọt ra cho Tomcat cắt kết nối như ExportController
+@RestControllerAdvice
+public class ApiExceptionHandler {
+
+    @ExceptionHandler(InvalidRequestException.class)
+    public ResponseEntity<String> handleInvalidRequest(InvalidRequestException e, HttpServletResponse response) {
+        if (response.isCommitted()) {
+            throw e;
+        }
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+}
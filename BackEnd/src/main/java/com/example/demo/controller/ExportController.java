@@ -0,0 +1,69 @@
+package com.example.demo.controller;
+
+import com.example.demo.model.ExportFormat;
+import com.example.demo.service.ExportService;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+// Xuất lịch sử dạng stream: format = csv | ndjson, gzip = true để nén; lọc theo from/to và thiết bị như /sensor, /led.
+// Writer chỉ được đóng khi xuất xong: lỗi giữa chừng (DB mất kết nối) lọt ra ngoài khi response đã commit thì Tomcat
+// cắt kết nối, client thấy tải về bị hỏng thay vì một file thiếu dòng (hoặc file .gz hợp lệ) với status 200
+@RestController
+public class ExportController {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Autowired
+    private ExportService exportService;
+
+    @GetMapping("/sensor/export")
+    public void exportSensor(@RequestParam Map<String, Object> params, HttpServletResponse response) throws IOException {
+        ExportFormat format = formatOf(params);
+        Writer out = open(response, "sensor", format, params);
+        exportService.exportSensor(params, format, out);
+        out.close();
+    }
+
+    @GetMapping("/led/export")
+    public void exportLed(@RequestParam Map<String, Object> params, HttpServletResponse response) throws IOException {
+        ExportFormat format = formatOf(params);
+        Writer out = open(response, "led", format, params);
+        exportService.exportLed(params, format, out);
+        out.close();
+    }
+
+    private ExportFormat formatOf(Map<String, Object> params) {
+        if (!params.containsKey("format")) {
+            return ExportFormat.CSV;
+        }
+        return ExportFormat.fromParam(params.get("format").toString());
+    }
+
+    private Writer open(HttpServletResponse response, String name, ExportFormat format,
+                        Map<String, Object> params) throws IOException {
+        boolean gzip = Boolean.parseBoolean(String.valueOf(params.get("gzip")));
+        String fileName = name + "-export." + format.getExtension() + (gzip ? ".gz" : "");
+        response.setContentType(gzip ? "application/gzip" : format.getContentType() + ";charset=UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"");
+
+        // Ghi thẳng ra response theo từng khối, không giữ toàn bộ file trong bộ nhớ
+        OutputStream stream = response.getOutputStream();
+        if (gzip) {
+            stream = new GZIPOutputStream(stream, BUFFER_SIZE);
+        }
+        return new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+}
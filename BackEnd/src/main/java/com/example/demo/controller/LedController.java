@@ -1,13 +1,20 @@
 package com.example.demo.controller;
 
+import com.example.demo.model.CachedPage;
+import com.example.demo.model.ControlResultDTO;
+import com.example.demo.model.HistoryPageDTO;
 import com.example.demo.model.LedDTO;
+import com.example.demo.model.LedRowDTO;
+import com.example.demo.service.HistoryCacheService;
 import com.example.demo.service.LedService;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpStatus;
+import org.springframework.http.CacheControl;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 public class LedController {
@@ -15,10 +22,13 @@ public class LedController {
     @Autowired
     private LedService ledService;
 
+    @Autowired
+    private HistoryCacheService historyCacheService;
+
     @GetMapping("/led")
-    public ResponseEntity<Map<String, Object>> getLed(@RequestParam Map<String, Object> params){
-        Map<String, Object> result = ledService.getLed(params);
-        return new ResponseEntity<>(result, HttpStatus.OK);
+    public ResponseEntity<HistoryPageDTO<LedRowDTO>> getLed(@RequestParam Map<String, Object> params){
+        CachedPage<HistoryPageDTO<LedRowDTO>> page = historyCacheService.get(HistoryCacheService.LED, params, () -> ledService.getLed(params));
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache()).eTag(page.getEtag()).body(page.getBody());
     }
 
     @GetMapping("/led/status")
@@ -27,13 +37,15 @@ public class LedController {
         return ResponseEntity.ok(statuses);
     }
 
+    // Trả về CompletableFuture để Tomcat giải phóng luồng trong lúc chờ thiết bị xác nhận
     @PostMapping("/led/control")
-    public ResponseEntity<String> ledControl(@RequestBody LedDTO ledDTO){
-        try {
-            ledService.controlLed(ledDTO.getDeviceName(), ledDTO.getActive());
-            return ResponseEntity.ok("Điều khiển thành công: " + ledDTO.getDeviceName() + " - " + ledDTO.getActive());
-        } catch (Exception e) {
-            return new ResponseEntity<>("Điều khiển LED không thành công. Lỗi: " + e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
-        }
+    public CompletableFuture<ResponseEntity<String>> ledControl(@RequestBody LedDTO ledDTO){
+        return ledService.controlLed(ledDTO.getDeviceName(), ledDTO.getActive());
+    }
+
+    // Điều khiển nhiều thiết bị cùng lúc (scene), trả về kết quả riêng cho từng thiết bị
+    @PostMapping("/led/control/batch")
+    public CompletableFuture<List<ControlResultDTO>> ledControlBatch(@RequestBody List<LedDTO> ledDTOs){
+        return ledService.controlLeds(ledDTOs);
     }
 }
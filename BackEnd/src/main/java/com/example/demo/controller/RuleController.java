@@ -0,0 +1,28 @@
+package com.example.demo.controller;
+
+import com.example.demo.model.RuleDTO;
+import com.example.demo.service.RuleEngineService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+public class RuleController {
+
+    @Autowired
+    private RuleEngineService ruleEngineService;
+
+    @GetMapping("/rules")
+    public List<RuleDTO> getRules() {
+        return ruleEngineService.getRules();
+    }
+
+    // Thay toàn bộ bộ luật; luật giữ nguyên id giữ trạng thái kích hoạt và cooldown, luật mới bắt đầu từ đầu.
+    // Được ghi lại vào iot.rules.location nếu đó là file
+    @PutMapping("/rules")
+    public List<RuleDTO> setRules(@RequestBody List<RuleDTO> rules) {
+        ruleEngineService.setRules(rules);
+        return ruleEngineService.getRules();
+    }
+}
@@ -1,28 +1,57 @@
 package com.example.demo.controller;
 
+import com.example.demo.model.CachedPage;
+import com.example.demo.model.HistoryPageDTO;
+import com.example.demo.model.SensorAggregateDTO;
 import com.example.demo.model.SensorDTO;
+import com.example.demo.model.SensorRowDTO;
+import com.example.demo.model.SensorStatsDTO;
+import com.example.demo.service.HistoryCacheService;
+import com.example.demo.service.LiveStatsService;
+import com.example.demo.service.SensorRollupService;
 import com.example.demo.service.SensorService;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpStatus;
+import org.springframework.http.CacheControl;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
 import java.util.Map;
 
 @RestController
 public class SensorController {
     @Autowired
     private SensorService sensorService;
+    @Autowired
+    private SensorRollupService sensorRollupService;
+    @Autowired
+    private LiveStatsService liveStatsService;
+    @Autowired
+    private HistoryCacheService historyCacheService;
 
+    // ETag + no-cache: trình duyệt gửi lại If-None-Match và nhận 304 khi trang không đổi
     @GetMapping("/sensor")
-    public ResponseEntity<Map<String, Object>> getSensor(@RequestParam Map<String, Object> params) {
-        Map<String, Object> result = sensorService.getSensor(params);
-        return new ResponseEntity<>(result, HttpStatus.OK);
+    public ResponseEntity<HistoryPageDTO<SensorRowDTO>> getSensor(@RequestParam Map<String, Object> params) {
+        CachedPage<HistoryPageDTO<SensorRowDTO>> page = historyCacheService.get(HistoryCacheService.SENSOR, params, () -> sensorService.getSensor(params));
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache()).eTag(page.getEtag()).body(page.getBody());
     }
 
     @GetMapping("/sensor/latest")
-    public SensorDTO getLatestSensorData() {
-        return sensorService.getLatestSensorData();
+    public SensorDTO getLatestSensorData(@RequestParam(required = false) String deviceId) {
+        return deviceId != null ? sensorService.getLatestSensorData(deviceId) : sensorService.getLatestSensorData();
+    }
+
+    // bucket = minute | hour | day, from/to theo định dạng "dd/MM/yyyy, HH:mm:ss"
+    @GetMapping("/sensor/aggregate")
+    public List<SensorAggregateDTO> getAggregates(@RequestParam Map<String, Object> params) {
+        return sensorRollupService.getAggregates(params);
+    }
+
+    // Thống kê trượt từ bộ nhớ, window là một trong iot.stats.windows (vd. 5m); không truy vấn DB
+    @GetMapping("/sensor/stats")
+    public SensorStatsDTO getStats(@RequestParam(defaultValue = "5m") String window,
+                                   @RequestParam(required = false) String deviceId) {
+        return liveStatsService.getStats(window, deviceId);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,20 @@
+package com.example.demo.controller;
+
+import com.example.demo.service.LiveStreamService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+@RestController
+public class StreamController {
+    @Autowired
+    private LiveStreamService liveStreamService;
+
+    // Event "sensor" cho mỗi bản ghi mới, event "device" cho mỗi xác nhận từ thiết bị
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream() {
+        return liveStreamService.subscribe();
+    }
+}
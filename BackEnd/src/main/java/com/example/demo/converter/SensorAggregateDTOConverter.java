@@ -0,0 +1,37 @@
+package com.example.demo.converter;
+
+import com.example.demo.model.MetricAggregateDTO;
+import com.example.demo.model.SensorAggregateDTO;
+import com.example.demo.repository.entity.SensorRollupEntity;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+@Component
+public class SensorAggregateDTOConverter {
+    public SensorAggregateDTO toSensorAggregateDTO(SensorRollupEntity entity) {
+        return new SensorAggregateDTO()
+                .setBucketStart(entity.getBucketStart())
+                .setCount(entity.getSampleCount())
+                .setTemperature(toMetric(entity.getTemperatureMin(), entity.getTemperatureMax(), entity.getTemperatureSum(), entity.getTemperatureCount()))
+                .setHumidity(toMetric(entity.getHumidityMin(), entity.getHumidityMax(), entity.getHumiditySum(), entity.getHumidityCount()))
+                .setLight(toMetric(entity.getLightMin(), entity.getLightMax(), entity.getLightSum(), entity.getLightCount()))
+                .setWind(toMetric(entity.getWindMin(), entity.getWindMax(), entity.getWindSum(), entity.getWindCount()));
+    }
+
+    public List<SensorAggregateDTO> toSensorAggregateDTOs(List<SensorRollupEntity> entities) {
+        return entities.stream()
+                .map(this::toSensorAggregateDTO)
+                .collect(Collectors.toList());
+    }
+
+    // count là số mẫu có giá trị của riêng chỉ số này, không phải sample_count của bucket
+    private MetricAggregateDTO toMetric(Integer min, Integer max, Long sum, Long count) {
+        return new MetricAggregateDTO()
+                .setMin(min)
+                .setMax(max)
+                .setSum(sum)
+                .setAvg(count != null && count > 0 ? (double) sum / count : null);
+    }
+}
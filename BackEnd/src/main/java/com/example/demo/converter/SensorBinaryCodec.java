@@ -0,0 +1,140 @@
+package com.example.demo.converter;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Định dạng nhị phân cố định cho topic sensors, dùng song song với JSON (phân biệt bằng byte đầu tiên).
+ * <pre>
+ * Header (12 byte, big-endian):
+ *   0      magic 0xA5 (không thể là byte đầu của JSON UTF-8)
+ *   1      version = 1
+ *   2      số bản ghi N (1..255)
+ *   3      dự trữ, = 0
+ *   4..11  int64 epoch millis gốc
+ * N bản ghi (12 byte mỗi bản ghi):
+ *   0..3   uint32 millis tính từ gốc
+ *   4..11  int16 temperature, humidity, light, wind; 0x8000 = không có giá trị
+ * </pre>
+ * Giải mã không cấp phát: đọc thẳng từ byte[] và trả giá trị nguyên thuỷ qua {@link ReadingVisitor}.
+ */
+@Component
+public class SensorBinaryCodec {
+
+    public static final byte MAGIC = (byte) 0xA5;
+    public static final byte VERSION = 1;
+    public static final int HEADER_SIZE = 12;
+    public static final int READING_SIZE = 12;
+    public static final int MAX_READINGS = 255;
+    public static final int MISSING = Short.MIN_VALUE;
+
+    public interface ReadingVisitor {
+        void reading(long epochMillis, int temperature, int humidity, int light, int wind);
+    }
+
+    private final LongAdder decoded = new LongAdder();
+    private final LongAdder malformed = new LongAdder();
+
+    public static boolean isBinary(byte[] payload) {
+        return payload.length > 0 && payload[0] == MAGIC;
+    }
+
+    /**
+     * Frame được kiểm tra toàn bộ trước khi gọi visitor, frame lỗi không sinh ra bản ghi nào.
+     *
+     * @return số bản ghi đã giải mã, hoặc -1 nếu frame không hợp lệ (được tính vào malformed)
+     */
+    public int decode(byte[] payload, ReadingVisitor visitor) {
+        if (payload.length < HEADER_SIZE || payload[0] != MAGIC || payload[1] != VERSION) {
+            malformed.increment();
+            return -1;
+        }
+        int count = payload[2] & 0xFF;
+        if (count == 0 || payload.length != HEADER_SIZE + count * READING_SIZE) {
+            malformed.increment();
+            return -1;
+        }
+        long base = readLong(payload, 4);
+        for (int i = 0, offset = HEADER_SIZE; i < count; i++, offset += READING_SIZE) {
+            long offsetMillis = readInt(payload, offset) & 0xFFFFFFFFL;
+            visitor.reading(base + offsetMillis,
+                    readShort(payload, offset + 4),
+                    readShort(payload, offset + 6),
+                    readShort(payload, offset + 8),
+                    readShort(payload, offset + 10));
+        }
+        decoded.add(count);
+        return count;
+    }
+
+    /**
+     * Mã hoá frame, dùng cho firmware tham chiếu, load test và benchmark. Giá trị null ghi thành {@link #MISSING}.
+     */
+    public static byte[] encode(long[] epochMillis, Integer[] temperature, Integer[] humidity, Integer[] light, Integer[] wind) {
+        int count = epochMillis.length;
+        if (count == 0 || count > MAX_READINGS) {
+            throw new IllegalArgumentException("Frame must contain 1.." + MAX_READINGS + " readings: " + count);
+        }
+        long base = epochMillis[0];
+        byte[] frame = new byte[HEADER_SIZE + count * READING_SIZE];
+        frame[0] = MAGIC;
+        frame[1] = VERSION;
+        frame[2] = (byte) count;
+        writeLong(frame, 4, base);
+        for (int i = 0, offset = HEADER_SIZE; i < count; i++, offset += READING_SIZE) {
+            long offsetMillis = epochMillis[i] - base;
+            if (offsetMillis < 0 || offsetMillis > 0xFFFFFFFFL) {
+                throw new IllegalArgumentException("Reading " + i + " is outside the frame time range");
+            }
+            writeInt(frame, offset, (int) offsetMillis);
+            writeShort(frame, offset + 4, temperature[i]);
+            writeShort(frame, offset + 6, humidity[i]);
+            writeShort(frame, offset + 8, light[i]);
+            writeShort(frame, offset + 10, wind[i]);
+        }
+        return frame;
+    }
+
+    public long getDecodedCount() {
+        return decoded.sum();
+    }
+
+    public long getMalformedCount() {
+        return malformed.sum();
+    }
+
+    private static int readShort(byte[] buffer, int offset) {
+        return (short) (((buffer[offset] & 0xFF) << 8) | (buffer[offset + 1] & 0xFF));
+    }
+
+    private static int readInt(byte[] buffer, int offset) {
+        return ((buffer[offset] & 0xFF) << 24) | ((buffer[offset + 1] & 0xFF) << 16)
+                | ((buffer[offset + 2] & 0xFF) << 8) | (buffer[offset + 3] & 0xFF);
+    }
+
+    private static long readLong(byte[] buffer, int offset) {
+        return ((long) readInt(buffer, offset) << 32) | (readInt(buffer, offset + 4) & 0xFFFFFFFFL);
+    }
+
+    private static void writeShort(byte[] buffer, int offset, Integer value) {
+        int v = value != null ? value : MISSING;
+        if (v < Short.MIN_VALUE || v > Short.MAX_VALUE || (value != null && v == MISSING)) {
+            throw new IllegalArgumentException("Value out of int16 range: " + value);
+        }
+        buffer[offset] = (byte) (v >> 8);
+        buffer[offset + 1] = (byte) v;
+    }
+
+    private static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >> 24);
+        buffer[offset + 1] = (byte) (value >> 16);
+        buffer[offset + 2] = (byte) (value >> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    private static void writeLong(byte[] buffer, int offset, long value) {
+        writeInt(buffer, offset, (int) (value >> 32));
+        writeInt(buffer, offset + 4, (int) value);
+    }
+}
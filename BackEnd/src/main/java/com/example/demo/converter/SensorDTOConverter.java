@@ -15,6 +15,7 @@ public class SensorDTOConverter {
 
         // Kiểm tra null trước khi gán
         dto.setId(entity.getId());
+        dto.setDeviceId(entity.getDeviceId());
         dto.setTemperature(entity.getTemperature() != null ? entity.getTemperature() : 0);
         dto.setHumidity(entity.getHumidity() != null ? entity.getHumidity() : 0);
         dto.setLight(entity.getLight() != null ? entity.getLight() : 0);
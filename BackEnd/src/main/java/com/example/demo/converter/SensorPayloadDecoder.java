@@ -0,0 +1,137 @@
+package com.example.demo.converter;
+
+import com.example.demo.repository.entity.SensorEntity;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Giải mã payload JSON của topic sensors trực tiếp từ byte[] bằng streaming parser.
+ * Không tạo ObjectMapper, không copy sang String, không đi qua data binding.
+ */
+@Component
+public class SensorPayloadDecoder {
+
+    // JsonFactory thread-safe, dùng chung cho mọi message
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final LongAdder decoded = new LongAdder();
+    private final LongAdder malformed = new LongAdder();
+
+    /**
+     * @return bản ghi đã giải mã, hoặc null nếu payload không hợp lệ (được tính vào malformed)
+     */
+    public SensorEntity decode(byte[] payload) {
+        Integer temperature = null;
+        Integer humidity = null;
+        Integer light = null;
+        Integer wind = null;
+        LocalDateTime timestamp = null;
+
+        try (JsonParser parser = JSON_FACTORY.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                malformed.increment();
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (value == JsonToken.VALUE_NULL) {
+                    continue;
+                }
+                switch (field) {
+                    case "temperature":
+                        temperature = readInt(parser, value);
+                        break;
+                    case "humidity":
+                        humidity = readInt(parser, value);
+                        break;
+                    case "light":
+                        light = readInt(parser, value);
+                        break;
+                    case "wind":
+                        wind = readInt(parser, value);
+                        break;
+                    case "timestamp":
+                        timestamp = readTimestamp(parser, value);
+                        break;
+                    default:
+                        parser.skipChildren();
+                        break;
+                }
+            }
+        } catch (Exception e) {
+            malformed.increment();
+            return null;
+        }
+
+        SensorEntity sensorData = new SensorEntity();
+        sensorData.setTemperature(temperature);
+        sensorData.setHumidity(humidity);
+        sensorData.setLight(light);
+        sensorData.setWind(wind);
+        sensorData.setTimestamp(timestamp != null ? timestamp : LocalDateTime.now());
+        decoded.increment();
+        return sensorData;
+    }
+
+    public long getDecodedCount() {
+        return decoded.sum();
+    }
+
+    public long getMalformedCount() {
+        return malformed.sum();
+    }
+
+    private Integer readInt(JsonParser parser, JsonToken value) throws Exception {
+        if (value == JsonToken.VALUE_NUMBER_INT) {
+            // Số vượt khoảng int là payload hỏng, không cắt bớt hay quy về 0 rồi lưu giá trị sai
+            if (parser.getNumberType() != JsonParser.NumberType.INT) {
+                throw new IllegalArgumentException("Numeric field out of int range: " + parser.getText());
+            }
+            return parser.getIntValue();
+        }
+        if (value == JsonToken.VALUE_NUMBER_FLOAT) {
+            return roundToInt(parser.getDoubleValue());
+        }
+        if (value == JsonToken.VALUE_STRING) {
+            // Firmware cũ gửi số dạng chuỗi ("25" hoặc "25.6")
+            return roundToInt(Double.parseDouble(parser.getText().trim()));
+        }
+        throw new IllegalArgumentException("Unexpected token for numeric field: " + value);
+    }
+
+    // Làm tròn gần nhất (nửa lên) như Math.round, giá trị không hữu hạn hoặc ngoài khoảng int là payload hỏng
+    private static int roundToInt(double value) {
+        long rounded = Math.round(value);
+        if (!Double.isFinite(value) || rounded < Integer.MIN_VALUE || rounded > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Numeric field out of int range: " + value);
+        }
+        return (int) rounded;
+    }
+
+    private LocalDateTime readTimestamp(JsonParser parser, JsonToken value) throws Exception {
+        // Hỗ trợ epoch millis hoặc chuỗi ISO-8601: giờ địa phương (yyyy-MM-ddTHH:mm:ss) hoặc có offset / "Z"
+        if (value == JsonToken.VALUE_NUMBER_INT) {
+            return LocalDateTime.ofInstant(Instant.ofEpochMilli(parser.getLongValue()), ZoneId.systemDefault());
+        }
+        if (value == JsonToken.VALUE_STRING) {
+            TemporalAccessor parsed = DateTimeFormatter.ISO_DATE_TIME.parseBest(parser.getText().trim(),
+                    ZonedDateTime::from, LocalDateTime::from);
+            // Thời điểm có offset được đổi về múi giờ của backend, như epoch millis
+            return parsed instanceof ZonedDateTime
+                    ? LocalDateTime.ofInstant(((ZonedDateTime) parsed).toInstant(), ZoneId.systemDefault())
+                    : (LocalDateTime) parsed;
+        }
+        throw new IllegalArgumentException("Unexpected token for timestamp: " + value);
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.demo.exception;
+
+/**
+ * Tham số request không hợp lệ (cursor, khoảng thời gian, phân trang, format export, luật...).
+ * Chỉ exception này được ApiExceptionHandler trả về 400; IllegalArgumentException từ code của server
+ * hay thư viện vẫn là lỗi 500.
+ */
+public class InvalidRequestException extends RuntimeException {
+
+    public InvalidRequestException(String message) {
+        super(message);
+    }
+
+    public InvalidRequestException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
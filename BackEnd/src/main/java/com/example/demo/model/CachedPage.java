@@ -0,0 +1,22 @@
+package com.example.demo.model;
+
+/**
+ * Trang lịch sử đã tính sẵn cùng ETag mạnh (hash của JSON), dùng chung giữa các request giống nhau.
+ */
+public class CachedPage<T> {
+    private final T body;
+    private final String etag;
+
+    public CachedPage(T body, String etag) {
+        this.body = body;
+        this.etag = etag;
+    }
+
+    public T getBody() {
+        return body;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.demo.model;
+
+public class ControlResultDTO {
+    private String deviceName;
+    private String active;
+    private boolean success;
+    private int status;
+    private String message;
+
+    public String getDeviceName() {
+        return deviceName;
+    }
+
+    public String getActive() {
+        return active;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public ControlResultDTO setDeviceName(String deviceName) {
+        this.deviceName = deviceName;
+        return this;
+    }
+
+    public ControlResultDTO setActive(String active) {
+        this.active = active;
+        return this;
+    }
+
+    public ControlResultDTO setSuccess(boolean success) {
+        this.success = success;
+        return this;
+    }
+
+    public ControlResultDTO setStatus(int status) {
+        this.status = status;
+        return this;
+    }
+
+    public ControlResultDTO setMessage(String message) {
+        this.message = message;
+        return this;
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.demo.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * Response của /sensor và /led, cùng tên field với Map trước đây. Trang offset có currentPage/totalItems/totalPages,
+ * trang cursor có nextCursor/prevCursor và tổng số tuỳ chọn; field null không được ghi ra.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record HistoryPageDTO<T>(List<T> content, Integer pageSize, Integer currentPage, Long totalItems,
+                                Integer totalPages, String nextCursor, String prevCursor, Long totalItemsApprox) {
+
+    public static <T> HistoryPageDTO<T> offset(List<T> content, int pageSize, int pageNumber, long totalItems) {
+        int totalPages = pageSize > 0 ? (int) ((totalItems + pageSize - 1) / pageSize) : 1;
+        return new HistoryPageDTO<>(content, pageSize, pageNumber + 1, totalItems, totalPages, null, null, null);
+    }
+
+    public static <T> HistoryPageDTO<T> cursor(List<T> content, int pageSize, String nextCursor, String prevCursor,
+                                               Long totalItems, Long totalItemsApprox) {
+        return new HistoryPageDTO<>(content, pageSize, null, totalItems, null, nextCursor, prevCursor, totalItemsApprox);
+    }
+}
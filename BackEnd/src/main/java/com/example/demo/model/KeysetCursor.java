@@ -0,0 +1,61 @@
+package com.example.demo.model;
+
+import com.example.demo.exception.InvalidRequestException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * Cursor cho phân trang keyset theo (timestamp, id).
+ * Client chỉ nhận chuỗi base64 nên có thể đổi định dạng bên trong mà không ảnh hưởng frontend.
+ */
+public class KeysetCursor {
+    private static final char NEXT = 'n';
+    private static final char PREV = 'p';
+
+    private final boolean backward;
+    private final LocalDateTime timestamp;
+    private final Long id;
+
+    private KeysetCursor(boolean backward, LocalDateTime timestamp, Long id) {
+        this.backward = backward;
+        this.timestamp = timestamp;
+        this.id = id;
+    }
+
+    public static String next(LocalDateTime timestamp, Long id) {
+        return new KeysetCursor(false, timestamp, id).encode();
+    }
+
+    public static String prev(LocalDateTime timestamp, Long id) {
+        return new KeysetCursor(true, timestamp, id).encode();
+    }
+
+    public static KeysetCursor decode(String value) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", 3);
+            return new KeysetCursor(parts[0].charAt(0) == PREV, LocalDateTime.parse(parts[1]), Long.valueOf(parts[2]));
+        } catch (RuntimeException e) {
+            throw new InvalidRequestException("Invalid cursor: " + value, e);
+        }
+    }
+
+    public boolean isBackward() {
+        return backward;
+    }
+
+    public LocalDateTime getTimestamp() {
+        return timestamp;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    private String encode() {
+        String raw = (backward ? PREV : NEXT) + "|" + timestamp + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
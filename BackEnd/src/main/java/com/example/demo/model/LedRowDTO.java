@@ -0,0 +1,9 @@
+package com.example.demo.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Một dòng lịch sử điều khiển đọc thẳng từ câu SELECT (không qua entity).
+ */
+public record LedRowDTO(Long id, String deviceName, String active, LocalDateTime timestamp) {
+}
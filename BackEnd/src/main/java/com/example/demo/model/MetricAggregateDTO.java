@@ -0,0 +1,44 @@
+package com.example.demo.model;
+
+public class MetricAggregateDTO {
+    private Integer min;
+    private Integer max;
+    private Double avg;
+    private Long sum;
+
+    public Integer getMin() {
+        return min;
+    }
+
+    public Integer getMax() {
+        return max;
+    }
+
+    public Double getAvg() {
+        return avg;
+    }
+
+    public Long getSum() {
+        return sum;
+    }
+
+    public MetricAggregateDTO setMin(Integer min) {
+        this.min = min;
+        return this;
+    }
+
+    public MetricAggregateDTO setMax(Integer max) {
+        this.max = max;
+        return this;
+    }
+
+    public MetricAggregateDTO setAvg(Double avg) {
+        this.avg = avg;
+        return this;
+    }
+
+    public MetricAggregateDTO setSum(Long sum) {
+        this.sum = sum;
+        return this;
+    }
+}
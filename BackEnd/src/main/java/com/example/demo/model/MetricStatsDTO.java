@@ -0,0 +1,64 @@
+package com.example.demo.model;
+
+public class MetricStatsDTO {
+    private Long count;
+    private Double avg;
+    private Integer min;
+    private Integer max;
+    private Double stddev;
+    private Double ratePerMinute;
+
+    public Long getCount() {
+        return count;
+    }
+
+    public Double getAvg() {
+        return avg;
+    }
+
+    public Integer getMin() {
+        return min;
+    }
+
+    public Integer getMax() {
+        return max;
+    }
+
+    public Double getStddev() {
+        return stddev;
+    }
+
+    public Double getRatePerMinute() {
+        return ratePerMinute;
+    }
+
+    public MetricStatsDTO setCount(Long count) {
+        this.count = count;
+        return this;
+    }
+
+    public MetricStatsDTO setAvg(Double avg) {
+        this.avg = avg;
+        return this;
+    }
+
+    public MetricStatsDTO setMin(Integer min) {
+        this.min = min;
+        return this;
+    }
+
+    public MetricStatsDTO setMax(Integer max) {
+        this.max = max;
+        return this;
+    }
+
+    public MetricStatsDTO setStddev(Double stddev) {
+        this.stddev = stddev;
+        return this;
+    }
+
+    public MetricStatsDTO setRatePerMinute(Double ratePerMinute) {
+        this.ratePerMinute = ratePerMinute;
+        return this;
+    }
+}
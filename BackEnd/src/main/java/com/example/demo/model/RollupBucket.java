@@ -0,0 +1,30 @@
+package com.example.demo.model;
+
+import com.example.demo.exception.InvalidRequestException;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+public enum RollupBucket {
+    MINUTE(ChronoUnit.MINUTES),
+    HOUR(ChronoUnit.HOURS),
+    DAY(ChronoUnit.DAYS);
+
+    private final ChronoUnit unit;
+
+    RollupBucket(ChronoUnit unit) {
+        this.unit = unit;
+    }
+
+    public LocalDateTime truncate(LocalDateTime timestamp) {
+        return timestamp.truncatedTo(unit);
+    }
+
+    public static RollupBucket fromParam(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new InvalidRequestException("Unsupported bucket: " + value + " (minute, hour, day)");
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.demo.model;
+
+/**
+ * Luật ngưỡng chạy trên từng bản ghi cảm biến, ví dụ: temperature > 35 thì bật fan.
+ * <p>
+ * deviceId để trống nghĩa là áp dụng cho mọi node. operator là ">" hoặc "<". Sau khi kích hoạt,
+ * luật chỉ nhả khi giá trị lùi qua threshold -/+ hysteresis (gửi clearAction nếu có);
+ * cooldownMs chặn việc gửi lệnh lặp lại quá dày cho cùng luật và node.
+ */
+public class RuleDTO {
+    private String id;
+    private String deviceId;
+    private String metric;
+    private String operator;
+    private int threshold;
+    private int hysteresis;
+    private String targetDevice;
+    private String action;
+    private String clearAction;
+    private long cooldownMs;
+
+    public String getId() {
+        return id;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public String getMetric() {
+        return metric;
+    }
+
+    public String getOperator() {
+        return operator;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public int getHysteresis() {
+        return hysteresis;
+    }
+
+    public String getTargetDevice() {
+        return targetDevice;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public String getClearAction() {
+        return clearAction;
+    }
+
+    public long getCooldownMs() {
+        return cooldownMs;
+    }
+
+    public RuleDTO setId(String id) {
+        this.id = id;
+        return this;
+    }
+
+    public RuleDTO setDeviceId(String deviceId) {
+        this.deviceId = deviceId;
+        return this;
+    }
+
+    public RuleDTO setMetric(String metric) {
+        this.metric = metric;
+        return this;
+    }
+
+    public RuleDTO setOperator(String operator) {
+        this.operator = operator;
+        return this;
+    }
+
+    public RuleDTO setThreshold(int threshold) {
+        this.threshold = threshold;
+        return this;
+    }
+
+    public RuleDTO setHysteresis(int hysteresis) {
+        this.hysteresis = hysteresis;
+        return this;
+    }
+
+    public RuleDTO setTargetDevice(String targetDevice) {
+        this.targetDevice = targetDevice;
+        return this;
+    }
+
+    public RuleDTO setAction(String action) {
+        this.action = action;
+        return this;
+    }
+
+    public RuleDTO setClearAction(String clearAction) {
+        this.clearAction = clearAction;
+        return this;
+    }
+
+    public RuleDTO setCooldownMs(long cooldownMs) {
+        this.cooldownMs = cooldownMs;
+        return this;
+    }
+}
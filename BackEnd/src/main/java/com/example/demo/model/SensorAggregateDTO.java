@@ -0,0 +1,66 @@
+package com.example.demo.model;
+
+import java.time.LocalDateTime;
+
+public class SensorAggregateDTO {
+    private LocalDateTime bucketStart;
+    private Long count;
+    private MetricAggregateDTO temperature;
+    private MetricAggregateDTO humidity;
+    private MetricAggregateDTO light;
+    private MetricAggregateDTO wind;
+
+    public LocalDateTime getBucketStart() {
+        return bucketStart;
+    }
+
+    public Long getCount() {
+        return count;
+    }
+
+    public MetricAggregateDTO getTemperature() {
+        return temperature;
+    }
+
+    public MetricAggregateDTO getHumidity() {
+        return humidity;
+    }
+
+    public MetricAggregateDTO getLight() {
+        return light;
+    }
+
+    public MetricAggregateDTO getWind() {
+        return wind;
+    }
+
+    public SensorAggregateDTO setBucketStart(LocalDateTime bucketStart) {
+        this.bucketStart = bucketStart;
+        return this;
+    }
+
+    public SensorAggregateDTO setCount(Long count) {
+        this.count = count;
+        return this;
+    }
+
+    public SensorAggregateDTO setTemperature(MetricAggregateDTO temperature) {
+        this.temperature = temperature;
+        return this;
+    }
+
+    public SensorAggregateDTO setHumidity(MetricAggregateDTO humidity) {
+        this.humidity = humidity;
+        return this;
+    }
+
+    public SensorAggregateDTO setLight(MetricAggregateDTO light) {
+        this.light = light;
+        return this;
+    }
+
+    public SensorAggregateDTO setWind(MetricAggregateDTO wind) {
+        this.wind = wind;
+        return this;
+    }
+}
@@ -4,6 +4,7 @@ import java.time.LocalDateTime;
 
 public class SensorDTO {
     private Long id;
+    private String deviceId;
     private Integer temperature;
     private Integer humidity;
     private Integer light;
@@ -14,6 +15,10 @@ public class SensorDTO {
         return id;
     }
 
+    public String getDeviceId() {
+        return deviceId;
+    }
+
     public Integer getHumidity() {
         return humidity;
     }
@@ -39,6 +44,11 @@ public class SensorDTO {
         return this;
     }
 
+    public SensorDTO setDeviceId(String deviceId) {
+        this.deviceId = deviceId;
+        return this;
+    }
+
     public SensorDTO setHumidity(Integer humidity) {
         this.humidity = humidity;
         return this;
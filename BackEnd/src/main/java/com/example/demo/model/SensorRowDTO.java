@@ -0,0 +1,10 @@
+package com.example.demo.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Một dòng lịch sử sensor đọc thẳng từ câu SELECT (không qua entity). Metric null được trả về 0 như SensorDTO.
+ */
+public record SensorRowDTO(Long id, String deviceId, int temperature, int humidity, int light, int wind,
+                           LocalDateTime timestamp) {
+}
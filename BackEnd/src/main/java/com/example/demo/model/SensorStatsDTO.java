@@ -0,0 +1,96 @@
+package com.example.demo.model;
+
+import java.time.LocalDateTime;
+
+public class SensorStatsDTO {
+    private String deviceId;
+    private String window;
+    private Long count;
+    private LocalDateTime from;
+    private LocalDateTime to;
+    private MetricStatsDTO temperature;
+    private MetricStatsDTO humidity;
+    private MetricStatsDTO light;
+    private MetricStatsDTO wind;
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public String getWindow() {
+        return window;
+    }
+
+    public Long getCount() {
+        return count;
+    }
+
+    public LocalDateTime getFrom() {
+        return from;
+    }
+
+    public LocalDateTime getTo() {
+        return to;
+    }
+
+    public MetricStatsDTO getTemperature() {
+        return temperature;
+    }
+
+    public MetricStatsDTO getHumidity() {
+        return humidity;
+    }
+
+    public MetricStatsDTO getLight() {
+        return light;
+    }
+
+    public MetricStatsDTO getWind() {
+        return wind;
+    }
+
+    public SensorStatsDTO setDeviceId(String deviceId) {
+        this.deviceId = deviceId;
+        return this;
+    }
+
+    public SensorStatsDTO setWindow(String window) {
+        this.window = window;
+        return this;
+    }
+
+    public SensorStatsDTO setCount(Long count) {
+        this.count = count;
+        return this;
+    }
+
+    public SensorStatsDTO setFrom(LocalDateTime from) {
+        this.from = from;
+        return this;
+    }
+
+    public SensorStatsDTO setTo(LocalDateTime to) {
+        this.to = to;
+        return this;
+    }
+
+    public SensorStatsDTO setTemperature(MetricStatsDTO temperature) {
+        this.temperature = temperature;
+        return this;
+    }
+
+    public SensorStatsDTO setHumidity(MetricStatsDTO humidity) {
+        this.humidity = humidity;
+        return this;
+    }
+
+    public SensorStatsDTO setLight(MetricStatsDTO light) {
+        this.light = light;
+        return this;
+    }
+
+    public SensorStatsDTO setWind(MetricStatsDTO wind) {
+        this.wind = wind;
+        return this;
+    }
+}
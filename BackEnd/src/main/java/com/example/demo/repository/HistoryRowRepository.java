@@ -0,0 +1,99 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.LedRowDTO;
+import com.example.demo.model.SensorRowDTO;
+import com.example.demo.repository.entity.LedEntity;
+import com.example.demo.repository.entity.SensorEntity;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * Đọc trang lịch sử bằng constructor projection: Hibernate tạo thẳng record từ từng dòng kết quả,
+ * không tạo entity, không đưa vào persistence context nên không có dirty checking hay snapshot.
+ * Dùng chung Specification của {@link com.example.demo.repository.specification.HistoryFilter}.
+ * Offset là int như setFirstResult của JPA; phía service kiểm tra tràn qua {@code HistoryFilter.offset}.
+ * <p>
+ * Không phải repository của Spring Data nên không có trong spring.data.repository.invocations:
+ * thời gian truy vấn được đo riêng bằng timer iot.history.query (tag resource = sensor / led).
+ */
+@Repository
+public class HistoryRowRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    public List<SensorRowDTO> findSensorRows(Specification<SensorEntity> filter, Sort sort, int offset, int limit) {
+        return findRows("sensor", SensorEntity.class, SensorRowDTO.class, filter, sort, offset, limit, (root, cb) -> new Selection<?>[]{
+                root.get("id"),
+                root.get("deviceId"),
+                cb.coalesce(root.<Integer>get("temperature"), 0),
+                cb.coalesce(root.<Integer>get("humidity"), 0),
+                cb.coalesce(root.<Integer>get("light"), 0),
+                cb.coalesce(root.<Integer>get("wind"), 0),
+                root.get("timestamp")
+        });
+    }
+
+    public List<LedRowDTO> findLedRows(Specification<LedEntity> filter, Sort sort, int offset, int limit) {
+        return findRows("led", LedEntity.class, LedRowDTO.class, filter, sort, offset, limit, (root, cb) -> new Selection<?>[]{
+                root.get("id"),
+                root.get("deviceName"),
+                root.get("active"),
+                root.get("timestamp")
+        });
+    }
+
+    private <E, R> List<R> findRows(String resource, Class<E> entityType, Class<R> rowType, Specification<E> filter,
+                                    Sort sort, int offset, int limit,
+                                    BiFunction<Root<E>, CriteriaBuilder, Selection<?>[]> columns) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String state = "error";
+        try {
+            List<R> rows = queryRows(entityType, rowType, filter, sort, offset, limit, columns);
+            state = "success";
+            return rows;
+        } finally {
+            sample.stop(Timer.builder("iot.history.query")
+                    .description("History page row query latency")
+                    .tag("resource", resource)
+                    .tag("state", state)
+                    .register(meterRegistry));
+        }
+    }
+
+    private <E, R> List<R> queryRows(Class<E> entityType, Class<R> rowType, Specification<E> filter, Sort sort,
+                                     int offset, int limit,
+                                     BiFunction<Root<E>, CriteriaBuilder, Selection<?>[]> columns) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<R> query = cb.createQuery(rowType);
+        Root<E> root = query.from(entityType);
+        query.select(cb.construct(rowType, columns.apply(root, cb)));
+        Predicate predicate = filter.toPredicate(root, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        query.orderBy(QueryUtils.toOrders(sort, root, cb));
+        return entityManager.createQuery(query)
+                .setFirstResult(offset)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+}
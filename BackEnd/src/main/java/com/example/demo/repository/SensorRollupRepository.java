@@ -0,0 +1,15 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.RollupBucket;
+import com.example.demo.repository.entity.SensorRollupEntity;
+import com.example.demo.repository.entity.SensorRollupId;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface SensorRollupRepository extends JpaRepository<SensorRollupEntity, SensorRollupId> {
+    List<SensorRollupEntity> findByBucketAndBucketStartBetweenOrderByBucketStartAsc(RollupBucket bucket,
+                                                                                  LocalDateTime from,
+                                                                                  LocalDateTime to);
+}
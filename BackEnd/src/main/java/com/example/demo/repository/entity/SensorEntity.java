@@ -8,9 +8,14 @@ import java.time.LocalDateTime;
 @Table(name="sensordata")
 public class SensorEntity {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Dùng sequence (pooled) thay cho IDENTITY để Hibernate có thể gom insert thành JDBC batch
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sensordata_seq")
+    @SequenceGenerator(name = "sensordata_seq", sequenceName = "sensordata_seq", allocationSize = 50)
     private Long id;
 
+    @Column(name = "device_id")
+    private String deviceId;
+
     @Column(name = "temperature")
     private Integer temperature;
 
@@ -26,6 +31,14 @@ public class SensorEntity {
     @Column(name = "timestamp")
     private LocalDateTime timestamp;
 
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public void setDeviceId(String deviceId) {
+        this.deviceId = deviceId;
+    }
+
     public Integer getWind() {
         return wind;
     }
@@ -0,0 +1,223 @@
+package com.example.demo.repository.entity;
+
+import com.example.demo.model.RollupBucket;
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "sensordata_rollup")
+@IdClass(SensorRollupId.class)
+public class SensorRollupEntity {
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(name = "bucket")
+    private RollupBucket bucket;
+
+    @Id
+    @Column(name = "bucket_start")
+    private LocalDateTime bucketStart;
+
+    @Column(name = "sample_count")
+    private Long sampleCount;
+
+    @Column(name = "temperature_count")
+    private Long temperatureCount;
+
+    @Column(name = "temperature_sum")
+    private Long temperatureSum;
+
+    @Column(name = "temperature_min")
+    private Integer temperatureMin;
+
+    @Column(name = "temperature_max")
+    private Integer temperatureMax;
+
+    @Column(name = "humidity_count")
+    private Long humidityCount;
+
+    @Column(name = "humidity_sum")
+    private Long humiditySum;
+
+    @Column(name = "humidity_min")
+    private Integer humidityMin;
+
+    @Column(name = "humidity_max")
+    private Integer humidityMax;
+
+    @Column(name = "light_count")
+    private Long lightCount;
+
+    @Column(name = "light_sum")
+    private Long lightSum;
+
+    @Column(name = "light_min")
+    private Integer lightMin;
+
+    @Column(name = "light_max")
+    private Integer lightMax;
+
+    @Column(name = "wind_count")
+    private Long windCount;
+
+    @Column(name = "wind_sum")
+    private Long windSum;
+
+    @Column(name = "wind_min")
+    private Integer windMin;
+
+    @Column(name = "wind_max")
+    private Integer windMax;
+
+    public RollupBucket getBucket() {
+        return bucket;
+    }
+
+    public void setBucket(RollupBucket bucket) {
+        this.bucket = bucket;
+    }
+
+    public LocalDateTime getBucketStart() {
+        return bucketStart;
+    }
+
+    public void setBucketStart(LocalDateTime bucketStart) {
+        this.bucketStart = bucketStart;
+    }
+
+    public Long getSampleCount() {
+        return sampleCount;
+    }
+
+    public void setSampleCount(Long sampleCount) {
+        this.sampleCount = sampleCount;
+    }
+
+    public Long getTemperatureCount() {
+        return temperatureCount;
+    }
+
+    public void setTemperatureCount(Long temperatureCount) {
+        this.temperatureCount = temperatureCount;
+    }
+
+    public Long getTemperatureSum() {
+        return temperatureSum;
+    }
+
+    public void setTemperatureSum(Long temperatureSum) {
+        this.temperatureSum = temperatureSum;
+    }
+
+    public Integer getTemperatureMin() {
+        return temperatureMin;
+    }
+
+    public void setTemperatureMin(Integer temperatureMin) {
+        this.temperatureMin = temperatureMin;
+    }
+
+    public Integer getTemperatureMax() {
+        return temperatureMax;
+    }
+
+    public void setTemperatureMax(Integer temperatureMax) {
+        this.temperatureMax = temperatureMax;
+    }
+
+    public Long getHumidityCount() {
+        return humidityCount;
+    }
+
+    public void setHumidityCount(Long humidityCount) {
+        this.humidityCount = humidityCount;
+    }
+
+    public Long getHumiditySum() {
+        return humiditySum;
+    }
+
+    public void setHumiditySum(Long humiditySum) {
+        this.humiditySum = humiditySum;
+    }
+
+    public Integer getHumidityMin() {
+        return humidityMin;
+    }
+
+    public void setHumidityMin(Integer humidityMin) {
+        this.humidityMin = humidityMin;
+    }
+
+    public Integer getHumidityMax() {
+        return humidityMax;
+    }
+
+    public void setHumidityMax(Integer humidityMax) {
+        this.humidityMax = humidityMax;
+    }
+
+    public Long getLightCount() {
+        return lightCount;
+    }
+
+    public void setLightCount(Long lightCount) {
+        this.lightCount = lightCount;
+    }
+
+    public Long getLightSum() {
+        return lightSum;
+    }
+
+    public void setLightSum(Long lightSum) {
+        this.lightSum = lightSum;
+    }
+
+    public Integer getLightMin() {
+        return lightMin;
+    }
+
+    public void setLightMin(Integer lightMin) {
+        this.lightMin = lightMin;
+    }
+
+    public Integer getLightMax() {
+        return lightMax;
+    }
+
+    public void setLightMax(Integer lightMax) {
+        this.lightMax = lightMax;
+    }
+
+    public Long getWindCount() {
+        return windCount;
+    }
+
+    public void setWindCount(Long windCount) {
+        this.windCount = windCount;
+    }
+
+    public Long getWindSum() {
+        return windSum;
+    }
+
+    public void setWindSum(Long windSum) {
+        this.windSum = windSum;
+    }
+
+    public Integer getWindMin() {
+        return windMin;
+    }
+
+    public void setWindMin(Integer windMin) {
+        this.windMin = windMin;
+    }
+
+    public Integer getWindMax() {
+        return windMax;
+    }
+
+    public void setWindMax(Integer windMax) {
+        this.windMax = windMax;
+    }
+}
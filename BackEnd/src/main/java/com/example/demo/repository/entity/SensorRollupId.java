@@ -0,0 +1,33 @@
+package com.example.demo.repository.entity;
+
+import com.example.demo.model.RollupBucket;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+public class SensorRollupId implements Serializable {
+    private RollupBucket bucket;
+    private LocalDateTime bucketStart;
+
+    public SensorRollupId() {
+    }
+
+    public SensorRollupId(RollupBucket bucket, LocalDateTime bucketStart) {
+        this.bucket = bucket;
+        this.bucketStart = bucketStart;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SensorRollupId)) return false;
+        SensorRollupId that = (SensorRollupId) o;
+        return bucket == that.bucket && Objects.equals(bucketStart, that.bucketStart);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(bucket, bucketStart);
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.demo.repository.specification;
+
+import com.example.demo.exception.InvalidRequestException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Dựng Specification cho các API lịch sử từ query params.
+ * Chỉ sinh predicate cho tham số có mặt, nên MySQL nhận được câu WHERE gọn
+ * và dùng được index (range scan) thay vì mẫu "(:x IS NULL OR col = :x)".
+ * <p>
+ * Quy ước tham số: {@code <field>} so sánh bằng, {@code <field>Min}/{@code <field>Max} lọc khoảng (bao gồm hai đầu),
+ * {@code timestamp} so sánh bằng, {@code from}/{@code to} lọc khoảng thời gian.
+ */
+public class HistoryFilter<T> {
+
+    // Giới hạn pageSize của các API lịch sử; trang lớn hơn nên dùng export
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yyyy, HH:mm:ss");
+
+    private final Map<String, Object> params;
+    private final List<Specification<T>> predicates = new ArrayList<>();
+
+    private HistoryFilter(Map<String, Object> params) {
+        this.params = params;
+    }
+
+    public static <T> HistoryFilter<T> of(Map<String, Object> params) {
+        return new HistoryFilter<>(params);
+    }
+
+    public HistoryFilter<T> equal(String field) {
+        String value = param(field);
+        if (value != null) {
+            predicates.add((root, query, cb) -> cb.equal(root.get(field), value));
+        }
+        return this;
+    }
+
+    public HistoryFilter<T> intRange(String field) {
+        String exact = param(field);
+        if (exact != null) {
+            Integer value = parseInt(field, exact);
+            predicates.add((root, query, cb) -> cb.equal(root.<Integer>get(field), value));
+        }
+        String min = param(field + "Min");
+        if (min != null) {
+            Integer value = parseInt(field + "Min", min);
+            predicates.add((root, query, cb) -> cb.greaterThanOrEqualTo(root.<Integer>get(field), value));
+        }
+        String max = param(field + "Max");
+        if (max != null) {
+            Integer value = parseInt(field + "Max", max);
+            predicates.add((root, query, cb) -> cb.lessThanOrEqualTo(root.<Integer>get(field), value));
+        }
+        return this;
+    }
+
+    public HistoryFilter<T> timestampRange(String field) {
+        String exact = param("timestamp");
+        if (exact != null) {
+            LocalDateTime value = parseTimestamp(exact);
+            predicates.add((root, query, cb) -> cb.equal(root.<LocalDateTime>get(field), value));
+        }
+        String from = param("from");
+        if (from != null) {
+            LocalDateTime value = parseTimestamp(from);
+            predicates.add((root, query, cb) -> cb.greaterThanOrEqualTo(root.<LocalDateTime>get(field), value));
+        }
+        String to = param("to");
+        if (to != null) {
+            LocalDateTime value = parseTimestamp(to);
+            predicates.add((root, query, cb) -> cb.lessThanOrEqualTo(root.<LocalDateTime>get(field), value));
+        }
+        return this;
+    }
+
+    public Specification<T> build() {
+        return Specification.allOf(predicates);
+    }
+
+    /**
+     * Điều kiện seek của phân trang keyset: (timestamp, id) đứng sau cursor theo chiều sắp xếp.
+     * Viết dạng {@code ts >= c AND (ts > c OR id > cid)} để MySQL vẫn range scan trên (timestamp, id).
+     */
+    public static <T> Specification<T> keyset(LocalDateTime cursorTimestamp, Long cursorId, boolean ascending) {
+        if (cursorTimestamp == null) {
+            return Specification.where(null);
+        }
+        return (root, query, cb) -> ascending
+                ? cb.and(cb.greaterThanOrEqualTo(root.<LocalDateTime>get("timestamp"), cursorTimestamp),
+                        cb.or(cb.greaterThan(root.<LocalDateTime>get("timestamp"), cursorTimestamp),
+                                cb.greaterThan(root.<Long>get("id"), cursorId)))
+                : cb.and(cb.lessThanOrEqualTo(root.<LocalDateTime>get("timestamp"), cursorTimestamp),
+                        cb.or(cb.lessThan(root.<LocalDateTime>get("timestamp"), cursorTimestamp),
+                                cb.lessThan(root.<Long>get("id"), cursorId)));
+    }
+
+    public static LocalDateTime parseTimestamp(String value) {
+        // Định dạng "dd/MM/yyyy, HH:mm:ss" như giao diện đang gửi, chấp nhận thêm ISO-8601
+        try {
+            return LocalDateTime.parse(value, TIMESTAMP_FORMAT);
+        } catch (DateTimeParseException e) {
+            try {
+                return LocalDateTime.parse(value);
+            } catch (DateTimeParseException iso) {
+                throw new InvalidRequestException("Invalid timestamp: " + value, iso);
+            }
+        }
+    }
+
+    /**
+     * Tham số số nguyên (pageSize, pageNumber...) trong khoảng [min, max], thiếu thì lấy giá trị mặc định.
+     */
+    public static int intParam(Map<String, Object> params, String name, int defaultValue, int min, int max) {
+        Object raw = params.get(name);
+        if (raw == null) {
+            return defaultValue;
+        }
+        int value = parseInt(name, raw.toString());
+        if (value < min || value > max) {
+            throw new InvalidRequestException(name + " must be between " + min + " and " + max + ": " + value);
+        }
+        return value;
+    }
+
+    /**
+     * Offset của trang pageNumber; JPA chỉ nhận offset kiểu int nên trang vượt quá bị từ chối thay vì bị ép kiểu
+     * thành số âm hoặc quay vòng về một trang khác.
+     */
+    public static int offset(int pageNumber, int pageSize) {
+        long offset = (long) pageNumber * pageSize;
+        if (offset > Integer.MAX_VALUE) {
+            throw new InvalidRequestException("pageNumber too large for pageSize " + pageSize + ": " + pageNumber);
+        }
+        return (int) offset;
+    }
+
+    /**
+     * Thứ tự cho phân trang offset từ sortBy / sortDirection; chỉ nhận các cột trong {@code sortable}
+     * để tên lạ không lọt xuống Criteria API thành lỗi 500.
+     */
+    public static Sort sort(Map<String, Object> params, Set<String> sortable) {
+        String sortBy = params.containsKey("sortBy") ? params.get("sortBy").toString() : "timestamp";
+        String sortDirection = params.containsKey("sortDirection") ? params.get("sortDirection").toString() : "desc";
+        if (!sortable.contains(sortBy)) {
+            throw new InvalidRequestException("Unsupported sortBy: " + sortBy + " " + sortable);
+        }
+        return Sort.by(Sort.Direction.fromOptionalString(sortDirection)
+                .orElseThrow(() -> new InvalidRequestException("Invalid sortDirection: " + sortDirection)), sortBy);
+    }
+
+    /**
+     * Phân trang cursor luôn theo (timestamp, id) mới nhất trước, cursor không mang thứ tự sắp xếp:
+     * sortBy / sortDirection đi kèm sẽ cho kết quả sai lệch một cách âm thầm nên bị từ chối.
+     */
+    public static void requireCursorOrder(Map<String, Object> params) {
+        if (params.containsKey("sortBy") || params.containsKey("sortDirection")) {
+            throw new InvalidRequestException("Cursor paging is ordered by timestamp, id (newest first); "
+                    + "sortBy and sortDirection are only supported with pageNumber paging");
+        }
+    }
+
+    private static int parseInt(String name, String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new InvalidRequestException("Invalid " + name + ": " + value, e);
+        }
+    }
+
+    private String param(String name) {
+        Object value = params.get(name);
+        return value != null && !value.toString().isBlank() ? value.toString() : null;
+    }
+}
@@ -0,0 +1,6 @@
+package com.example.demo.service;
+
+public interface DataRetentionService {
+    void createFuturePartitions();
+    void applyRetention();
+}
@@ -0,0 +1,12 @@
+package com.example.demo.service;
+
+import com.example.demo.model.ExportFormat;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+public interface ExportService {
+    void exportSensor(Map<String, Object> params, ExportFormat format, Writer out) throws IOException;
+    void exportLed(Map<String, Object> params, ExportFormat format, Writer out) throws IOException;
+}
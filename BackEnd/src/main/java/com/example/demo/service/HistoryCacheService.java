@@ -0,0 +1,16 @@
+package com.example.demo.service;
+
+import com.example.demo.model.CachedPage;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.function.Supplier;
+
+public interface HistoryCacheService {
+    String SENSOR = "sensor";
+    String LED = "led";
+
+    <T> CachedPage<T> get(String resource, Map<String, Object> params, Supplier<T> loader);
+    void invalidate(String resource, String device, LocalDateTime from, LocalDateTime to);
+    void invalidateAll(String resource);
+}
@@ -0,0 +1,14 @@
+package com.example.demo.service;
+
+import com.example.demo.model.SensorDTO;
+import com.example.demo.repository.entity.SensorEntity;
+
+import java.util.Map;
+
+public interface LatestStateService {
+    SensorDTO getLatestSensorData();
+    SensorDTO getLatestSensorData(String deviceId);
+    SensorDTO updateSensorData(SensorEntity sensorData);
+    Map<String, String> getDeviceStatuses();
+    void updateDeviceStatus(String deviceName, String status);
+}
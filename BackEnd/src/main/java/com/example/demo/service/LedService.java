@@ -1,13 +1,23 @@
 package com.example.demo.service;
 
+import com.example.demo.model.ControlResultDTO;
+import com.example.demo.model.HistoryPageDTO;
+import com.example.demo.model.LedDTO;
+import com.example.demo.model.LedRowDTO;
 import com.example.demo.repository.entity.LedEntity;
 import org.springframework.http.ResponseEntity;
 
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public interface LedService {
-    Map<String, Object> getLed(Map<String, Object> params);
+    // Thiết bị điều khiển được, mỗi thiết bị trả lời trên <tên>/confirmation
+    List<String> DEVICES = List.of("fan", "airConditioner", "lightbulb", "warning");
+
+    HistoryPageDTO<LedRowDTO> getLed(Map<String, Object> params);
     Map<String, String> getCurrentDeviceStatuses();
-    ResponseEntity<String> controlLed(String deviceName, String action);
+    CompletableFuture<ResponseEntity<String>> controlLed(String deviceName, String action);
+    CompletableFuture<List<ControlResultDTO>> controlLeds(List<LedDTO> commands);
     void saveLedData(LedEntity ledData);
 }
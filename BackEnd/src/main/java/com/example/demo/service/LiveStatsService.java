@@ -0,0 +1,9 @@
+package com.example.demo.service;
+
+import com.example.demo.model.SensorStatsDTO;
+import com.example.demo.repository.entity.SensorEntity;
+
+public interface LiveStatsService {
+    void record(SensorEntity reading);
+    SensorStatsDTO getStats(String window, String deviceId);
+}
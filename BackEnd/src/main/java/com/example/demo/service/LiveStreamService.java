@@ -0,0 +1,11 @@
+package com.example.demo.service;
+
+import com.example.demo.model.SensorDTO;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+public interface LiveStreamService {
+    SseEmitter subscribe();
+    void publishSensorData(SensorDTO sensorData);
+    void publishDeviceStatus(String deviceName, String status);
+    int getSubscriberCount();
+}
@@ -0,0 +1,12 @@
+package com.example.demo.service;
+
+import com.example.demo.model.RuleDTO;
+import com.example.demo.repository.entity.SensorEntity;
+
+import java.util.List;
+
+public interface RuleEngineService {
+    void evaluate(SensorEntity reading);
+    List<RuleDTO> getRules();
+    void setRules(List<RuleDTO> rules);
+}
@@ -0,0 +1,8 @@
+package com.example.demo.service;
+
+import com.example.demo.repository.entity.SensorEntity;
+
+public interface SensorIngestService {
+    boolean submit(SensorEntity sensorData);
+    int getQueueSize();
+}
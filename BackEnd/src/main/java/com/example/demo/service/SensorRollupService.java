@@ -0,0 +1,12 @@
+package com.example.demo.service;
+
+import com.example.demo.model.SensorAggregateDTO;
+import com.example.demo.repository.entity.SensorEntity;
+
+import java.util.List;
+import java.util.Map;
+
+public interface SensorRollupService {
+    void accumulate(List<SensorEntity> sensorData);
+    List<SensorAggregateDTO> getAggregates(Map<String, Object> params);
+}
@@ -1,12 +1,17 @@
 package com.example.demo.service;
 
+import com.example.demo.model.HistoryPageDTO;
 import com.example.demo.model.SensorDTO;
+import com.example.demo.model.SensorRowDTO;
 import com.example.demo.repository.entity.SensorEntity;
 
+import java.util.List;
 import java.util.Map;
 
 public interface SensorService {
-    Map<String, Object> getSensor(Map<String, Object> params);
+    HistoryPageDTO<SensorRowDTO> getSensor(Map<String, Object> params);
     SensorDTO getLatestSensorData();
+    SensorDTO getLatestSensorData(String deviceId);
     void saveSensorData(SensorEntity sensorData);
+    void saveSensorData(List<SensorEntity> sensorData);
 }
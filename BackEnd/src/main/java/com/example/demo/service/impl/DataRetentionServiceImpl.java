@@ -0,0 +1,196 @@
+package com.example.demo.service.impl;
+
+import com.example.demo.service.DataRetentionService;
+import com.example.demo.service.HistoryCacheService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Quản lý partition theo tháng của sensordata và ledcontrol (xem db/005_time_partitioning.sql):
+ * tạo trước partition cho các tháng tới, gộp dữ liệu thô cũ vào sensordata_rollup rồi
+ * xoá nguyên partition, thay vì DELETE từng dòng.
+ */
+@Service
+public class DataRetentionServiceImpl implements DataRetentionService {
+
+    private static final String SENSOR_TABLE = "sensordata";
+    private static final String LED_TABLE = "ledcontrol";
+    private static final String MAX_PARTITION = "pmax";
+    private static final DateTimeFormatter PARTITION_NAME = DateTimeFormatter.ofPattern("'p'yyyyMM");
+    private static final DateTimeFormatter BOUND = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static final String PARTITIONS_SQL = "SELECT PARTITION_NAME, PARTITION_DESCRIPTION "
+            + "FROM information_schema.PARTITIONS "
+            + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL "
+            + "ORDER BY PARTITION_ORDINAL_POSITION";
+
+    // Cùng thứ tự cột với db/002_sensordata_rollup.sql; NULL bị bỏ qua như khi ingest cộng dồn
+    private static final String ROLLUP_COLUMNS = "COUNT(*), "
+            + "COUNT(temperature), COALESCE(SUM(temperature), 0), MIN(temperature), MAX(temperature), "
+            + "COUNT(humidity), COALESCE(SUM(humidity), 0), MIN(humidity), MAX(humidity), "
+            + "COUNT(light), COALESCE(SUM(light), 0), MIN(light), MAX(light), "
+            + "COUNT(wind), COALESCE(SUM(wind), 0), MIN(wind), MAX(wind)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private HistoryCacheService historyCacheService;
+
+    @Value("${iot.retention.enabled:false}")
+    private boolean enabled;
+
+    @Value("${iot.retention.partitions-ahead:3}")
+    private int partitionsAhead;
+
+    @Value("${iot.retention.sensor-raw-months:3}")
+    private int sensorRawMonths;
+
+    @Value("${iot.retention.led-months:12}")
+    private int ledMonths;
+
+    @Value("${iot.retention.minute-rollup-days:30}")
+    private int minuteRollupDays;
+
+    @Value("${iot.retention.hour-rollup-months:24}")
+    private int hourRollupMonths;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        if (enabled) {
+            createFuturePartitions();
+        }
+    }
+
+    @Scheduled(cron = "${iot.retention.cron:0 30 2 * * *}")
+    public void runMaintenance() {
+        if (!enabled) {
+            return;
+        }
+        createFuturePartitions();
+        applyRetention();
+    }
+
+    @Override
+    public void createFuturePartitions() {
+        for (String table : List.of(SENSOR_TABLE, LED_TABLE)) {
+            try {
+                List<String> names = jdbcTemplate.queryForList(
+                        "SELECT PARTITION_NAME FROM information_schema.PARTITIONS "
+                                + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL",
+                        String.class, table);
+                if (!names.contains(MAX_PARTITION)) {
+                    System.err.println("Table " + table + " is not partitioned, skipping partition maintenance");
+                    continue;
+                }
+                YearMonth month = YearMonth.now();
+                for (int i = 0; i <= partitionsAhead; i++, month = month.plusMonths(1)) {
+                    String name = month.format(PARTITION_NAME);
+                    if (!names.contains(name)) {
+                        // Tách pmax: pmax luôn rỗng nên REORGANIZE gần như không tốn chi phí
+                        jdbcTemplate.execute("ALTER TABLE " + table + " REORGANIZE PARTITION " + MAX_PARTITION + " INTO ("
+                                + "PARTITION " + name + " VALUES LESS THAN ('" + month.plusMonths(1).atDay(1) + "'), "
+                                + "PARTITION " + MAX_PARTITION + " VALUES LESS THAN (MAXVALUE))");
+                        System.out.println("Created partition " + table + "." + name);
+                    }
+                }
+            } catch (Exception e) {
+                System.err.println("Failed to create partitions for " + table + ": " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void applyRetention() {
+        LocalDate today = LocalDate.now();
+        dropExpiredPartitions(SENSOR_TABLE, today.minusMonths(sensorRawMonths).withDayOfMonth(1).atStartOfDay(), true);
+        dropExpiredPartitions(LED_TABLE, today.minusMonths(ledMonths).withDayOfMonth(1).atStartOfDay(), false);
+        historyCacheService.invalidateAll(HistoryCacheService.SENSOR);
+        historyCacheService.invalidateAll(HistoryCacheService.LED);
+
+        // Bảng rollup nhỏ và có khoá chính (bucket, bucket_start) nên xoá theo khoảng vẫn là range scan
+        try {
+            jdbcTemplate.update("DELETE FROM sensordata_rollup WHERE bucket = 'MINUTE' AND bucket_start < ?",
+                    Timestamp.valueOf(today.minusDays(minuteRollupDays).atStartOfDay()));
+            jdbcTemplate.update("DELETE FROM sensordata_rollup WHERE bucket = 'HOUR' AND bucket_start < ?",
+                    Timestamp.valueOf(today.minusMonths(hourRollupMonths).atStartOfDay()));
+        } catch (Exception e) {
+            System.err.println("Failed to apply rollup retention: " + e.getMessage());
+        }
+    }
+
+    private void dropExpiredPartitions(String table, LocalDateTime cutoff, boolean downsample) {
+        try {
+            List<String[]> partitions = jdbcTemplate.query(PARTITIONS_SQL,
+                    (rs, rowNum) -> new String[]{rs.getString(1), rs.getString(2)}, table);
+            for (String[] partition : partitions) {
+                String name = partition[0];
+                String description = partition[1];
+                if (MAX_PARTITION.equals(name) || description == null || description.contains("MAXVALUE")) {
+                    continue;
+                }
+                // PARTITION_DESCRIPTION có dạng '2024-02-01 00:00:00' hoặc '2024-02-01'
+                String bound = description.replace("'", "").trim();
+                LocalDateTime upperBound = bound.length() > 10
+                        ? LocalDateTime.parse(bound, BOUND)
+                        : LocalDate.parse(bound).atStartOfDay();
+                if (upperBound.isAfter(cutoff)) {
+                    break;
+                }
+                if (downsample) {
+                    downsamplePartition(name);
+                }
+                jdbcTemplate.execute("ALTER TABLE " + table + " DROP PARTITION " + name);
+                System.out.println("Dropped partition " + table + "." + name + " (data before " + upperBound + ")");
+            }
+        } catch (Exception e) {
+            System.err.println("Failed to apply retention for " + table + ": " + e.getMessage());
+        }
+    }
+
+    private void downsamplePartition(String partition) {
+        // Rollup được ingest duy trì sẵn; chỉ dựng lại từ dữ liệu thô cho khoảng chưa có rollup
+        // (ví dụ dữ liệu cũ hơn bảng rollup) để không cộng trùng.
+        LocalDateTime[] range = jdbcTemplate.queryForObject(
+                "SELECT MIN(timestamp), MAX(timestamp) FROM " + SENSOR_TABLE + " PARTITION (" + partition + ")",
+                (rs, rowNum) -> rs.getTimestamp(1) == null ? null
+                        : new LocalDateTime[]{rs.getTimestamp(1).toLocalDateTime(), rs.getTimestamp(2).toLocalDateTime()});
+        if (range == null) {
+            return;
+        }
+        Timestamp from = Timestamp.valueOf(range[0].toLocalDate().atStartOfDay());
+        Timestamp to = Timestamp.valueOf(range[1]);
+
+        if (!hasRollups("HOUR", from, to)) {
+            jdbcTemplate.update("INSERT INTO sensordata_rollup "
+                    + "SELECT 'HOUR', DATE_FORMAT(timestamp, '%Y-%m-%d %H:00:00'), " + ROLLUP_COLUMNS
+                    + " FROM " + SENSOR_TABLE + " PARTITION (" + partition + ")"
+                    + " GROUP BY DATE_FORMAT(timestamp, '%Y-%m-%d %H:00:00')");
+        }
+        if (!hasRollups("DAY", from, to)) {
+            jdbcTemplate.update("INSERT INTO sensordata_rollup "
+                    + "SELECT 'DAY', DATE(timestamp), " + ROLLUP_COLUMNS
+                    + " FROM " + SENSOR_TABLE + " PARTITION (" + partition + ")"
+                    + " GROUP BY DATE(timestamp)");
+        }
+    }
+
+    private boolean hasRollups(String bucket, Timestamp from, Timestamp to) {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM sensordata_rollup WHERE bucket = ? AND bucket_start BETWEEN ? AND ?",
+                Integer.class, bucket, from, to);
+        return count != null && count > 0;
+    }
+}
@@ -0,0 +1,234 @@
+package com.example.demo.service.impl;
+
+import com.example.demo.service.impl.PendingCommandRegistry.PendingCommand;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hàng đợi lệnh điều khiển theo từng thiết bị.
+ * <ul>
+ *     <li>Mỗi thiết bị có tối đa max-in-flight lệnh đã gửi mà chưa kết thúc (xác nhận, lỗi hoặc hết timeout).
+ *     Lệnh đến khi cửa sổ đầy chờ trong một ô duy nhất giữ trạng thái mong muốn mới nhất: lệnh chờ khác
+ *     hành động bị thay thế (superseded), lệnh trùng hành động dùng chung kết quả.</li>
+ *     <li>Lệnh trùng hành động với lệnh mới nhất đang gửi thì dùng chung kết quả, không publish thêm.</li>
+ *     <li>Chưa có xác nhận thì gửi lại cùng correlation ID với backoff luỹ thừa, tối đa max-attempts lần gửi;
+ *     nếu lúc đó đã có trạng thái mới hơn đang chờ thì bỏ lệnh cũ và gửi trạng thái mới vào chỗ của nó.</li>
+ * </ul>
+ * Publish luôn chạy trên luồng riêng: với QoS >= 1, MqttClient.publish chờ PUBACK (do luồng callback của Paho
+ * xử lý), nên không được gọi từ luồng callback hay trong lúc giữ khoá của thiết bị.
+ */
+@Component
+public class DeviceCommandScheduler {
+
+    @Autowired
+    private PendingCommandRegistry pendingCommandRegistry;
+
+    @Autowired
+    private MqttClient mqttClient;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${iot.control.timeout-ms:5000}")
+    private long controlTimeoutMs;
+
+    @Value("${iot.control.correlation-id-enabled:false}")
+    private boolean correlationIdEnabled;
+
+    @Value("${iot.control.qos:1}")
+    private int qos;
+
+    @Value("${iot.control.max-in-flight:1}")
+    private int maxInFlight;
+
+    @Value("${iot.control.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${iot.control.retry-backoff-ms:1000}")
+    private long retryBackoffMs;
+
+    @Value("${iot.control.publish-threads:2}")
+    private int publishThreads;
+
+    private final Map<String, DeviceQueue> devices = new ConcurrentHashMap<>();
+    private ScheduledExecutorService publisher;
+
+    @PostConstruct
+    public void start() {
+        publisher = Executors.newScheduledThreadPool(publishThreads, r -> {
+            Thread thread = new Thread(r, "device-command-publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        publisher.shutdownNow();
+    }
+
+    /**
+     * @return future hoàn thành với trạng thái thiết bị xác nhận ("on", "off" hoặc "failure"); lỗi
+     * TimeoutException khi quá timeoutMs, CancellationException khi lệnh bị thay bằng lệnh mới hơn
+     */
+    public CompletableFuture<String> submit(String deviceName, String action, long timeoutMs) {
+        CompletableFuture<String> result = new CompletableFuture<String>().orTimeout(timeoutMs, TimeUnit.MILLISECONDS);
+        DeviceQueue device = devices.get(deviceName);
+        if (device == null) {
+            device = devices.computeIfAbsent(deviceName, DeviceQueue::new);
+        }
+        device.submit(action, result);
+        return result;
+    }
+
+    private final class DeviceQueue {
+        private final String deviceName;
+        private final List<Command> inFlight = new ArrayList<>();
+        // Trạng thái mong muốn mới nhất chưa được gửi vì cửa sổ đầy
+        private Command queued;
+
+        private DeviceQueue(String deviceName) {
+            this.deviceName = deviceName;
+        }
+
+        private synchronized void submit(String action, CompletableFuture<String> waiter) {
+            Command newest = inFlight.isEmpty() ? null : inFlight.get(inFlight.size() - 1);
+            if (queued != null && queued.action.equals(action)) {
+                queued.waiters.add(waiter);
+                count("iot.control.coalesced");
+                return;
+            }
+            if (queued != null) {
+                supersede(queued.waiters, action);
+                queued = null;
+            }
+            if (newest != null && newest.action.equals(action)) {
+                newest.waiters.add(waiter);
+                count("iot.control.coalesced");
+                return;
+            }
+            Command command = new Command(action);
+            command.waiters.add(waiter);
+            if (inFlight.size() < maxInFlight) {
+                dispatch(command);
+            } else {
+                queued = command;
+            }
+        }
+
+        private void dispatch(Command command) {
+            inFlight.add(command);
+            command.pending = pendingCommandRegistry.register(deviceName, command.action, controlTimeoutMs);
+            String payload = correlationIdEnabled
+                    ? command.action + PendingCommandRegistry.CORRELATION_SEPARATOR + command.pending.getCorrelationId()
+                    : command.action;
+            command.payload = payload.getBytes();
+            // Xác nhận tới trên luồng callback của Paho: ở đó chỉ cập nhật trạng thái, việc publish đẩy sang publisher
+            command.pending.getFuture().whenComplete((status, error) -> finished(command, status, error));
+            publisher.execute(() -> publish(command));
+        }
+
+        private void publish(Command command) {
+            synchronized (this) {
+                if (command.pending.getFuture().isDone()) {
+                    return;
+                }
+                command.attempts++;
+            }
+            MqttException failure = null;
+            try {
+                mqttClient.publish(deviceName, command.payload, qos, false);
+                meterRegistry.counter("iot.control.publishes", "device", deviceName,
+                        "attempt", command.attempts == 1 ? "first" : "retry").increment();
+            } catch (MqttException e) {
+                failure = e;
+            }
+            synchronized (this) {
+                if (command.attempts < maxAttempts) {
+                    long backoffMs = retryBackoffMs << Math.min(command.attempts - 1, 16);
+                    publisher.schedule(() -> retry(command), backoffMs, TimeUnit.MILLISECONDS);
+                } else if (failure != null) {
+                    command.pending.getFuture().completeExceptionally(failure);
+                }
+                // Hết số lần gửi mà publish thành công: chờ xác nhận tới hết timeout của lệnh
+            }
+        }
+
+        private void retry(Command command) {
+            synchronized (this) {
+                if (command.pending.getFuture().isDone()) {
+                    return;
+                }
+                if (queued != null) {
+                    // Không gửi lại trạng thái đã cũ, nhường chỗ trong cửa sổ cho trạng thái mới nhất
+                    command.pending.getFuture().completeExceptionally(
+                            new CancellationException("Superseded by a newer command: " + queued.action));
+                    return;
+                }
+            }
+            publish(command);
+        }
+
+        private synchronized void finished(Command command, String status, Throwable error) {
+            inFlight.remove(command);
+            if (error instanceof CancellationException) {
+                count("iot.control.superseded", command.waiters.size());
+            }
+            for (CompletableFuture<String> waiter : command.waiters) {
+                if (error != null) {
+                    waiter.completeExceptionally(error);
+                } else {
+                    waiter.complete(status);
+                }
+            }
+            if (queued != null && inFlight.size() < maxInFlight) {
+                Command next = queued;
+                queued = null;
+                dispatch(next);
+            }
+        }
+
+        private void supersede(List<CompletableFuture<String>> waiters, String action) {
+            count("iot.control.superseded", waiters.size());
+            for (CompletableFuture<String> waiter : waiters) {
+                waiter.completeExceptionally(new CancellationException("Superseded by a newer command: " + action));
+            }
+        }
+
+        private void count(String name) {
+            count(name, 1);
+        }
+
+        private void count(String name, int amount) {
+            meterRegistry.counter(name, "device", deviceName).increment(amount);
+        }
+    }
+
+    private static final class Command {
+        private final String action;
+        private final List<CompletableFuture<String>> waiters = new ArrayList<>();
+        private PendingCommand pending;
+        private byte[] payload;
+        private int attempts;
+
+        private Command(String action) {
+            this.action = action;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.demo.service.impl;
+
+import com.example.demo.model.ExportFormat;
+import com.example.demo.repository.specification.HistoryFilter;
+import com.example.demo.service.ExportService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Xuất lịch sử bằng cursor JDBC chỉ đọc một chiều: mỗi dòng được ghi thẳng ra response rồi bỏ đi,
+ * không qua entity/DTO, nên bộ nhớ không phụ thuộc độ dài khoảng thời gian.
+ * Chạy trong transaction chỉ đọc để đi sang read replica khi có cấu hình.
+ */
+@Service
+public class ExportServiceImpl implements ExportService {
+
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+
+    private static final Column[] SENSOR_COLUMNS = {
+            new Column("id", "id", ColumnType.NUMBER),
+            new Column("device_id", "deviceId", ColumnType.STRING),
+            new Column("temperature", "temperature", ColumnType.NUMBER),
+            new Column("humidity", "humidity", ColumnType.NUMBER),
+            new Column("light", "light", ColumnType.NUMBER),
+            new Column("wind", "wind", ColumnType.NUMBER),
+            new Column("timestamp", "timestamp", ColumnType.TIMESTAMP)
+    };
+
+    private static final Column[] LED_COLUMNS = {
+            new Column("id", "id", ColumnType.NUMBER),
+            new Column("devicename", "deviceName", ColumnType.STRING),
+            new Column("active", "active", ColumnType.STRING),
+            new Column("timestamp", "timestamp", ColumnType.TIMESTAMP)
+    };
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${iot.export.fetch-size:1000}")
+    private int fetchSize;
+
+    @Override
+    @Transactional(readOnly = true)
+    public void exportSensor(Map<String, Object> params, ExportFormat format, Writer out) throws IOException {
+        List<Object> args = new ArrayList<>();
+        StringBuilder where = new StringBuilder(" WHERE 1 = 1");
+        appendEqual(where, args, params, "deviceId", "device_id");
+        appendTimeRange(where, args, params);
+        export("sensordata", SENSOR_COLUMNS, where.toString(), args, format, out);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void exportLed(Map<String, Object> params, ExportFormat format, Writer out) throws IOException {
+        List<Object> args = new ArrayList<>();
+        StringBuilder where = new StringBuilder(" WHERE 1 = 1");
+        appendEqual(where, args, params, "deviceName", "devicename");
+        appendEqual(where, args, params, "active", "active");
+        appendTimeRange(where, args, params);
+        export("ledcontrol", LED_COLUMNS, where.toString(), args, format, out);
+    }
+
+    private void export(String table, Column[] columns, String where, List<Object> args,
+                        ExportFormat format, Writer out) throws IOException {
+        StringBuilder select = new StringBuilder("SELECT ");
+        for (int i = 0; i < columns.length; i++) {
+            select.append(i > 0 ? ", " : "").append(columns[i].name);
+        }
+        // Theo index (timestamp, id) nên MySQL đọc tuần tự, không cần sort
+        String sql = select + " FROM " + table + where + " ORDER BY timestamp, id";
+
+        if (format == ExportFormat.CSV) {
+            for (int i = 0; i < columns.length; i++) {
+                out.write(i > 0 ? "," : "");
+                out.write(columns[i].label);
+            }
+            out.write('\n');
+        }
+
+        try {
+            jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(sql,
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                // Connector/J mặc định đọc toàn bộ kết quả vào bộ nhớ; Integer.MIN_VALUE bật chế độ stream từng dòng
+                boolean mysql = connection.getMetaData().getDatabaseProductName().toLowerCase().contains("mysql");
+                statement.setFetchSize(mysql ? Integer.MIN_VALUE : fetchSize);
+                for (int i = 0; i < args.size(); i++) {
+                    statement.setObject(i + 1, args.get(i));
+                }
+                return statement;
+            }, (ResultSet rs) -> {
+                try {
+                    if (format == ExportFormat.CSV) {
+                        writeCsvRow(rs, columns, out);
+                    } else {
+                        writeJsonRow(rs, columns, out);
+                    }
+                } catch (IOException e) {
+                    // Client ngắt kết nối: dừng đọc cursor
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        out.flush();
+    }
+
+    private void writeCsvRow(ResultSet rs, Column[] columns, Writer out) throws SQLException, IOException {
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            String value = readValue(rs, i + 1, columns[i].type);
+            if (value == null) {
+                continue;
+            }
+            if (columns[i].type == ColumnType.STRING && needsCsvQuoting(value)) {
+                out.write('"');
+                out.write(value.replace("\"", "\"\""));
+                out.write('"');
+            } else {
+                out.write(value);
+            }
+        }
+        out.write('\n');
+    }
+
+    private void writeJsonRow(ResultSet rs, Column[] columns, Writer out) throws SQLException, IOException {
+        out.write('{');
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.write('"');
+            out.write(columns[i].label);
+            out.write("\":");
+            String value = readValue(rs, i + 1, columns[i].type);
+            if (value == null) {
+                out.write("null");
+            } else if (columns[i].type == ColumnType.NUMBER) {
+                out.write(value);
+            } else {
+                writeJsonString(value, out);
+            }
+        }
+        out.write("}\n");
+    }
+
+    private String readValue(ResultSet rs, int index, ColumnType type) throws SQLException {
+        switch (type) {
+            case NUMBER:
+                long number = rs.getLong(index);
+                return rs.wasNull() ? null : Long.toString(number);
+            case TIMESTAMP:
+                Timestamp timestamp = rs.getTimestamp(index);
+                return timestamp != null ? TIMESTAMP_FORMAT.format(timestamp.toLocalDateTime()) : null;
+            default:
+                return rs.getString(index);
+        }
+    }
+
+    private static boolean needsCsvQuoting(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void writeJsonString(String value, Writer out) throws IOException {
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.write('\\');
+                out.write(c);
+            } else if (c < 0x20) {
+                out.write(String.format("\\u%04x", (int) c));
+            } else {
+                out.write(c);
+            }
+        }
+        out.write('"');
+    }
+
+    private static void appendEqual(StringBuilder where, List<Object> args, Map<String, Object> params,
+                                    String param, String column) {
+        Object value = params.get(param);
+        if (value != null && !value.toString().isBlank()) {
+            where.append(" AND ").append(column).append(" = ?");
+            args.add(value.toString());
+        }
+    }
+
+    private static void appendTimeRange(StringBuilder where, List<Object> args, Map<String, Object> params) {
+        // Cùng định dạng from/to với /sensor và /led
+        if (params.containsKey("from")) {
+            where.append(" AND timestamp >= ?");
+            args.add(Timestamp.valueOf(HistoryFilter.parseTimestamp(params.get("from").toString())));
+        }
+        if (params.containsKey("to")) {
+            where.append(" AND timestamp <= ?");
+            args.add(Timestamp.valueOf(HistoryFilter.parseTimestamp(params.get("to").toString())));
+        }
+    }
+
+    private enum ColumnType {
+        NUMBER, STRING, TIMESTAMP
+    }
+
+    private static final class Column {
+        private final String name;
+        private final String label;
+        private final ColumnType type;
+
+        private Column(String name, String label, ColumnType type) {
+            this.name = name;
+            this.label = label;
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.example.demo.service.impl;
+
+import com.example.demo.model.CachedPage;
+import com.example.demo.model.KeysetCursor;
+import com.example.demo.repository.specification.HistoryFilter;
+import com.example.demo.service.HistoryCacheService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Cache LRU có giới hạn cho các trang /sensor và /led, key là tham số query đã chuẩn hoá.
+ * <p>
+ * Mỗi entry nhớ thiết bị và khoảng thời gian mà kết quả phụ thuộc (from/to của bộ lọc, thu hẹp theo cursor);
+ * ghi DB chỉ xoá các entry có khoảng giao với bản ghi mới, nên trang lịch sử cũ giữ nguyên tới khi hết TTL.
+ * Số thế hệ theo resource chặn việc đưa vào cache kết quả đã đọc trước một lần ghi đang commit.
+ * Khi có read replica, mỗi lần xoá được lặp lại sau độ trễ replica tối đa: trang đọc từ replica ngay sau khi ghi
+ * có thể chưa có bản ghi mới, không được giữ tới hết TTL.
+ */
+@Service
+public class HistoryCacheServiceImpl implements HistoryCacheService {
+
+    // Tham số lọc theo thiết bị của từng resource
+    private static final Map<String, String> DEVICE_PARAMS = Map.of(SENSOR, "deviceId", LED, "deviceName");
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${iot.history-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${iot.history-cache.max-entries:1000}")
+    private int maxEntries;
+
+    @Value("${iot.history-cache.ttl-ms:600000}")
+    private long ttlMs;
+
+    @Value("${iot.datasource.replica.url:}")
+    private String replicaUrl;
+
+    @Value("${iot.datasource.replica.max-lag-ms:5000}")
+    private long replicaMaxLagMs;
+
+    @Value("${iot.datasource.replica.check-interval-ms:2000}")
+    private long replicaCheckIntervalMs;
+
+    private ScheduledExecutorService delayedInvalidation;
+
+    // accessOrder = true: get() đưa entry lên cuối, entry đầu là entry ít dùng nhất
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void start() {
+        if (enabled && !replicaUrl.isBlank()) {
+            delayedInvalidation = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "history-cache-invalidation");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (delayedInvalidation != null) {
+            delayedInvalidation.shutdownNow();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> CachedPage<T> get(String resource, Map<String, Object> params, Supplier<T> loader) {
+        if (!enabled) {
+            return toPage(loader.get());
+        }
+        String key = resource + "?" + normalize(params);
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAt > now) {
+                meterRegistry.counter("iot.history.cache", "resource", resource, "result", "hit").increment();
+                // Key gồm resource nên entry luôn cùng kiểu với loader của resource đó
+                return (CachedPage<T>) entry.page;
+            }
+            if (entry != null) {
+                entries.remove(key);
+            }
+        }
+        meterRegistry.counter("iot.history.cache", "resource", resource, "result", "miss").increment();
+
+        AtomicLong generation = generation(resource);
+        long before = generation.get();
+        CachedPage<T> page = toPage(loader.get());
+        Entry entry = new Entry(resource, params, page, now + ttlMs);
+        synchronized (entries) {
+            // Có lần ghi commit trong lúc đọc: kết quả có thể đã cũ, trả về nhưng không cache
+            if (generation.get() == before) {
+                entries.put(key, entry);
+                Iterator<Entry> eldest = entries.values().iterator();
+                while (entries.size() > maxEntries && eldest.hasNext()) {
+                    eldest.next();
+                    eldest.remove();
+                }
+            }
+        }
+        return page;
+    }
+
+    @Override
+    public void invalidate(String resource, String device, LocalDateTime from, LocalDateTime to) {
+        remove(resource, entry -> entry.affectedBy(device, from, to));
+    }
+
+    @Override
+    public void invalidateAll(String resource) {
+        remove(resource, entry -> true);
+    }
+
+    private void remove(String resource, Predicate<Entry> affected) {
+        evict(resource, affected);
+        if (delayedInvalidation != null) {
+            // Replica chỉ được dùng khi độ trễ đo được <= max-lag, đo lại sau mỗi check-interval
+            delayedInvalidation.schedule(() -> evict(resource, affected),
+                    replicaMaxLagMs + replicaCheckIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void evict(String resource, Predicate<Entry> affected) {
+        synchronized (entries) {
+            generation(resource).incrementAndGet();
+            entries.values().removeIf(entry -> entry.resource.equals(resource) && affected.test(entry));
+        }
+    }
+
+    private AtomicLong generation(String resource) {
+        return generations.computeIfAbsent(resource, r -> new AtomicLong());
+    }
+
+    private <T> CachedPage<T> toPage(T body) {
+        try {
+            // ETag mạnh: cùng nội dung thì cùng chuỗi JSON, kể cả khi entry bị loại rồi tính lại
+            byte[] json = objectMapper.writeValueAsBytes(body);
+            return new CachedPage<>(body, "\"" + DigestUtils.md5DigestAsHex(json) + "\"");
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize history page", e);
+        }
+    }
+
+    private static String normalize(Map<String, Object> params) {
+        StringBuilder key = new StringBuilder();
+        new TreeMap<>(params).forEach((name, value) -> {
+            if (value != null && !value.toString().isBlank()) {
+                key.append(name).append('=').append(value.toString().trim()).append('&');
+            }
+        });
+        return key.toString();
+    }
+
+    private static final class Entry {
+        private final String resource;
+        private final String device;
+        private final LocalDateTime from;
+        private final LocalDateTime to;
+        private final CachedPage<?> page;
+        private final long expiresAt;
+
+        private Entry(String resource, Map<String, Object> params, CachedPage<?> page, long expiresAt) {
+            this.resource = resource;
+            this.page = page;
+            this.expiresAt = expiresAt;
+            Object deviceParam = params.get(DEVICE_PARAMS.get(resource));
+            device = deviceParam != null && !deviceParam.toString().isBlank() ? deviceParam.toString() : null;
+
+            LocalDateTime lower = null;
+            LocalDateTime upper = null;
+            if (params.containsKey("timestamp")) {
+                lower = HistoryFilter.parseTimestamp(params.get("timestamp").toString());
+                upper = lower;
+            }
+            if (params.containsKey("from")) {
+                lower = HistoryFilter.parseTimestamp(params.get("from").toString());
+            }
+            if (params.containsKey("to")) {
+                upper = HistoryFilter.parseTimestamp(params.get("to").toString());
+            }
+            // Trang cursor không kèm COUNT chỉ phụ thuộc các dòng phía sau cursor theo chiều đang đọc
+            Object cursorParam = params.get("cursor");
+            Object withTotal = params.get("withTotal");
+            if (cursorParam != null && !"exact".equalsIgnoreCase(String.valueOf(withTotal))) {
+                KeysetCursor cursor = KeysetCursor.decode(cursorParam.toString());
+                boolean ascending = "asc".equalsIgnoreCase(String.valueOf(params.get("sortDirection")));
+                if (ascending != cursor.isBackward()) {
+                    lower = max(lower, cursor.getTimestamp());
+                } else {
+                    upper = min(upper, cursor.getTimestamp());
+                }
+            }
+            from = lower;
+            to = upper;
+        }
+
+        private boolean affectedBy(String changedDevice, LocalDateTime changedFrom, LocalDateTime changedTo) {
+            if (device != null && changedDevice != null && !device.equals(changedDevice)) {
+                return false;
+            }
+            if (changedFrom == null || changedTo == null) {
+                return true;
+            }
+            return (from == null || !changedTo.isBefore(from)) && (to == null || !changedFrom.isAfter(to));
+        }
+
+        private static LocalDateTime max(LocalDateTime a, LocalDateTime b) {
+            return a == null || b.isAfter(a) ? b : a;
+        }
+
+        private static LocalDateTime min(LocalDateTime a, LocalDateTime b) {
+            return a == null || b.isBefore(a) ? b : a;
+        }
+    }
+}
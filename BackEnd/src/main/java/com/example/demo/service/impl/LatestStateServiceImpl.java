@@ -0,0 +1,117 @@
+package com.example.demo.service.impl;
+
+import com.example.demo.converter.SensorDTOConverter;
+import com.example.demo.model.SensorDTO;
+import com.example.demo.repository.LedRepository;
+import com.example.demo.repository.SensorRepository;
+import com.example.demo.repository.entity.LedEntity;
+import com.example.demo.repository.entity.SensorEntity;
+import com.example.demo.service.LatestStateService;
+import com.example.demo.service.LedService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Cache write-through cho trạng thái mới nhất của sensor và thiết bị.
+ * Ingest path cập nhật cache khi nhận dữ liệu, các endpoint polling đọc trực tiếp từ bộ nhớ.
+ */
+@Service
+public class LatestStateServiceImpl implements LatestStateService {
+
+    @Autowired
+    private SensorRepository sensorRepository;
+
+    @Autowired
+    private LedRepository ledRepository;
+
+    @Autowired
+    private SensorDTOConverter sensorDTOConverter;
+
+    private final AtomicReference<SensorDTO> latestSensor = new AtomicReference<>();
+
+    private final Map<String, SensorDTO> latestSensorByDevice = new ConcurrentHashMap<>();
+
+    // Snapshot bất biến, thay cả map khi có cập nhật để đọc không cần copy
+    private final AtomicReference<Map<String, String>> deviceStatuses = new AtomicReference<>(Map.of());
+
+    @PostConstruct
+    public void warmUp() {
+        try {
+            SensorEntity latestEntity = sensorRepository.findTopByOrderByTimestampDesc();
+            if (latestEntity != null) {
+                updateSensorData(latestEntity);
+            }
+            for (String deviceId : sensorRepository.findDeviceIds()) {
+                if (deviceId != null) {
+                    SensorEntity latestDeviceEntity = sensorRepository.findTopByDeviceIdOrderByTimestampDesc(deviceId);
+                    if (latestDeviceEntity != null) {
+                        updateSensorData(latestDeviceEntity);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Failed to warm latest sensor cache: " + e.getMessage());
+        }
+
+        Map<String, String> statuses = new HashMap<>();
+        for (String deviceName : LedService.DEVICES) {
+            String status = "unknown";
+            try {
+                LedEntity latestLedEntity = ledRepository.findTopByDeviceNameOrderByTimestampDesc(deviceName);
+                if (latestLedEntity != null) {
+                    status = latestLedEntity.getActive();
+                }
+            } catch (Exception e) {
+                System.err.println("Failed to warm device status cache for " + deviceName + ": " + e.getMessage());
+            }
+            statuses.put(deviceName, status);
+        }
+        deviceStatuses.set(Map.copyOf(statuses));
+    }
+
+    @Override
+    public SensorDTO getLatestSensorData() {
+        return latestSensor.get();
+    }
+
+    @Override
+    public SensorDTO updateSensorData(SensorEntity sensorData) {
+        SensorDTO dto = sensorDTOConverter.toSensorDTO(sensorData);
+        // Không ghi đè bằng bản ghi cũ hơn (message đến trễ)
+        latestSensor.accumulateAndGet(dto, LatestStateServiceImpl::newer);
+        if (dto.getDeviceId() != null) {
+            latestSensorByDevice.merge(dto.getDeviceId(), dto, LatestStateServiceImpl::newer);
+        }
+        return dto;
+    }
+
+    @Override
+    public SensorDTO getLatestSensorData(String deviceId) {
+        return latestSensorByDevice.get(deviceId);
+    }
+
+    private static SensorDTO newer(SensorDTO current, SensorDTO next) {
+        return current == null || current.getTimestamp() == null || next.getTimestamp() == null
+                || !next.getTimestamp().isBefore(current.getTimestamp()) ? next : current;
+    }
+
+    @Override
+    public Map<String, String> getDeviceStatuses() {
+        return deviceStatuses.get();
+    }
+
+    @Override
+    public void updateDeviceStatus(String deviceName, String status) {
+        deviceStatuses.updateAndGet(current -> {
+            Map<String, String> next = new HashMap<>(current);
+            next.put(deviceName, status);
+            return Map.copyOf(next);
+        });
+    }
+}
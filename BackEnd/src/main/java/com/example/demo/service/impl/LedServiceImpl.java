@@ -1,16 +1,30 @@
 package com.example.demo.service.impl;
 
-import com.example.demo.converter.LedDTOConverter;
+import com.example.demo.config.MqttConnectionManager;
+import com.example.demo.model.ControlResultDTO;
+import com.example.demo.model.HistoryPageDTO;
+import com.example.demo.model.KeysetCursor;
 import com.example.demo.model.LedDTO;
+import com.example.demo.model.LedRowDTO;
+import com.example.demo.repository.HistoryRowRepository;
 import com.example.demo.repository.LedRepository;
 import com.example.demo.repository.entity.LedEntity;
+import com.example.demo.repository.specification.HistoryFilter;
+import com.example.demo.service.HistoryCacheService;
+import com.example.demo.service.LatestStateService;
 import com.example.demo.service.LedService;
-import org.eclipse.paho.client.mqttv3.*;
+import com.example.demo.service.LiveStreamService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.*;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.PostConstruct;
 import java.time.LocalDate;
@@ -23,193 +37,262 @@ import java.util.concurrent.*;
 @Service
 public class LedServiceImpl implements LedService {
 
+    // Cột được phép làm sortBy ở phân trang offset
+    private static final Set<String> SORTABLE = Set.of("id", "deviceName", "active", "timestamp");
+
     @Autowired
     private LedRepository ledRepository;
 
     @Autowired
-    private LedDTOConverter ledDTOConverter;
+    private HistoryRowRepository historyRowRepository;
 
     @Autowired
-    private MqttClient mqttClient;
+    private MqttConnectionManager mqttConnectionManager;
 
-    // Map to hold CompletableFuture for each device awaiting confirmation
-    private final Map<String, CompletableFuture<String>> confirmationFutures = new ConcurrentHashMap<>();
+    @Autowired
+    private LatestStateService latestStateService;
 
-    @Override
-    public Map<String, Object> getLed(Map<String, Object> params) {
-        String deviceName = params.containsKey("deviceName") ? params.get("deviceName").toString() : null;
-        String active = params.containsKey("active") ? params.get("active").toString() : null;
+    @Autowired
+    private LiveStreamService liveStreamService;
 
-        LocalDateTime exactTimestamp = null;
+    @Autowired
+    private HistoryCacheService historyCacheService;
 
-        // Kiểm tra và xử lý tham số timestamp
-        if (params.containsKey("timestamp")) {
-            String timestampParam = params.get("timestamp").toString();
+    @Autowired
+    private PendingCommandRegistry pendingCommandRegistry;
 
-            // Nếu timestamp có định dạng "dd/MM/yyyy, HH:mm:ss"
-            DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern("dd/MM/yyyy, HH:mm:ss");
-            exactTimestamp = LocalDateTime.parse(timestampParam, dateTimeFormatter);
-        }
+    @Autowired
+    private DeviceCommandScheduler deviceCommandScheduler;
 
-        // Get pageSize and pageNumber from params
-        int pageSize = params.containsKey("pageSize") ? Integer.parseInt(params.get("pageSize").toString()) : 10;
-        int pageNumber = params.containsKey("pageNumber") ? Integer.parseInt(params.get("pageNumber").toString()) : 0;
+    @Autowired
+    private MeterRegistry meterRegistry;
 
-        // Handle sorting
-        String sortBy = params.containsKey("sortBy") ? params.get("sortBy").toString() : "timestamp";
-        String sortDirection = params.containsKey("sortDirection") ? params.get("sortDirection").toString() : "desc";
-        Sort sort = Sort.by(Sort.Direction.fromString(sortDirection), sortBy);
+    @Value("${iot.control.timeout-ms:5000}")
+    private long controlTimeoutMs;
 
-        Pageable pageable = PageRequest.of(pageNumber, pageSize, sort);
+    @Override
+    @Transactional(readOnly = true)
+    public HistoryPageDTO<LedRowDTO> getLed(Map<String, Object> params) {
+        // Chỉ các tham số có mặt mới thành điều kiện WHERE, thời gian lọc theo from/to hoặc timestamp chính xác
+        Specification<LedEntity> filter = HistoryFilter.<LedEntity>of(params)
+                .equal("deviceName")
+                .equal("active")
+                .timestampRange("timestamp")
+                .build();
+
+        // Get pageSize and pageNumber from params
+        int pageSize = HistoryFilter.intParam(params, "pageSize", 10, 1, HistoryFilter.MAX_PAGE_SIZE);
+        int pageNumber = HistoryFilter.intParam(params, "pageNumber", 0, 0, Integer.MAX_VALUE);
 
-        // Gọi repository với Pageable và điều kiện tìm kiếm
-        Page<LedEntity> ledEntities = ledRepository.findByExactTimestamp(
-                deviceName, active, exactTimestamp, pageable
-        );
+        // Chế độ cursor (keyset): trang N có chi phí như trang đầu, không cần COUNT(*)
+        if (params.containsKey("cursor") || "cursor".equals(params.get("paging"))) {
+            HistoryFilter.requireCursorOrder(params);
+            return getLedByCursor(filter, pageSize, params);
+        }
 
-        // Chuyển đổi Page<LedEntity> thành List<LedDTO>
-        List<LedDTO> ledDTOs = ledDTOConverter.toLedDTOs(ledEntities.getContent());
+        Sort sort = HistoryFilter.sort(params, SORTABLE);
+        int offset = HistoryFilter.offset(pageNumber, pageSize);
 
-        // Tạo response map với thông tin phân trang
-        Map<String, Object> response = new HashMap<>();
-        response.put("content", ledDTOs);
-        response.put("currentPage", ledEntities.getNumber() + 1);
-        response.put("totalItems", ledEntities.getTotalElements());
-        response.put("totalPages", ledEntities.getTotalPages());
+        // Đọc thẳng thành record, không hydrate entity
+        List<LedRowDTO> rows = historyRowRepository.findLedRows(filter, sort, offset, pageSize);
 
-        return response;
+        // Như Page của Spring Data: trang cuối chưa đầy thì suy ra tổng, không cần COUNT
+        long totalItems = rows.size() < pageSize && (offset == 0 || !rows.isEmpty())
+                ? (long) offset + rows.size()
+                : ledRepository.count(filter);
+        return HistoryPageDTO.offset(rows, pageSize, pageNumber, totalItems);
     }
 
 
-    @Override
-    public Map<String, String> getCurrentDeviceStatuses() {
-        Map<String, String> deviceStatuses = new HashMap<>();
+    private HistoryPageDTO<LedRowDTO> getLedByCursor(Specification<LedEntity> filter, int pageSize,
+                                                     Map<String, Object> params) {
+        KeysetCursor cursor = params.containsKey("cursor") ? KeysetCursor.decode(params.get("cursor").toString()) : null;
+        boolean backward = cursor != null && cursor.isBackward();
+        // Trang mới nhất trước; khi lùi về trang trước thì seek theo chiều ngược lại rồi đảo kết quả
+        boolean seekAscending = backward;
+        Sort seekOrder = Sort.by(seekAscending ? Sort.Direction.ASC : Sort.Direction.DESC, "timestamp", "id");
+
+        Specification<LedEntity> seek = cursor != null
+                ? filter.and(HistoryFilter.keyset(cursor.getTimestamp(), cursor.getId(), seekAscending))
+                : filter;
+        // Lấy dư một dòng để biết còn trang tiếp theo hay không, không chạy COUNT
+        List<LedRowDTO> rows = historyRowRepository.findLedRows(seek, seekOrder, 0, pageSize + 1);
+
+        boolean more = rows.size() > pageSize;
+        List<LedRowDTO> page = new ArrayList<>(more ? rows.subList(0, pageSize) : rows);
+        if (backward) {
+            Collections.reverse(page);
+        }
+        boolean hasNext = backward || more;
+        boolean hasPrev = backward ? more : cursor != null;
+
+        String nextCursor = null;
+        String prevCursor = null;
+        if (!page.isEmpty()) {
+            LedRowDTO first = page.get(0);
+            LedRowDTO last = page.get(page.size() - 1);
+            nextCursor = hasNext ? KeysetCursor.next(last.timestamp(), last.id()) : null;
+            prevCursor = hasPrev ? KeysetCursor.prev(first.timestamp(), first.id()) : null;
+        }
 
-        // List of your device names
-        List<String> deviceNames = Arrays.asList("fan", "airConditioner", "lightbulb", "warning");
+        // Tổng số bản ghi là tuỳ chọn: withTotal=exact chạy COUNT, withTotal=approx dùng thống kê của bảng
+        String withTotal = params.containsKey("withTotal") ? params.get("withTotal").toString() : "none";
+        Long totalItems = "exact".equalsIgnoreCase(withTotal) ? ledRepository.count(filter) : null;
+        Long totalItemsApprox = "approx".equalsIgnoreCase(withTotal) ? ledRepository.estimateCount() : null;
 
-        for (String deviceName : deviceNames) {
-            LedEntity latestLedEntity = ledRepository.findTopByDeviceNameOrderByTimestampDesc(deviceName);
-            if (latestLedEntity != null) {
-                deviceStatuses.put(deviceName, latestLedEntity.getActive());
-            } else {
-                // Default status if no data found
-                deviceStatuses.put(deviceName, "unknown");
-            }
-        }
+        return HistoryPageDTO.cursor(page, pageSize, nextCursor, prevCursor, totalItems, totalItemsApprox);
+    }
 
-        return deviceStatuses;
+    @Override
+    public Map<String, String> getCurrentDeviceStatuses() {
+        // Trạng thái được cache cập nhật từ /confirmation, không cần query DB mỗi lần polling
+        return latestStateService.getDeviceStatuses();
     }
 
     @Override
     public void saveLedData(LedEntity ledData) {
         ledRepository.save(ledData);
+        historyCacheService.invalidate(HistoryCacheService.LED, ledData.getDeviceName(),
+                ledData.getTimestamp(), ledData.getTimestamp());
+    }
+
+    @Override
+    public CompletableFuture<ResponseEntity<String>> controlLed(String deviceName, String action) {
+        return controlLed(deviceName, action, controlTimeoutMs);
     }
 
     @Override
-    public ResponseEntity<String> controlLed(String deviceName, String action) {
-        try {
-            // Create a CompletableFuture to wait for confirmation
-            CompletableFuture<String> confirmationFuture = new CompletableFuture<>();
-            confirmationFutures.put(deviceName, confirmationFuture);
-
-            // Publish command to MQTT to control the device
-            MqttMessage mqttMessage = new MqttMessage(action.getBytes());
-            mqttClient.publish(deviceName, mqttMessage);
-
-            // Wait for confirmation (e.g., 5 seconds timeout)
-            String confirmation = confirmationFuture.get(5, TimeUnit.SECONDS);
-
-            if (confirmation.equalsIgnoreCase("on") || confirmation.equalsIgnoreCase("off")) {
-                // Device confirmed state change
-
-                // Create a LedEntity to save the control action
-//                LedEntity ledData = new LedEntity();
-//                ledData.setDeviceName(deviceName);
-//                ledData.setActive(confirmation);
-//                ledData.setTimestamp(LocalDateTime.now());
-//
-//                // Save the LED control data to the database
-//                saveLedData(ledData);
-
-                // Log the control action
-                System.out.println("Successfully controlled and confirmed: " + deviceName + " - " + confirmation);
-
-                // Return success response to frontend
-                return ResponseEntity.ok("Successfully controlled: " + deviceName + " - " + confirmation);
-            } else {
-                // Device failed to change state
-                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                        .body("Device failed to change state: " + deviceName);
-            }
-        } catch (TimeoutException e) {
-            // Timeout waiting for confirmation
+    public CompletableFuture<List<ControlResultDTO>> controlLeds(List<LedDTO> commands) {
+        // Gửi tất cả lệnh ngay, mọi lệnh cùng chờ tới một deadline chung thay vì cộng dồn timeout
+        long deadline = System.currentTimeMillis() + controlTimeoutMs;
+        List<CompletableFuture<ControlResultDTO>> results = new ArrayList<>(commands.size());
+        for (LedDTO command : commands) {
+            long remainingMs = Math.max(0, deadline - System.currentTimeMillis());
+            results.add(controlLed(command.getDeviceName(), command.getActive(), remainingMs)
+                    .thenApply(response -> new ControlResultDTO()
+                            .setDeviceName(command.getDeviceName())
+                            .setActive(command.getActive())
+                            .setSuccess(response.getStatusCode().is2xxSuccessful())
+                            .setStatus(response.getStatusCode().value())
+                            .setMessage(response.getBody())));
+        }
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture[0]))
+                .thenApply(done -> results.stream().map(CompletableFuture::join).toList());
+    }
+
+    private CompletableFuture<ResponseEntity<String>> controlLed(String deviceName, String action, long timeoutMs) {
+        // Chỉ điều khiển thiết bị backend nhận được /confirmation: tên lạ không được publish ra topic tuỳ ý
+        // và không tạo thêm hàng đợi lệnh hay series metric theo tên do client gửi
+        if (deviceName == null || !DEVICES.contains(deviceName)) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body("Unknown device: " + deviceName));
+        }
+        // Lệnh đi qua hàng đợi của thiết bị: gộp với lệnh đang chờ, giới hạn số lệnh đang gửi và tự gửi lại
+        long startNanos = System.nanoTime();
+        CompletableFuture<String> confirmation = deviceCommandScheduler.submit(deviceName, action, timeoutMs);
+
+        // Không chặn luồng request: kết quả được trả về khi thiết bị xác nhận hoặc hết timeout
+        return confirmation.handle((status, error) -> {
+            recordControlMetrics(deviceName, startNanos, status, error);
+            return toControlResponse(deviceName, status, error);
+        });
+    }
+
+    private void recordControlMetrics(String deviceName, long startNanos, String confirmation, Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        String result = error instanceof TimeoutException ? "timeout"
+                : error instanceof CancellationException ? "superseded"
+                : error != null ? "error"
+                : "failure".equals(confirmation) ? "failure" : "confirmed";
+        if ("timeout".equals(result)) {
+            meterRegistry.counter("iot.control.timeouts", "device", deviceName).increment();
+        }
+        // Thời gian từ lúc nhận yêu cầu tới khi nhận /confirmation (hoặc hết timeout, bị thay thế)
+        Timer.builder("iot.control.latency")
+                .description("Device command request-to-confirmation latency")
+                .tag("device", deviceName)
+                .tag("result", result)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private ResponseEntity<String> toControlResponse(String deviceName, String confirmation, Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        if (error instanceof CancellationException) {
+            // Người dùng/luật đã yêu cầu trạng thái khác trước khi lệnh này được xác nhận
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(error.getMessage() + " (" + deviceName + ")");
+        }
+        if (error instanceof TimeoutException) {
             System.err.println("Timeout waiting for device confirmation: " + deviceName);
             return ResponseEntity.status(HttpStatus.REQUEST_TIMEOUT)
                     .body("Timeout waiting for device confirmation: " + deviceName);
-        } catch (Exception e) {
-            // Other exceptions
-            System.err.println("Failed to control device: " + deviceName + ". Error: " + e.getMessage());
-            e.printStackTrace();
+        }
+        if (error != null) {
+            System.err.println("Failed to control device: " + deviceName + ". Error: " + error.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body("Failed to control device: " + deviceName + ". Error: " + e.getMessage());
-        } finally {
-            // Clean up the future
-            confirmationFutures.remove(deviceName);
+                    .body("Failed to control device: " + deviceName + ". Error: " + error.getMessage());
         }
+        if (confirmation.equalsIgnoreCase("on") || confirmation.equalsIgnoreCase("off")) {
+            System.out.println("Successfully controlled and confirmed: " + deviceName + " - " + confirmation);
+            return ResponseEntity.ok("Successfully controlled: " + deviceName + " - " + confirmation);
+        }
+        // Device failed to change state
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body("Device failed to change state: " + deviceName);
     }
 
     @PostConstruct
-    public void init() throws MqttException {
-        mqttClient.setCallback(new MqttCallback() {
-            @Override
-            public void connectionLost(Throwable cause) {
-                System.err.println("MQTT connection lost: " + cause.getMessage());
-            }
-
-            @Override
-            public void messageArrived(String topic, MqttMessage message) throws Exception {
-                // Assuming confirmation topics are like "fan/confirmation"
-                String confirmationTopicSuffix = "/confirmation";
-                if (topic.endsWith(confirmationTopicSuffix)) {
-                    String deviceName = topic.substring(0, topic.length() - confirmationTopicSuffix.length());
-                    String messageContent = new String(message.getPayload());
-
-                    System.out.println("Received confirmation from device: " + deviceName + " - " + messageContent);
-
-                    // Check if there is a future waiting for this device's confirmation
-                    CompletableFuture<String> future = confirmationFutures.get(deviceName);
-                    if (future != null) {
-                        if (messageContent.equalsIgnoreCase("on") || messageContent.equalsIgnoreCase("off")) {
-                            future.complete(messageContent.toLowerCase());
-                        } else {
-                            future.complete("failure");
-                        }
-                    }
-
-                    // Update the device status in the database
-                    LedEntity ledData = new LedEntity();
-                    ledData.setDeviceName(deviceName);
-                    ledData.setActive(messageContent.equalsIgnoreCase("on") ? "on" : "off");
-                    ledData.setTimestamp(LocalDateTime.now());
-                    saveLedData(ledData);
-
-                } else {
-                    // Handle other messages if necessary
-                    System.out.println("Received message on unknown topic: " + topic);
-                }
-            }
-
-            @Override
-            public void deliveryComplete(IMqttDeliveryToken token) {
-                // Handle delivery complete if necessary
-            }
-        });
+    public void init() {
+        // Subscribe sau khi kết nối (và sau mỗi lần kết nối lại), không chặn khởi động khi broker chưa sẵn sàng
+        for (String device : DEVICES) {
+            mqttConnectionManager.subscribe(device + "/confirmation", this::handleConfirmation);
+        }
+    }
+
+    private void handleConfirmation(String topic, MqttMessage message) {
+        // Confirmation topics are like "fan/confirmation"
+        String deviceName = topic.substring(0, topic.length() - "/confirmation".length());
+        String messageContent = new String(message.getPayload());
+
+        System.out.println("Received confirmation from device: " + deviceName + " - " + messageContent);
+
+        // Payload dạng "on|<correlationId>"; firmware cũ chỉ gửi "on"/"off"
+        String status = messageContent;
+        String correlationId = null;
+        int separator = messageContent.lastIndexOf(PendingCommandRegistry.CORRELATION_SEPARATOR);
+        if (separator >= 0) {
+            status = messageContent.substring(0, separator);
+            correlationId = messageContent.substring(separator + 1);
+        }
+
+        PendingCommandRegistry.PendingCommand pending;
+        if (status.equalsIgnoreCase("on") || status.equalsIgnoreCase("off")) {
+            pending = pendingCommandRegistry.complete(deviceName, correlationId, status.toLowerCase());
+        } else {
+            pending = pendingCommandRegistry.complete(deviceName, correlationId, "failure");
+        }
+
+        // Xác nhận lặp lại (thiết bị trả lời lệnh gửi lại, broker giao lại QoS 1) không khớp lệnh nào
+        // và không đổi trạng thái: không ghi thêm dòng ledcontrol
+        String active = status.equalsIgnoreCase("on") ? "on" : "off";
+        if (pending == null && active.equals(latestStateService.getDeviceStatuses().get(deviceName))) {
+            return;
+        }
 
-        // Subscribe to confirmation topics
-        mqttClient.subscribe("fan/confirmation");
-        mqttClient.subscribe("airConditioner/confirmation");
-        mqttClient.subscribe("lightbulb/confirmation");
-        mqttClient.subscribe("warning/confirmation");
+        // Update the device status in the database
+        LedEntity ledData = new LedEntity();
+        ledData.setDeviceName(deviceName);
+        ledData.setActive(active);
+        ledData.setTimestamp(LocalDateTime.now());
+        saveLedData(ledData);
+        latestStateService.updateDeviceStatus(deviceName, ledData.getActive());
+        liveStreamService.publishDeviceStatus(deviceName, ledData.getActive());
     }
 }
@@ -0,0 +1,134 @@
+package com.example.demo.service.impl;
+
+import com.example.demo.exception.InvalidRequestException;
+import com.example.demo.model.MetricStatsDTO;
+import com.example.demo.model.SensorStatsDTO;
+import com.example.demo.repository.entity.SensorEntity;
+import com.example.demo.service.LiveStatsService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thống kê trượt (avg/min/max/stddev/tốc độ thay đổi) cập nhật ngay trong đường ingest MQTT,
+ * đọc hoàn toàn từ bộ nhớ. Một bộ đệm chung cho cả hệ thống và một bộ đệm nhỏ hơn cho từng node.
+ * Thời điểm mẫu là lúc backend nhận, không phụ thuộc đồng hồ của node; các bản ghi cũ hơn trong một
+ * frame nhị phân gom nhiều bản ghi không được đưa vào nên lúc nhận gần với lúc đo.
+ */
+@Service
+public class LiveStatsServiceImpl implements LiveStatsService {
+
+    @Value("${iot.stats.windows:1m,5m,15m,1h}")
+    private String windowsConfig;
+
+    @Value("${iot.stats.fleet-capacity:65536}")
+    private int fleetCapacity;
+
+    @Value("${iot.stats.device-capacity:4096}")
+    private int deviceCapacity;
+
+    private String[] windowNames;
+    private long[] windowMillis;
+    private SlidingWindowStats fleet;
+    private final Map<String, SlidingWindowStats> devices = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        windowNames = windowsConfig.split("\\s*,\\s*");
+        windowMillis = new long[windowNames.length];
+        for (int i = 0; i < windowNames.length; i++) {
+            windowMillis[i] = parseWindow(windowNames[i]);
+        }
+        fleet = new SlidingWindowStats(fleetCapacity, windowMillis);
+    }
+
+    @Override
+    public void record(SensorEntity reading) {
+        long now = System.currentTimeMillis();
+        add(fleet, now, reading);
+        if (reading.getDeviceId() != null) {
+            SlidingWindowStats device = devices.get(reading.getDeviceId());
+            if (device == null) {
+                device = devices.computeIfAbsent(reading.getDeviceId(),
+                        id -> new SlidingWindowStats(deviceCapacity, windowMillis));
+            }
+            add(device, now, reading);
+        }
+    }
+
+    @Override
+    public SensorStatsDTO getStats(String window, String deviceId) {
+        int index = windowIndex(window);
+        SlidingWindowStats stats = deviceId != null ? devices.get(deviceId) : fleet;
+        SensorStatsDTO result = new SensorStatsDTO().setDeviceId(deviceId).setWindow(windowNames[index]);
+        if (stats == null) {
+            return result.setCount(0L);
+        }
+        MetricStatsDTO[] metrics = new MetricStatsDTO[SlidingWindowStats.METRICS];
+        long[] range = new long[2];
+        long count = stats.snapshot(index, System.currentTimeMillis(), metrics, range);
+        result.setCount(count)
+                .setTemperature(metrics[0])
+                .setHumidity(metrics[1])
+                .setLight(metrics[2])
+                .setWind(metrics[3]);
+        if (count > 0) {
+            result.setFrom(toLocalDateTime(range[0])).setTo(toLocalDateTime(range[1]));
+        }
+        return result;
+    }
+
+    private static void add(SlidingWindowStats stats, long now, SensorEntity reading) {
+        stats.add(now, reading.getTemperature(), reading.getHumidity(), reading.getLight(), reading.getWind());
+    }
+
+    private int windowIndex(String window) {
+        long millis;
+        try {
+            millis = parseWindow(window);
+        } catch (IllegalArgumentException e) {
+            // parseWindow cũng đọc cấu hình lúc khởi động, chỉ lỗi từ tham số request mới là 400
+            throw new InvalidRequestException(e.getMessage(), e);
+        }
+        for (int i = 0; i < windowMillis.length; i++) {
+            if (windowMillis[i] == millis) {
+                return i;
+            }
+        }
+        throw new InvalidRequestException("Unsupported window: " + window
+                + " (configured: " + String.join(", ", windowNames) + ")");
+    }
+
+    // "30s", "5m", "1h"
+    private static long parseWindow(String window) {
+        if (window == null || window.length() < 2) {
+            throw new IllegalArgumentException("Invalid window: " + window);
+        }
+        long amount;
+        try {
+            amount = Long.parseLong(window.substring(0, window.length() - 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid window: " + window, e);
+        }
+        switch (Character.toLowerCase(window.charAt(window.length() - 1))) {
+            case 's':
+                return amount * 1000;
+            case 'm':
+                return amount * 60_000;
+            case 'h':
+                return amount * 3_600_000;
+            default:
+                throw new IllegalArgumentException("Invalid window: " + window);
+        }
+    }
+
+    private static LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+}
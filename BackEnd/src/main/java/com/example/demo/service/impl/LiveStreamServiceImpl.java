@@ -0,0 +1,267 @@
+package com.example.demo.service.impl;
+
+import com.example.demo.model.SensorDTO;
+import com.example.demo.service.LatestStateService;
+import com.example.demo.service.LiveStreamService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Đẩy dữ liệu sensor và trạng thái thiết bị tới client qua Server-Sent Events.
+ * Mỗi client có một buffer giới hạn; một pool nhỏ các luồng dispatch gửi dữ liệu
+ * nên không cần một luồng cho mỗi kết nối. Client nào để buffer đầy sẽ bị ngắt.
+ * <p>
+ * Ghi ra socket là blocking: client không đọc làm một lần send treo tới write timeout của Tomcat
+ * (server.tomcat.connection-timeout). Client có lần send kéo dài quá send-timeout bị ngắt ngay
+ * và pool được thêm một luồng thay cho luồng đang kẹt, các client khác không phải chờ.
+ * Mọi thao tác trên emitter chỉ chạy trong luồng dispatch, luồng MQTT không bao giờ chờ socket.
+ */
+@Service
+public class LiveStreamServiceImpl implements LiveStreamService {
+
+    private static final String SENSOR_EVENT = "sensor";
+    private static final String DEVICE_EVENT = "device";
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private LatestStateService latestStateService;
+
+    @Value("${iot.stream.buffer-size:64}")
+    private int bufferSize;
+
+    @Value("${iot.stream.dispatch-threads:4}")
+    private int dispatchThreads;
+
+    @Value("${iot.stream.emitter-timeout-ms:1800000}")
+    private long emitterTimeoutMs;
+
+    @Value("${iot.stream.heartbeat-interval-ms:15000}")
+    private long heartbeatIntervalMs;
+
+    @Value("${iot.stream.send-timeout-ms:5000}")
+    private long sendTimeoutMs;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private ThreadPoolExecutor dispatcher;
+    private ScheduledExecutorService heartbeat;
+
+    @PostConstruct
+    public void start() {
+        dispatcher = new ThreadPoolExecutor(dispatchThreads, dispatchThreads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "live-stream-dispatch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "live-stream-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Heartbeat giúp phát hiện client đã đóng kết nối mà không cần chờ event tiếp theo
+        heartbeat.scheduleAtFixedRate(() -> broadcast(SseEmitter.event().comment("ping").build()),
+                heartbeatIntervalMs, heartbeatIntervalMs, TimeUnit.MILLISECONDS);
+        long checkIntervalMs = Math.max(100, sendTimeoutMs / 2);
+        heartbeat.scheduleWithFixedDelay(this::dropStalled, checkIntervalMs, checkIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        heartbeat.shutdownNow();
+        dispatcher.shutdownNow();
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        subscribers.clear();
+    }
+
+    @Override
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMs);
+        Subscriber subscriber = new Subscriber(emitter, bufferSize);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+
+        // Gửi snapshot hiện tại để client không phải chờ tới message MQTT tiếp theo
+        SensorDTO latest = latestStateService.getLatestSensorData();
+        if (latest != null) {
+            enqueue(subscriber, toEvent(SENSOR_EVENT, latest));
+        }
+        latestStateService.getDeviceStatuses().forEach((deviceName, status) ->
+                enqueue(subscriber, toEvent(DEVICE_EVENT, deviceEvent(deviceName, status))));
+        return emitter;
+    }
+
+    @Override
+    public void publishSensorData(SensorDTO sensorData) {
+        if (!subscribers.isEmpty()) {
+            broadcast(toEvent(SENSOR_EVENT, sensorData));
+        }
+    }
+
+    @Override
+    public void publishDeviceStatus(String deviceName, String status) {
+        if (!subscribers.isEmpty()) {
+            broadcast(toEvent(DEVICE_EVENT, deviceEvent(deviceName, status)));
+        }
+    }
+
+    @Override
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    private Map<String, String> deviceEvent(String deviceName, String status) {
+        Map<String, String> event = new LinkedHashMap<>();
+        event.put("deviceName", deviceName);
+        event.put("active", status);
+        return event;
+    }
+
+    private Set<ResponseBodyEmitter.DataWithMediaType> toEvent(String name, Object data) {
+        // Serialize và build một lần, dùng chung cho mọi subscriber
+        try {
+            return SseEmitter.event().name(name).data(objectMapper.writeValueAsString(data)).build();
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize " + name + " event", e);
+        }
+    }
+
+    private void broadcast(Set<ResponseBodyEmitter.DataWithMediaType> event) {
+        for (Subscriber subscriber : subscribers) {
+            enqueue(subscriber, event);
+        }
+    }
+
+    private void enqueue(Subscriber subscriber, Set<ResponseBodyEmitter.DataWithMediaType> event) {
+        if (subscriber.closed) {
+            return;
+        }
+        if (!subscriber.buffer.offer(event)) {
+            // Slow consumer: buffer đầy thì ngắt kết nối, client sẽ reconnect và nhận snapshot mới
+            close(subscriber);
+            return;
+        }
+        schedule(subscriber);
+    }
+
+    private void schedule(Subscriber subscriber) {
+        if (subscriber.scheduled.compareAndSet(false, true)) {
+            dispatcher.execute(() -> drain(subscriber));
+        }
+    }
+
+    /**
+     * Ngắt client mà không chạm vào emitter: emitter được complete trong luồng dispatch,
+     * sau khi lần send đang chạy (nếu có) kết thúc.
+     */
+    private void close(Subscriber subscriber) {
+        subscribers.remove(subscriber);
+        subscriber.closed = true;
+        subscriber.buffer.clear();
+        schedule(subscriber);
+    }
+
+    private void dropStalled() {
+        long now = System.nanoTime();
+        for (Subscriber subscriber : subscribers) {
+            synchronized (subscriber) {
+                long startedNanos = subscriber.sendStartedNanos;
+                if (startedNanos == 0 || now - startedNanos <= TimeUnit.MILLISECONDS.toNanos(sendTimeoutMs)
+                        || subscriber.closed) {
+                    continue;
+                }
+                subscriber.stalled = true;
+                resizeDispatcher(1);
+            }
+            System.err.println("Dropping live stream subscriber, send blocked for more than " + sendTimeoutMs + " ms");
+            close(subscriber);
+        }
+    }
+
+    private synchronized void resizeDispatcher(int delta) {
+        // Tăng max trước khi tăng core, giảm core trước khi giảm max (core không được lớn hơn max)
+        int size = dispatcher.getCorePoolSize() + delta;
+        if (delta > 0) {
+            dispatcher.setMaximumPoolSize(size);
+            dispatcher.setCorePoolSize(size);
+        } else {
+            dispatcher.setCorePoolSize(size);
+            dispatcher.setMaximumPoolSize(size);
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        try {
+            Set<ResponseBodyEmitter.DataWithMediaType> event;
+            while (!subscriber.closed && (event = subscriber.buffer.poll()) != null) {
+                subscriber.sendStartedNanos = System.nanoTime();
+                try {
+                    subscriber.emitter.send(event);
+                } finally {
+                    synchronized (subscriber) {
+                        subscriber.sendStartedNanos = 0;
+                        if (subscriber.stalled) {
+                            // Luồng bị kẹt đã được trả lại, bỏ luồng bù
+                            subscriber.stalled = false;
+                            resizeDispatcher(-1);
+                        }
+                    }
+                }
+            }
+            if (subscriber.closed) {
+                subscriber.emitter.complete();
+                return;
+            }
+        } catch (Exception e) {
+            subscribers.remove(subscriber);
+            subscriber.closed = true;
+            subscriber.emitter.completeWithError(e);
+            return;
+        } finally {
+            subscriber.scheduled.set(false);
+        }
+        // Có event mới hoặc client bị ngắt trong lúc đang kết thúc drain
+        if (subscriber.closed || !subscriber.buffer.isEmpty()) {
+            schedule(subscriber);
+        }
+    }
+
+    private static final class Subscriber {
+        private final SseEmitter emitter;
+        private final Queue<Set<ResponseBodyEmitter.DataWithMediaType>> buffer;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        // 0 khi không có lần send nào đang chạy
+        private volatile long sendStartedNanos;
+        private volatile boolean closed;
+        // Pool đang có một luồng bù cho lần send này; đọc/ghi cùng sendStartedNanos dưới lock của subscriber
+        private boolean stalled;
+
+        private Subscriber(SseEmitter emitter, int bufferSize) {
+            this.emitter = emitter;
+            this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.demo.service.impl;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Deque;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Danh sách lệnh điều khiển đang chờ xác nhận, tra theo correlation ID.
+ * Timeout dùng CompletableFuture.orTimeout nên không giữ luồng nào trong lúc chờ.
+ */
+@Component
+public class PendingCommandRegistry {
+
+    // Lệnh gửi dạng "on|<correlationId>", thiết bị gửi lại nguyên chuỗi trên <device>/confirmation
+    public static final String CORRELATION_SEPARATOR = "|";
+
+    private final Map<String, PendingCommand> byCorrelationId = new ConcurrentHashMap<>();
+
+    // Thứ tự gửi theo từng thiết bị, dùng cho firmware cũ không gửi lại correlation ID
+    private final Map<String, Deque<PendingCommand>> byDevice = new ConcurrentHashMap<>();
+
+    public PendingCommand register(String deviceName, String action, long timeoutMs) {
+        PendingCommand command = new PendingCommand(UUID.randomUUID().toString().substring(0, 8), deviceName, action);
+        byCorrelationId.put(command.correlationId, command);
+        byDevice.computeIfAbsent(deviceName, d -> new ConcurrentLinkedDeque<>()).addLast(command);
+        command.future.orTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+                .whenComplete((result, error) -> remove(command));
+        return command;
+    }
+
+    /**
+     * Hoàn thành lệnh tương ứng với một xác nhận từ thiết bị.
+     * Nếu correlationId là null thì khớp với lệnh cũ nhất còn chờ của thiết bị đó.
+     *
+     * @return lệnh đã được hoàn thành, hoặc null nếu không có lệnh nào đang chờ (kể cả khi lệnh vừa được
+     * một xác nhận khác hoàn thành hoặc đã hết hạn)
+     */
+    public PendingCommand complete(String deviceName, String correlationId, String status) {
+        PendingCommand command;
+        if (correlationId != null) {
+            command = byCorrelationId.get(correlationId);
+        } else {
+            Deque<PendingCommand> queue = byDevice.get(deviceName);
+            command = queue != null ? queue.peekFirst() : null;
+        }
+        if (command == null || !command.deviceName.equals(deviceName)) {
+            return null;
+        }
+        return command.future.complete(status) ? command : null;
+    }
+
+    public int size() {
+        return byCorrelationId.size();
+    }
+
+    private void remove(PendingCommand command) {
+        byCorrelationId.remove(command.correlationId);
+        Deque<PendingCommand> queue = byDevice.get(command.deviceName);
+        if (queue != null) {
+            queue.remove(command);
+        }
+    }
+
+    public static final class PendingCommand {
+        private final String correlationId;
+        private final String deviceName;
+        private final String action;
+        private final long startNanos = System.nanoTime();
+        private final CompletableFuture<String> future = new CompletableFuture<>();
+
+        private PendingCommand(String correlationId, String deviceName, String action) {
+            this.correlationId = correlationId;
+            this.deviceName = deviceName;
+            this.action = action;
+        }
+
+        public String getCorrelationId() {
+            return correlationId;
+        }
+
+        public String getDeviceName() {
+            return deviceName;
+        }
+
+        public String getAction() {
+            return action;
+        }
+
+        public long getStartNanos() {
+            return startNanos;
+        }
+
+        public CompletableFuture<String> getFuture() {
+            return future;
+        }
+    }
+}
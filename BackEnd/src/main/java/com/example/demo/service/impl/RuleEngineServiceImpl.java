@@ -0,0 +1,349 @@
+package com.example.demo.service.impl;
+
+import com.example.demo.exception.InvalidRequestException;
+import com.example.demo.model.RuleDTO;
+import com.example.demo.repository.entity.SensorEntity;
+import com.example.demo.service.LedService;
+import com.example.demo.service.RuleEngineService;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Đánh giá luật ngưỡng ngay trong callback MQTT cho từng bản ghi cảm biến.
+ * <p>
+ * Luật được biên dịch một lần thành các mảng nguyên thuỷ, nhóm theo metric; trạng thái (đang kích hoạt,
+ * lần gửi cuối) nằm trong mảng riêng của từng node. Mỗi bản ghi chỉ là một lần tra map và vài vòng so sánh int,
+ * không cấp phát. Lệnh được gửi qua LedService trên luồng riêng để không chặn luồng nhận MQTT.
+ */
+@Service
+public class RuleEngineServiceImpl implements RuleEngineService {
+
+    private static final String[] METRICS = {"temperature", "humidity", "light", "wind"};
+
+    @Autowired
+    @Lazy
+    private LedService ledService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ResourceLoader resourceLoader;
+
+    @Value("${iot.rules.location:classpath:rules.json}")
+    private String rulesLocation;
+
+    // evaluate và apply dùng chung lock: trạng thái được chép sang bộ luật mới và thay bộ luật trong cùng
+    // một đoạn găng, bản ghi không thể đổi trạng thái của bộ luật cũ sau khi đã chép (mất lần kích hoạt/nhả)
+    private final Object stateLock = new Object();
+
+    private volatile RuleSet ruleSet = new RuleSet(List.of(), Map.of());
+
+    private final ExecutorService actionExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "rule-action");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void init() throws IOException {
+        Resource resource = resourceLoader.getResource(rulesLocation);
+        if (!resource.exists()) {
+            return;
+        }
+        try (InputStream in = resource.getInputStream()) {
+            apply(build(new ObjectMapper().readValue(in, new TypeReference<List<RuleDTO>>() {
+            })));
+        }
+        System.out.println("Loaded " + ruleSet.definitions.size() + " rules from " + rulesLocation);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        actionExecutor.shutdown();
+        actionExecutor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void evaluate(SensorEntity reading) {
+        if (ruleSet.definitions.isEmpty()) {
+            return;
+        }
+        long now = System.nanoTime();
+        // Luồng callback MQTT là luồng gọi vào đây thường xuyên duy nhất, lock chỉ bị tranh chấp lúc PUT /rules
+        synchronized (stateLock) {
+            DeviceRules deviceRules = ruleSet.forDevice(reading.getDeviceId());
+            if (deviceRules.compiled.count == 0) {
+                return;
+            }
+            evaluateMetric(deviceRules, 0, reading.getTemperature(), now);
+            evaluateMetric(deviceRules, 1, reading.getHumidity(), now);
+            evaluateMetric(deviceRules, 2, reading.getLight(), now);
+            evaluateMetric(deviceRules, 3, reading.getWind(), now);
+        }
+    }
+
+    @Override
+    public List<RuleDTO> getRules() {
+        return ruleSet.definitions;
+    }
+
+    @Override
+    public synchronized void setRules(List<RuleDTO> rules) {
+        RuleSet next = build(rules);
+        persist(rules);
+        apply(next);
+    }
+
+    private void apply(RuleSet next) {
+        // Luật giữ nguyên id giữ trạng thái của từng node: luật đang kích hoạt vẫn gửi clearAction, cooldown vẫn tính
+        synchronized (stateLock) {
+            ruleSet.devices.forEach((deviceId, previousRules) -> next.forDevice(deviceId).copyStateFrom(previousRules));
+            ruleSet = next;
+        }
+    }
+
+    /**
+     * Ghi bộ luật mới về iot.rules.location nếu đó là file (file:...), để giữ được qua lần khởi động sau.
+     * Với classpath: luật đổi qua PUT /rules chỉ có hiệu lực tới khi khởi động lại.
+     */
+    private void persist(List<RuleDTO> rules) {
+        if (rulesLocation.startsWith(ResourceLoader.CLASSPATH_URL_PREFIX)) {
+            return;
+        }
+        Resource resource = resourceLoader.getResource(rulesLocation);
+        if (!resource.isFile()) {
+            return;
+        }
+        try {
+            Path file = resource.getFile().toPath();
+            // Ghi ra file tạm rồi đổi tên, process dừng giữa chừng không để lại file luật hỏng
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(temporary.toFile(), rules);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to save rules to " + rulesLocation, e);
+        }
+    }
+
+    private RuleSet build(List<RuleDTO> rules) {
+        // Biên dịch trước rồi mới thay, luật lỗi không làm mất bộ luật đang chạy
+        Map<String, List<RuleDTO>> byDevice = new HashMap<>();
+        for (RuleDTO rule : rules) {
+            validate(rule);
+            byDevice.computeIfAbsent(rule.getDeviceId() != null ? rule.getDeviceId() : "", d -> new ArrayList<>()).add(rule);
+        }
+        List<RuleDTO> wildcard = byDevice.getOrDefault("", List.of());
+        Map<String, CompiledRules> specific = new HashMap<>();
+        byDevice.forEach((deviceId, deviceRules) -> {
+            if (!deviceId.isEmpty()) {
+                List<RuleDTO> combined = new ArrayList<>(wildcard);
+                combined.addAll(deviceRules);
+                specific.put(deviceId, compile(combined));
+            }
+        });
+        return new RuleSet(List.copyOf(rules), specific, compile(wildcard));
+    }
+
+    private void evaluateMetric(DeviceRules rules, int metric, Integer boxed, long now) {
+        if (boxed == null) {
+            return;
+        }
+        int value = boxed;
+        CompiledRules compiled = rules.compiled;
+        for (int i = compiled.metricStart[metric]; i < compiled.metricStart[metric + 1]; i++) {
+            boolean active = rules.active[i];
+            boolean crossed = compiled.above[i] ? value > compiled.trigger[i] : value < compiled.trigger[i];
+            boolean cleared = compiled.above[i] ? value <= compiled.clear[i] : value >= compiled.clear[i];
+            if (active == crossed || (active && !cleared)) {
+                continue;
+            }
+            // Trong thời gian cooldown thì giữ nguyên trạng thái, bản ghi sau sẽ thử lại
+            if (rules.lastFired[i] != 0 && now - rules.lastFired[i] < compiled.cooldownNanos[i]) {
+                continue;
+            }
+            rules.active[i] = !active;
+            String action = active ? compiled.clearAction[i] : compiled.action[i];
+            if (action != null) {
+                rules.lastFired[i] = now;
+                fire(compiled, i, action, rules.deviceId, value);
+            }
+        }
+    }
+
+    private void fire(CompiledRules compiled, int index, String action, String deviceId, int value) {
+        String target = compiled.target[index];
+        compiled.fired[index].increment();
+        System.out.println("Rule " + compiled.ruleId[index] + " fired on " + deviceId + " ("
+                + METRICS[compiled.metric[index]] + " = " + value + "): " + target + " -> " + action);
+        actionExecutor.execute(() -> ledService.controlLed(target, action).thenAccept(response -> {
+            if (!response.getStatusCode().is2xxSuccessful()) {
+                System.err.println("Rule " + compiled.ruleId[index] + " command failed: " + response.getBody());
+            }
+        }));
+    }
+
+    private CompiledRules compile(List<RuleDTO> rules) {
+        // Sắp theo metric để mỗi metric chỉ duyệt một đoạn liên tiếp của mảng
+        List<RuleDTO> sorted = new ArrayList<>(rules);
+        sorted.sort(Comparator.comparingInt(rule -> metricIndex(rule.getMetric())));
+        CompiledRules compiled = new CompiledRules(sorted.size());
+        for (int i = 0; i < sorted.size(); i++) {
+            RuleDTO rule = sorted.get(i);
+            int metric = metricIndex(rule.getMetric());
+            boolean above = ">".equals(rule.getOperator());
+            int hysteresis = Math.max(0, rule.getHysteresis());
+            compiled.ruleId[i] = rule.getId();
+            compiled.metric[i] = metric;
+            compiled.above[i] = above;
+            compiled.trigger[i] = rule.getThreshold();
+            compiled.clear[i] = above ? rule.getThreshold() - hysteresis : rule.getThreshold() + hysteresis;
+            compiled.cooldownNanos[i] = TimeUnit.MILLISECONDS.toNanos(Math.max(0, rule.getCooldownMs()));
+            compiled.target[i] = rule.getTargetDevice();
+            compiled.action[i] = rule.getAction();
+            compiled.clearAction[i] = rule.getClearAction();
+            compiled.fired[i] = meterRegistry.counter("iot.rules.fired", "device", rule.getTargetDevice());
+        }
+        int position = 0;
+        for (int metric = 0; metric <= METRICS.length; metric++) {
+            while (position < sorted.size() && compiled.metric[position] < metric) {
+                position++;
+            }
+            compiled.metricStart[metric] = position;
+        }
+        compiled.metricStart[METRICS.length] = sorted.size();
+        return compiled;
+    }
+
+    private static void validate(RuleDTO rule) {
+        metricIndex(rule.getMetric());
+        if (!">".equals(rule.getOperator()) && !"<".equals(rule.getOperator())) {
+            throw new InvalidRequestException("Invalid operator in rule " + rule.getId() + ": " + rule.getOperator());
+        }
+        if (rule.getTargetDevice() == null || rule.getAction() == null) {
+            throw new InvalidRequestException("Rule " + rule.getId() + " needs targetDevice and action");
+        }
+        // Lệnh tới thiết bị lạ luôn bị LedService từ chối: báo lỗi ngay lúc PUT thay vì lúc luật kích hoạt
+        if (!LedService.DEVICES.contains(rule.getTargetDevice())) {
+            throw new InvalidRequestException("Unknown targetDevice in rule " + rule.getId() + ": "
+                    + rule.getTargetDevice() + " " + LedService.DEVICES);
+        }
+    }
+
+    private static int metricIndex(String metric) {
+        for (int i = 0; i < METRICS.length; i++) {
+            if (METRICS[i].equalsIgnoreCase(metric)) {
+                return i;
+            }
+        }
+        throw new InvalidRequestException("Unknown metric: " + metric);
+    }
+
+    private static final class RuleSet {
+        private final List<RuleDTO> definitions;
+        private final Map<String, CompiledRules> specific;
+        private final CompiledRules wildcard;
+        private final Map<String, DeviceRules> devices = new ConcurrentHashMap<>();
+
+        private RuleSet(List<RuleDTO> definitions, Map<String, CompiledRules> specific) {
+            this(definitions, specific, new CompiledRules(0));
+        }
+
+        private RuleSet(List<RuleDTO> definitions, Map<String, CompiledRules> specific, CompiledRules wildcard) {
+            this.definitions = definitions;
+            this.specific = specific;
+            this.wildcard = wildcard;
+        }
+
+        private DeviceRules forDevice(String deviceId) {
+            String key = deviceId != null ? deviceId : "";
+            DeviceRules rules = devices.get(key);
+            if (rules == null) {
+                // Chỉ cấp phát lần đầu gặp node, các lần sau là một lần get
+                rules = devices.computeIfAbsent(key,
+                        id -> new DeviceRules(id, specific.getOrDefault(id, wildcard)));
+            }
+            return rules;
+        }
+    }
+
+    private static final class CompiledRules {
+        private final int count;
+        private final String[] ruleId;
+        private final int[] metric;
+        private final boolean[] above;
+        private final int[] trigger;
+        private final int[] clear;
+        private final long[] cooldownNanos;
+        private final String[] target;
+        private final String[] action;
+        private final String[] clearAction;
+        private final Counter[] fired;
+        private final int[] metricStart = new int[METRICS.length + 1];
+
+        private CompiledRules(int count) {
+            this.count = count;
+            ruleId = new String[count];
+            metric = new int[count];
+            above = new boolean[count];
+            trigger = new int[count];
+            clear = new int[count];
+            cooldownNanos = new long[count];
+            target = new String[count];
+            action = new String[count];
+            clearAction = new String[count];
+            fired = new Counter[count];
+        }
+    }
+
+    private static final class DeviceRules {
+        private final String deviceId;
+        private final CompiledRules compiled;
+        private final boolean[] active;
+        private final long[] lastFired;
+
+        private DeviceRules(String deviceId, CompiledRules compiled) {
+            this.deviceId = deviceId;
+            this.compiled = compiled;
+            active = new boolean[compiled.count];
+            lastFired = new long[compiled.count];
+        }
+
+        private void copyStateFrom(DeviceRules previous) {
+            for (int i = 0; i < compiled.count; i++) {
+                for (int j = 0; j < previous.compiled.count; j++) {
+                    if (compiled.ruleId[i] != null && compiled.ruleId[i].equals(previous.compiled.ruleId[j])) {
+                        active[i] = previous.active[j];
+                        lastFired[i] = previous.lastFired[j];
+                    }
+                }
+            }
+        }
+    }
+}
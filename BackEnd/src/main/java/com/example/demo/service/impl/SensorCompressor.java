@@ -0,0 +1,268 @@
+package com.example.demo.service.impl;
+
+import com.example.demo.repository.entity.SensorEntity;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Nén dữ liệu cảm biến trước khi ghi DB, theo từng node:
+ * <ol>
+ *     <li>Deadband: bản ghi mà mọi metric lệch so với bản ghi qua lọc gần nhất không quá deadband bị giữ lại;
+ *     khi tín hiệu thay đổi, bản ghi bị giữ cuối cùng được đưa vào bước sau trước để không mất điểm gãy.</li>
+ *     <li>Swinging door: chỉ lưu điểm cần để nội suy tuyến tính giữa các điểm đã lưu lệch không quá tolerance
+ *     trên mọi metric. Điểm được lưu là điểm giữ trước đó khi bản ghi mới làm "cửa" đóng lại. Điểm lưu là
+ *     giá trị đo thật nên bản ghi chỉ được nhận vào cửa khi đường thẳng từ gốc tới chính nó còn nằm trong
+ *     cửa của các bản ghi trước; nhờ vậy điểm giữ luôn là điểm cuối hợp lệ của đoạn.</li>
+ * </ol>
+ * Sai số tái tạo mỗi metric không vượt quá deadband + tolerance. Quá heartbeat kể từ điểm lưu gần nhất
+ * thì bản ghi được lưu bất kể giá trị, để lịch sử không có khoảng trống dài.
+ */
+final class SensorCompressor {
+
+    static final String[] METRICS = {"temperature", "humidity", "light", "wind"};
+
+    interface Sink {
+        boolean store(SensorEntity reading);
+    }
+
+    private final double[] deadband;
+    private final double[] tolerance;
+    private final long heartbeatMillis;
+    private final Map<String, DeviceState> devices = new ConcurrentHashMap<>();
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong stored = new AtomicLong();
+
+    SensorCompressor(double[] deadband, double[] tolerance, long heartbeatMillis) {
+        this.deadband = deadband;
+        this.tolerance = tolerance;
+        this.heartbeatMillis = heartbeatMillis;
+    }
+
+    /**
+     * Đưa bản ghi qua bộ nén, các bản ghi cần lưu (0, 1 hoặc vài bản ghi trước đó) được chuyển cho sink theo thứ tự.
+     *
+     * @return false nếu sink từ chối một bản ghi
+     */
+    boolean offer(SensorEntity reading, Sink sink) {
+        received.incrementAndGet();
+        String key = reading.getDeviceId() != null ? reading.getDeviceId() : "";
+        DeviceState state = devices.get(key);
+        if (state == null) {
+            state = devices.computeIfAbsent(key, id -> new DeviceState());
+        }
+        synchronized (state) {
+            return state.offer(reading, sink);
+        }
+    }
+
+    /**
+     * Ghi nốt các điểm đang giữ của mọi node, dùng khi tắt ứng dụng.
+     */
+    void flush(Sink sink) {
+        for (DeviceState state : devices.values()) {
+            synchronized (state) {
+                state.flush(sink);
+            }
+        }
+    }
+
+    long getReceived() {
+        return received.get();
+    }
+
+    long getStored() {
+        return stored.get();
+    }
+
+    private static Integer metric(SensorEntity reading, int metric) {
+        switch (metric) {
+            case 0:
+                return reading.getTemperature();
+            case 1:
+                return reading.getHumidity();
+            case 2:
+                return reading.getLight();
+            default:
+                return reading.getWind();
+        }
+    }
+
+    private static long millis(LocalDateTime timestamp) {
+        return timestamp.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private final class DeviceState {
+        // Gốc của cửa theo từng metric: giá trị và thời điểm của điểm đã lưu gần nhất có metric đó
+        private final int[] originValue = new int[METRICS.length];
+        private final long[] originTime = new long[METRICS.length];
+        private final boolean[] hasOrigin = new boolean[METRICS.length];
+        private final double[] slopeMin = new double[METRICS.length];
+        private final double[] slopeMax = new double[METRICS.length];
+        private final double[] nextMin = new double[METRICS.length];
+        private final double[] nextMax = new double[METRICS.length];
+        private final Integer[] reference = new Integer[METRICS.length];
+
+        // Bản ghi nhận gần nhất (ứng viên lưu khi cửa đóng) và bản ghi bị deadband giữ gần nhất
+        private SensorEntity held;
+        private long heldTime = Long.MIN_VALUE;
+        private boolean heldStored;
+        private SensorEntity skipped;
+        private long skippedTime = Long.MIN_VALUE;
+        private long lastStoredTime;
+
+        private boolean offer(SensorEntity reading, Sink sink) {
+            LocalDateTime timestamp = reading.getTimestamp();
+            // Không có timestamp hoặc đến sai thứ tự: không nén được, lưu thẳng và bắt đầu lại
+            if (timestamp == null || millis(timestamp) <= Math.max(heldTime, skippedTime)) {
+                boolean accepted = flush(sink);
+                accepted &= store(reading, sink);
+                reset();
+                return accepted;
+            }
+            long time = millis(timestamp);
+            // Bản ghi thiếu metric hoặc metric chưa có gốc: lưu thẳng làm gốc mới, sau khi lưu điểm đang giữ
+            if (!complete(reading)) {
+                boolean accepted = flush(sink);
+                accepted &= store(reading, sink);
+                anchor(reading, time);
+                return accepted;
+            }
+            boolean heartbeat = time - lastStoredTime >= heartbeatMillis;
+            if (!heartbeat && withinDeadband(reading)) {
+                skipped = reading;
+                skippedTime = time;
+                return true;
+            }
+
+            boolean accepted = true;
+            if (skipped != null) {
+                accepted = compress(skipped, skippedTime, sink);
+                skipped = null;
+            }
+            accepted &= compress(reading, time, sink);
+            for (int metric = 0; metric < METRICS.length; metric++) {
+                reference[metric] = metric(reading, metric);
+            }
+            if (heartbeat) {
+                // Đoạn từ điểm lưu trước tới bản ghi này đã hợp lệ với cửa nên lưu ngay không làm tăng sai số
+                accepted &= store(reading, sink);
+                anchor(reading, time);
+            }
+            return accepted;
+        }
+
+        private boolean complete(SensorEntity reading) {
+            for (int metric = 0; metric < METRICS.length; metric++) {
+                if (metric(reading, metric) == null || !hasOrigin[metric]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean withinDeadband(SensorEntity reading) {
+            for (int metric = 0; metric < METRICS.length; metric++) {
+                if (reference[metric] == null || Math.abs(metric(reading, metric) - reference[metric]) > deadband[metric]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean compress(SensorEntity reading, long time, Sink sink) {
+            boolean accepted = true;
+            if (!narrow(reading, time)) {
+                // Cửa đóng: điểm giữ trước đó thành gốc mới, mở cửa mới từ đó tới bản ghi hiện tại
+                accepted = store(held, sink);
+                anchor(held, heldTime);
+                narrow(reading, time);
+            }
+            held = reading;
+            heldTime = time;
+            heldStored = false;
+            return accepted;
+        }
+
+        /**
+         * Thu hẹp khoảng độ dốc cho phép của mọi metric theo bản ghi mới (bản ghi đủ metric).
+         *
+         * @return false (không thay đổi trạng thái) nếu có metric mà độ dốc từ gốc tới bản ghi nằm ngoài khoảng
+         * hiện tại: nối gốc với bản ghi này sẽ lệch quá tolerance ở một bản ghi trước đó
+         */
+        private boolean narrow(SensorEntity reading, long time) {
+            for (int metric = 0; metric < METRICS.length; metric++) {
+                int value = metric(reading, metric);
+                double elapsed = time - originTime[metric];
+                double slope = (value - originValue[metric]) / elapsed;
+                if (slope < slopeMin[metric] || slope > slopeMax[metric]) {
+                    return false;
+                }
+                // Khoảng mới luôn chứa slope nên không bao giờ rỗng
+                nextMin[metric] = Math.max(slopeMin[metric], (value - tolerance[metric] - originValue[metric]) / elapsed);
+                nextMax[metric] = Math.min(slopeMax[metric], (value + tolerance[metric] - originValue[metric]) / elapsed);
+            }
+            System.arraycopy(nextMin, 0, slopeMin, 0, METRICS.length);
+            System.arraycopy(nextMax, 0, slopeMax, 0, METRICS.length);
+            return true;
+        }
+
+        /**
+         * Bản ghi vừa được lưu trở thành gốc cửa của các metric nó có.
+         */
+        private void anchor(SensorEntity reading, long time) {
+            for (int metric = 0; metric < METRICS.length; metric++) {
+                Integer value = metric(reading, metric);
+                if (value == null) {
+                    continue;
+                }
+                originValue[metric] = value;
+                originTime[metric] = time;
+                hasOrigin[metric] = true;
+                slopeMin[metric] = Double.NEGATIVE_INFINITY;
+                slopeMax[metric] = Double.POSITIVE_INFINITY;
+                reference[metric] = value;
+            }
+            held = reading;
+            heldTime = time;
+            heldStored = true;
+            skipped = null;
+            skippedTime = Long.MIN_VALUE;
+            lastStoredTime = time;
+        }
+
+        private void reset() {
+            Arrays.fill(hasOrigin, false);
+            Arrays.fill(reference, null);
+            held = null;
+            heldTime = Long.MIN_VALUE;
+            skipped = null;
+            skippedTime = Long.MIN_VALUE;
+        }
+
+        private boolean flush(Sink sink) {
+            boolean accepted = true;
+            SensorEntity lastSkipped = skipped;
+            long lastSkippedTime = skippedTime;
+            if (held != null && !heldStored) {
+                accepted = store(held, sink);
+                anchor(held, heldTime);
+            }
+            if (lastSkipped != null) {
+                accepted &= store(lastSkipped, sink);
+                anchor(lastSkipped, lastSkippedTime);
+            }
+            return accepted;
+        }
+
+        private boolean store(SensorEntity reading, Sink sink) {
+            stored.incrementAndGet();
+            return sink.store(reading);
+        }
+    }
+}
@@ -0,0 +1,506 @@
+package com.example.demo.service.impl;
+
+import com.example.demo.repository.entity.SensorEntity;
+import com.example.demo.service.SensorIngestService;
+import com.example.demo.service.SensorService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Hàng đợi ingest có giới hạn giữa callback MQTT và database.
+ * Bản ghi được chia vào các shard theo hash của deviceId; mỗi shard có hàng đợi và
+ * luồng writer riêng nên thứ tự theo từng thiết bị được giữ nguyên, còn throughput
+ * tăng theo số shard. Writer gom thành batch và ghi xuống khi đủ batch-size hoặc hết flush-interval.
+ * <p>
+ * Khi bật WAL, mỗi shard ghi bản ghi vào {@link SensorSegmentLog} trên đĩa thay cho hàng đợi trong bộ nhớ;
+ * writer đọc từ log, chỉ checkpoint sau khi ghi DB thành công và thử lại với backoff khi DB lỗi.
+ * Bản ghi bị DB từ chối vĩnh viễn (vi phạm ràng buộc) được tách khỏi batch và bỏ qua, không chặn cả shard.
+ * Đổi số shard thì phần log chưa ghi được chia lại theo số shard mới lúc khởi động.
+ * <p>
+ * Khi bật nén, bản ghi đi qua {@link SensorCompressor} trước khi vào shard, chỉ điểm cần để tái tạo tín hiệu được ghi.
+ * Điểm bộ nén đang giữ chưa vào WAL nên chỉ được ghi khi tắt ứng dụng bình thường.
+ */
+@Service
+public class SensorIngestServiceImpl implements SensorIngestService {
+
+    private static final long RETRY_INITIAL_BACKOFF_MS = 100;
+
+    // WAL: log "shard-<i>" của từng shard, file "shards" lưu số shard lúc ghi, thư mục "resharding" khi đổi số shard
+    private static final String WAL_PREFIX = "shard-";
+    private static final Pattern WAL_CHECKPOINT = Pattern.compile("shard-(\\d+)\\.checkpoint");
+    private static final String WAL_SHARD_COUNT_FILE = "shards";
+    private static final String WAL_RESHARDING_DIRECTORY = "resharding";
+
+    public enum OverflowPolicy {
+        BLOCK, DROP_NEWEST, DROP_OLDEST
+    }
+
+    @Autowired
+    private SensorService sensorService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${iot.ingest.shards:0}")
+    private int shardCount;
+
+    @Value("${iot.ingest.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${iot.ingest.batch-size:200}")
+    private int batchSize;
+
+    @Value("${iot.ingest.flush-interval-ms:500}")
+    private long flushIntervalMs;
+
+    @Value("${iot.ingest.overflow-policy:BLOCK}")
+    private OverflowPolicy overflowPolicy;
+
+    @Value("${iot.ingest.block-timeout-ms:1000}")
+    private long blockTimeoutMs;
+
+    @Value("${iot.ingest.retry-max-backoff-ms:30000}")
+    private long retryMaxBackoffMs;
+
+    @Value("${iot.ingest.wal.enabled:false}")
+    private boolean walEnabled;
+
+    @Value("${iot.ingest.wal.directory:}")
+    private String walDirectory;
+
+    @Value("${iot.ingest.wal.segment-size-mb:16}")
+    private int walSegmentSizeMb;
+
+    @Value("${iot.ingest.wal.max-segments:64}")
+    private int walMaxSegments;
+
+    @Value("${iot.ingest.wal.sync-on-flush:false}")
+    private boolean walSyncOnFlush;
+
+    @Value("${iot.ingest.compression.enabled:false}")
+    private boolean compressionEnabled;
+
+    @Value("${iot.ingest.compression.heartbeat-ms:600000}")
+    private long compressionHeartbeatMs;
+
+    @Autowired
+    private Environment environment;
+
+    private Shard[] shards;
+    private SensorCompressor compressor;
+    private volatile boolean running;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private Timer commitLatency;
+    private DistributionSummary batchSizes;
+    private Counter flushFailures;
+    private Counter rejected;
+
+    @PostConstruct
+    public void start() throws IOException, InterruptedException {
+        if (walEnabled && walDirectory.isBlank()) {
+            throw new IllegalStateException("iot.ingest.wal.enabled requires iot.ingest.wal.directory");
+        }
+        // Từ timestamp của thiết bị tới lúc batch chứa bản ghi đã commit xuống DB
+        commitLatency = Timer.builder("iot.ingest.commit.latency")
+                .description("Time from device timestamp to database commit")
+                .publishPercentileHistogram()
+                .maximumExpectedValue(Duration.ofMinutes(5))
+                .register(meterRegistry);
+        batchSizes = DistributionSummary.builder("iot.ingest.batch.size")
+                .description("Readings per database flush")
+                .publishPercentileHistogram()
+                .maximumExpectedValue((double) batchSize)
+                .register(meterRegistry);
+        flushFailures = meterRegistry.counter("iot.ingest.flush.failures");
+        rejected = Counter.builder("iot.ingest.rejected")
+                .description("Readings skipped because the database rejected them (constraint or data error)")
+                .register(meterRegistry);
+        FunctionCounter.builder("iot.ingest.dropped", dropped, AtomicLong::get)
+                .description("Readings rejected because the ingest buffer was full")
+                .register(meterRegistry);
+
+        if (compressionEnabled) {
+            compressor = createCompressor();
+            FunctionCounter.builder("iot.ingest.compression.received", compressor, SensorCompressor::getReceived)
+                    .description("Readings entering the compression stage")
+                    .register(meterRegistry);
+            FunctionCounter.builder("iot.ingest.compression.stored", compressor, SensorCompressor::getStored)
+                    .description("Readings kept by the compression stage")
+                    .register(meterRegistry);
+        }
+
+        // shards = 0 nghĩa là một shard cho mỗi CPU
+        int count = shardCount > 0 ? shardCount : Runtime.getRuntime().availableProcessors();
+        running = true;
+        Path resharding = walEnabled ? prepareResharding(count) : null;
+        shards = new Shard[count];
+        for (int i = 0; i < count; i++) {
+            shards[i] = new Shard(i);
+        }
+        if (walEnabled) {
+            if (resharding != null) {
+                reshard(resharding);
+            }
+            Files.writeString(Path.of(walDirectory).resolve(WAL_SHARD_COUNT_FILE), Integer.toString(count));
+        }
+        for (Shard shard : shards) {
+            shard.writer.start();
+        }
+        Gauge.builder("iot.ingest.queue.depth", this, SensorIngestServiceImpl::getQueueSize)
+                .description("Readings waiting in ingest queues or logs")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        // Ghi nốt điểm nén đang giữ rồi dừng nhận thêm, writer sẽ flush nốt phần còn lại trong hàng đợi
+        if (compressor != null) {
+            compressor.flush(this::enqueue);
+        }
+        running = false;
+        for (Shard shard : shards) {
+            shard.writer.join(flushIntervalMs + 5000);
+        }
+    }
+
+    @Override
+    public boolean submit(SensorEntity sensorData) {
+        return compressor != null ? compressor.offer(sensorData, this::enqueue) : enqueue(sensorData);
+    }
+
+    private boolean enqueue(SensorEntity sensorData) {
+        boolean accepted = shardFor(sensorData.getDeviceId()).offer(sensorData);
+        if (!accepted) {
+            long total = dropped.incrementAndGet();
+            System.err.println("Sensor ingest buffer full or log append failed, dropped reading (total dropped: "
+                    + total + ")");
+        }
+        return accepted;
+    }
+
+    @Override
+    public int getQueueSize() {
+        int size = 0;
+        for (Shard shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    private SensorCompressor createCompressor() {
+        // iot.ingest.compression.<metric>.deadband / .tolerance, đơn vị của metric; 0 = chỉ bỏ điểm trùng/thẳng hàng
+        double[] deadband = new double[SensorCompressor.METRICS.length];
+        double[] tolerance = new double[SensorCompressor.METRICS.length];
+        for (int i = 0; i < SensorCompressor.METRICS.length; i++) {
+            String prefix = "iot.ingest.compression." + SensorCompressor.METRICS[i];
+            deadband[i] = environment.getProperty(prefix + ".deadband", Double.class, 0.0);
+            tolerance[i] = environment.getProperty(prefix + ".tolerance", Double.class, 0.0);
+        }
+        return new SensorCompressor(deadband, tolerance, compressionHeartbeatMs);
+    }
+
+    /**
+     * Log WAL chia bản ghi theo hash(deviceId) % số shard lúc ghi. Khi số shard đổi (cấu hình hoặc số CPU), log cũ
+     * được chuyển vào thư mục resharding để ghi lại vào các shard mới trước khi nhận dữ liệu mới: không bỏ sót log
+     * của shard không còn tồn tại, và thứ tự theo thiết bị được giữ vì mỗi thiết bị chỉ nằm trong một log cũ.
+     *
+     * @return thư mục chứa log cần chuyển, null nếu số shard không đổi
+     */
+    private Path prepareResharding(int count) throws IOException {
+        Path directory = Path.of(walDirectory);
+        Path resharding = directory.resolve(WAL_RESHARDING_DIRECTORY);
+        if (Files.isDirectory(resharding)) {
+            // Lần chuyển trước dừng giữa chừng: chạy tiếp từ checkpoint của log cũ
+            return resharding;
+        }
+        // Chuyển file vào thư mục tạm rồi đổi tên một lần, dừng giữa chừng thì lần sau chuyển tiếp phần còn lại
+        Path moving = directory.resolve(WAL_RESHARDING_DIRECTORY + ".tmp");
+        if (!Files.isDirectory(moving)) {
+            int previous = previousShardCount(directory);
+            if (previous == 0 || previous == count) {
+                return null;
+            }
+            System.out.println("Ingest WAL was written with " + previous + " shards, redistributing it over " + count);
+            Files.createDirectories(moving);
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files
+                    .filter(path -> path.getFileName().toString().startsWith(WAL_PREFIX))::iterator) {
+                Files.move(file, moving.resolve(file.getFileName()));
+            }
+        }
+        Files.move(moving, resharding, StandardCopyOption.ATOMIC_MOVE);
+        return resharding;
+    }
+
+    private int previousShardCount(Path directory) throws IOException {
+        Path file = directory.resolve(WAL_SHARD_COUNT_FILE);
+        if (Files.exists(file)) {
+            return Integer.parseInt(Files.readString(file).trim());
+        }
+        // WAL tạo trước khi có file "shards": suy ra từ các checkpoint đang có
+        List<Integer> indexes = walShardIndexes(directory);
+        return indexes.isEmpty() ? 0 : indexes.get(indexes.size() - 1) + 1;
+    }
+
+    private void reshard(Path resharding) throws IOException, InterruptedException {
+        List<SensorEntity> batch = new ArrayList<>(batchSize);
+        long moved = 0;
+        for (int index : walShardIndexes(resharding)) {
+            SensorSegmentLog previous = new SensorSegmentLog(resharding, WAL_PREFIX + index,
+                    walSegmentSizeMb * 1024 * 1024, walMaxSegments);
+            while (previous.size() > 0) {
+                batch.clear();
+                previous.read(batch, batchSize, 0);
+                for (SensorEntity reading : batch) {
+                    if (!shardFor(reading.getDeviceId()).log.append(reading)) {
+                        // Log cũ chỉ được checkpoint sau mỗi batch đã chuyển xong, khởi động lại sẽ chuyển tiếp
+                        throw new IllegalStateException("Ingest WAL is full while redistributing "
+                                + resharding + ", raise iot.ingest.wal.max-segments or restore the previous shard count");
+                    }
+                }
+                previous.commit();
+                moved += batch.size();
+            }
+        }
+        try (Stream<Path> files = Files.walk(resharding)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+        System.out.println("Redistributed " + moved + " pending readings from " + resharding);
+    }
+
+    private static List<Integer> walShardIndexes(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> WAL_CHECKPOINT.matcher(path.getFileName().toString()))
+                    .filter(Matcher::matches)
+                    .map(matcher -> Integer.parseInt(matcher.group(1)))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private Shard shardFor(String deviceId) {
+        int hash = deviceId != null ? deviceId.hashCode() : 0;
+        return shards[Math.floorMod(hash, shards.length)];
+    }
+
+    private void recordCommitted(List<SensorEntity> batch) {
+        batchSizes.record(batch.size());
+        LocalDateTime committedAt = LocalDateTime.now();
+        for (SensorEntity reading : batch) {
+            if (reading.getTimestamp() != null) {
+                commitLatency.record(Duration.between(reading.getTimestamp(), committedAt));
+            }
+        }
+    }
+
+    private final class Shard {
+        // Chỉ dùng một trong hai: log trên đĩa khi bật WAL, ngược lại là hàng đợi trong bộ nhớ
+        private final BlockingQueue<SensorEntity> queue;
+        private final SensorSegmentLog log;
+        private final Thread writer;
+
+        private Shard(int index) throws IOException {
+            if (walEnabled) {
+                queue = null;
+                log = new SensorSegmentLog(Path.of(walDirectory), WAL_PREFIX + index,
+                        walSegmentSizeMb * 1024 * 1024, walMaxSegments);
+            } else {
+                queue = new ArrayBlockingQueue<>(queueCapacity);
+                log = null;
+            }
+            writer = new Thread(this::runWriter, "sensor-ingest-writer-" + index);
+            writer.setDaemon(true);
+        }
+
+        private boolean offer(SensorEntity sensorData) {
+            if (log != null) {
+                if (!SensorSegmentLog.fits(sensorData)) {
+                    System.err.println("Device id too long for ingest log, rejected reading");
+                    return false;
+                }
+                // Không để lỗi nào lọt ra callback MQTT: Paho sẽ ngắt kết nối và bỏ mọi message đang xử lý
+                try {
+                    return log.append(sensorData);
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Failed to append reading to ingest log: " + e.getMessage());
+                    return false;
+                }
+            }
+            boolean accepted;
+            switch (overflowPolicy) {
+                case DROP_NEWEST:
+                    accepted = queue.offer(sensorData);
+                    break;
+                case DROP_OLDEST:
+                    accepted = queue.offer(sensorData);
+                    while (!accepted) {
+                        if (queue.poll() != null) {
+                            dropped.incrementAndGet();
+                        }
+                        accepted = queue.offer(sensorData);
+                    }
+                    break;
+                default:
+                    // Chặn callback MQTT tối đa block-timeout-ms để tạo backpressure lên broker
+                    try {
+                        accepted = queue.offer(sensorData, blockTimeoutMs, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        accepted = false;
+                    }
+                    break;
+            }
+            return accepted;
+        }
+
+        private int size() {
+            return log != null ? log.size() : queue.size();
+        }
+
+        private void read(List<SensorEntity> batch, int maxRecords, long timeoutMs) throws IOException, InterruptedException {
+            if (log != null) {
+                log.read(batch, maxRecords, timeoutMs);
+                return;
+            }
+            SensorEntity next = queue.poll(timeoutMs, TimeUnit.MILLISECONDS);
+            if (next != null) {
+                batch.add(next);
+                queue.drainTo(batch, maxRecords - 1);
+            }
+        }
+
+        private void runWriter() {
+            List<SensorEntity> batch = new ArrayList<>(batchSize);
+            long deadline = 0;
+            // Khi tắt: hàng đợi bộ nhớ được flush hết; với WAL thì dừng luôn vì dữ liệu đã nằm trên đĩa
+            while (running || (log == null && (size() > 0 || !batch.isEmpty()))) {
+                try {
+                    long waitMs = batch.isEmpty() ? flushIntervalMs : Math.max(0, deadline - System.currentTimeMillis());
+                    boolean wasEmpty = batch.isEmpty();
+                    read(batch, batchSize - batch.size(), waitMs);
+                    if (wasEmpty && !batch.isEmpty()) {
+                        deadline = System.currentTimeMillis() + flushIntervalMs;
+                    }
+                    boolean full = batch.size() >= batchSize;
+                    boolean expired = !batch.isEmpty() && System.currentTimeMillis() >= deadline;
+                    if (full || expired || (!running && !batch.isEmpty())) {
+                        flush(batch);
+                    }
+                } catch (IOException e) {
+                    // Lỗi đọc segment: giữ nguyên batch và thử lại sau
+                    System.err.println("Failed to read ingest log: " + e.getMessage());
+                    LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(1));
+                } catch (InterruptedException e) {
+                    // Với WAL, phần chưa checkpoint sẽ được ghi lại ở lần khởi động sau
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        private void flush(List<SensorEntity> batch) throws InterruptedException {
+            long backoffMs = RETRY_INITIAL_BACKOFF_MS;
+            while (true) {
+                try {
+                    if (log != null && walSyncOnFlush) {
+                        log.sync();
+                    }
+                    try {
+                        sensorService.saveSensorData(batch);
+                        recordCommitted(batch);
+                    } catch (DataIntegrityViolationException e) {
+                        // Lỗi vĩnh viễn của một vài bản ghi: thử lại cả batch không bao giờ thành công và chặn cả shard
+                        System.err.println("Sensor batch of " + batch.size() + " readings violates a constraint, "
+                                + "isolating invalid readings: " + e.getMostSpecificCause().getMessage());
+                        batch.forEach(reading -> reading.setId(null));
+                        saveIsolatingInvalid(batch);
+                    }
+                    if (log != null) {
+                        log.commit();
+                    }
+                    batch.clear();
+                    return;
+                } catch (Exception e) {
+                    System.err.println("Failed to save sensor batch of " + batch.size() + " readings: " + e.getMessage());
+                    flushFailures.increment();
+                    if (!running) {
+                        // Đang tắt: không thử lại, bản ghi vẫn nằm trong log sau checkpoint (nếu bật WAL)
+                        batch.clear();
+                        return;
+                    }
+                    // Giữ nguyên batch và thử lại, hàng đợi/log phía trước tự tạo backpressure
+                    batch.forEach(reading -> reading.setId(null));
+                    Thread.sleep(backoffMs);
+                    backoffMs = Math.min(backoffMs * 2, retryMaxBackoffMs);
+                }
+            }
+        }
+
+        /**
+         * Chia đôi batch cho tới khi tách được từng bản ghi vi phạm ràng buộc, bỏ qua các bản ghi đó và ghi phần còn lại.
+         * Phần đã ghi hoặc đã bỏ được xoá khỏi batch, nên nếu gặp lỗi khác (DB mất kết nối) vòng thử lại của flush
+         * chỉ ghi tiếp phần chưa xử lý.
+         */
+        private void saveIsolatingInvalid(List<SensorEntity> batch) {
+            Deque<List<SensorEntity>> parts = new ArrayDeque<>();
+            parts.push(new ArrayList<>(batch));
+            while (!parts.isEmpty()) {
+                List<SensorEntity> part = parts.pop();
+                try {
+                    sensorService.saveSensorData(part);
+                    recordCommitted(part);
+                    batch.removeAll(part);
+                } catch (DataIntegrityViolationException e) {
+                    part.forEach(reading -> reading.setId(null));
+                    if (part.size() == 1) {
+                        SensorEntity reading = part.get(0);
+                        rejected.increment();
+                        System.err.println("Skipped sensor reading of device " + reading.getDeviceId() + " at "
+                                + reading.getTimestamp() + ": " + e.getMostSpecificCause().getMessage());
+                        batch.remove(reading);
+                    } else {
+                        int middle = part.size() / 2;
+                        parts.push(new ArrayList<>(part.subList(middle, part.size())));
+                        parts.push(new ArrayList<>(part.subList(0, middle)));
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.demo.service.impl;
+
+import com.example.demo.converter.SensorAggregateDTOConverter;
+import com.example.demo.model.RollupBucket;
+import com.example.demo.model.SensorAggregateDTO;
+import com.example.demo.repository.SensorRollupRepository;
+import com.example.demo.repository.entity.SensorEntity;
+import com.example.demo.repository.specification.HistoryFilter;
+import com.example.demo.service.SensorRollupService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Service
+public class SensorRollupServiceImpl implements SensorRollupService {
+
+    private static final String[] METRICS = {"temperature", "humidity", "light", "wind"};
+
+    // Cộng dồn vào bucket đã có, min/max lấy theo LEAST/GREATEST nên không cần đọc lại dữ liệu gốc
+    private static final String UPSERT_SQL = upsertSql();
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SensorRollupRepository sensorRollupRepository;
+
+    @Autowired
+    private SensorAggregateDTOConverter sensorAggregateDTOConverter;
+
+    @Override
+    public void accumulate(List<SensorEntity> sensorData) {
+        // Gom batch trong bộ nhớ trước, mỗi bucket chỉ cần một câu upsert
+        Map<RollupBucket, Map<LocalDateTime, RollupAccumulator>> buckets = new HashMap<>();
+        for (SensorEntity reading : sensorData) {
+            if (reading.getTimestamp() == null) {
+                continue;
+            }
+            for (RollupBucket bucket : RollupBucket.values()) {
+                buckets.computeIfAbsent(bucket, b -> new HashMap<>())
+                        .computeIfAbsent(bucket.truncate(reading.getTimestamp()), RollupAccumulator::new)
+                        .add(reading);
+            }
+        }
+
+        // Upsert theo thứ tự khoá cố định để các writer song song không deadlock trên cùng bucket
+        List<Object[]> rows = new ArrayList<>();
+        for (RollupBucket bucket : RollupBucket.values()) {
+            Map<LocalDateTime, RollupAccumulator> accumulators = buckets.getOrDefault(bucket, Map.of());
+            accumulators.keySet().stream().sorted()
+                    .forEach(bucketStart -> rows.add(accumulators.get(bucketStart).toRow(bucket)));
+        }
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPSERT_SQL, rows);
+        }
+    }
+
+    @Override
+    public List<SensorAggregateDTO> getAggregates(Map<String, Object> params) {
+        RollupBucket bucket = params.containsKey("bucket") ? RollupBucket.fromParam(params.get("bucket").toString()) : RollupBucket.HOUR;
+        LocalDateTime to = params.containsKey("to") ? HistoryFilter.parseTimestamp(params.get("to").toString()) : LocalDateTime.now();
+        LocalDateTime from = params.containsKey("from") ? HistoryFilter.parseTimestamp(params.get("from").toString()) : to.minusDays(1);
+
+        return sensorAggregateDTOConverter.toSensorAggregateDTOs(
+                sensorRollupRepository.findByBucketAndBucketStartBetweenOrderByBucketStartAsc(
+                        bucket, bucket.truncate(from), to));
+    }
+
+    private static String upsertSql() {
+        StringBuilder columns = new StringBuilder("bucket, bucket_start, sample_count");
+        StringBuilder updates = new StringBuilder("sample_count = sample_count + VALUES(sample_count)");
+        for (String metric : METRICS) {
+            columns.append(", ").append(metric).append("_count, ").append(metric).append("_sum, ")
+                    .append(metric).append("_min, ").append(metric).append("_max");
+            updates.append(", ").append(metric).append("_count = ").append(metric).append("_count + VALUES(").append(metric).append("_count)")
+                    .append(", ").append(metric).append("_sum = ").append(metric).append("_sum + VALUES(").append(metric).append("_sum)")
+                    // LEAST/GREATEST trả NULL nếu một vế NULL (bucket chưa có mẫu của chỉ số này)
+                    .append(", ").append(metric).append("_min = ").append(extremum("LEAST", metric + "_min"))
+                    .append(", ").append(metric).append("_max = ").append(extremum("GREATEST", metric + "_max"));
+        }
+        return "INSERT INTO sensordata_rollup (" + columns + ") VALUES (?" + ", ?".repeat(2 + METRICS.length * 4) + ") "
+                + "ON DUPLICATE KEY UPDATE " + updates;
+    }
+
+    private static String extremum(String function, String column) {
+        return function + "(COALESCE(" + column + ", VALUES(" + column + ")), COALESCE(VALUES(" + column + "), " + column + "))";
+    }
+
+    private static final class RollupAccumulator {
+        private final LocalDateTime bucketStart;
+        private long count;
+        private final long[] metricCount = new long[METRICS.length];
+        private final long[] sum = new long[METRICS.length];
+        private final int[] min = new int[METRICS.length];
+        private final int[] max = new int[METRICS.length];
+
+        private RollupAccumulator(LocalDateTime bucketStart) {
+            this.bucketStart = bucketStart;
+        }
+
+        private void add(SensorEntity reading) {
+            count++;
+            add(0, reading.getTemperature());
+            add(1, reading.getHumidity());
+            add(2, reading.getLight());
+            add(3, reading.getWind());
+        }
+
+        private void add(int metric, Integer value) {
+            // Cảm biến không gửi chỉ số này: bỏ qua thay vì tính là 0, avg = sum / số mẫu có giá trị
+            if (value == null) {
+                return;
+            }
+            if (metricCount[metric]++ == 0) {
+                min[metric] = value;
+                max[metric] = value;
+            } else {
+                min[metric] = Math.min(min[metric], value);
+                max[metric] = Math.max(max[metric], value);
+            }
+            sum[metric] += value;
+        }
+
+        private Object[] toRow(RollupBucket bucket) {
+            Object[] row = new Object[3 + METRICS.length * 4];
+            row[0] = bucket.name();
+            row[1] = Timestamp.valueOf(bucketStart);
+            row[2] = count;
+            for (int metric = 0; metric < METRICS.length; metric++) {
+                boolean present = metricCount[metric] > 0;
+                row[3 + metric * 4] = metricCount[metric];
+                row[4 + metric * 4] = sum[metric];
+                row[5 + metric * 4] = present ? min[metric] : null;
+                row[6 + metric * 4] = present ? max[metric] : null;
+            }
+            return row;
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package com.example.demo.service.impl;
+
+import com.example.demo.repository.entity.SensorEntity;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Log append-only trên các segment file được memory-map, dùng làm bộ đệm store-and-forward
+ * giữa MQTT và database cho một shard ingest.
+ * <p>
+ * Mỗi bản ghi: [int độ dài][long timestamp][byte mask][4 x int metric][short + bytes deviceId].
+ * Vị trí đã ghi thành công xuống DB được lưu trong file checkpoint; khi khởi động lại,
+ * các bản ghi sau checkpoint được đọc lại và ghi tiếp.
+ * <p>
+ * File checkpoint có hai slot ghi luân phiên, mỗi slot: [long số thứ tự][long segment][int offset][int CRC32].
+ * Crash giữa lúc ghi chỉ làm hỏng slot đang ghi, slot còn lại vẫn giữ checkpoint trước đó. Không slot nào hợp lệ
+ * thì đọc lại từ đầu segment cũ nhất còn trên đĩa (có thể ghi trùng, không mất bản ghi).
+ */
+final class SensorSegmentLog {
+
+    private static final int MAX_DEVICE_ID_BYTES = 255;
+    private static final int MAX_RECORD_SIZE = 4 + 8 + 1 + 4 * 4 + 2 + MAX_DEVICE_ID_BYTES;
+
+    private static final int HAS_TEMPERATURE = 1;
+    private static final int HAS_HUMIDITY = 1 << 1;
+    private static final int HAS_LIGHT = 1 << 2;
+    private static final int HAS_WIND = 1 << 3;
+    private static final int HAS_TIMESTAMP = 1 << 4;
+
+    private static final int CHECKPOINT_SLOT_SIZE = 24;
+
+    private final Path directory;
+    private final String name;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final MappedByteBuffer checkpoint;
+
+    private long writeSegment;
+    private MappedByteBuffer writeBuffer;
+
+    private long readSegment;
+    private MappedByteBuffer readBuffer;
+
+    private long checkpointSegment;
+    private long checkpointSequence;
+    private int size;
+
+    SensorSegmentLog(Path directory, String name, int segmentSize, int maxSegments) throws IOException {
+        this.directory = directory;
+        this.name = name;
+        this.segmentSize = Math.max(segmentSize, MAX_RECORD_SIZE * 2);
+        this.maxSegments = maxSegments;
+        Files.createDirectories(directory);
+        checkpoint = map(directory.resolve(name + ".checkpoint"), CHECKPOINT_SLOT_SIZE * 2);
+        recover();
+        deleteSegmentsBefore(checkpointSegment);
+    }
+
+    /**
+     * @return false nếu deviceId quá dài để ghi vào một bản ghi của log
+     */
+    static boolean fits(SensorEntity reading) {
+        return reading.getDeviceId() == null
+                || reading.getDeviceId().getBytes(StandardCharsets.UTF_8).length <= MAX_DEVICE_ID_BYTES;
+    }
+
+    /**
+     * Gọi {@link #fits} trước: bản ghi không vừa làm append ném IllegalArgumentException.
+     *
+     * @return false nếu log đã đạt giới hạn số segment
+     */
+    synchronized boolean append(SensorEntity reading) throws IOException {
+        byte[] deviceId = reading.getDeviceId() != null
+                ? reading.getDeviceId().getBytes(StandardCharsets.UTF_8)
+                : new byte[0];
+        if (deviceId.length > MAX_DEVICE_ID_BYTES) {
+            throw new IllegalArgumentException("Device id too long: " + reading.getDeviceId());
+        }
+        int length = 8 + 1 + 4 * 4 + 2 + deviceId.length;
+
+        if (writeBuffer.position() + 4 + length + 4 > segmentSize) {
+            if (writeSegment - checkpointSegment + 1 >= maxSegments) {
+                return false;
+            }
+            // Đánh dấu hết segment rồi chuyển sang segment mới
+            writeBuffer.putInt(writeBuffer.position(), -1);
+            writeSegment++;
+            writeBuffer = map(segmentPath(writeSegment), segmentSize);
+        }
+
+        int start = writeBuffer.position();
+        int mask = 0;
+        writeBuffer.position(start + 4);
+        writeBuffer.putLong(reading.getTimestamp() != null
+                ? reading.getTimestamp().toInstant(ZoneOffset.UTC).toEpochMilli() : 0L);
+        int maskPosition = writeBuffer.position();
+        writeBuffer.put((byte) 0);
+        mask |= putMetric(reading.getTemperature(), HAS_TEMPERATURE);
+        mask |= putMetric(reading.getHumidity(), HAS_HUMIDITY);
+        mask |= putMetric(reading.getLight(), HAS_LIGHT);
+        mask |= putMetric(reading.getWind(), HAS_WIND);
+        if (reading.getTimestamp() != null) {
+            mask |= HAS_TIMESTAMP;
+        }
+        writeBuffer.put(maskPosition, (byte) mask);
+        writeBuffer.putShort((short) deviceId.length);
+        writeBuffer.put(deviceId);
+        // Ghi độ dài sau cùng: reader chỉ thấy bản ghi khi đã ghi đủ nội dung
+        writeBuffer.putInt(start, length);
+
+        size++;
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Đọc tối đa maxRecords bản ghi tiếp theo, chờ tối đa timeoutMs nếu log đang trống.
+     */
+    synchronized int read(List<SensorEntity> batch, int maxRecords, long timeoutMs)
+            throws IOException, InterruptedException {
+        if (size == 0 && timeoutMs > 0) {
+            wait(timeoutMs);
+        }
+        int count = 0;
+        while (count < maxRecords && size > 0) {
+            int length = readBuffer.getInt(readBuffer.position());
+            if (length <= 0) {
+                // Hết segment hiện tại
+                readBuffer = openForRead(readSegment + 1);
+                readSegment++;
+                continue;
+            }
+            batch.add(decode(readBuffer, length));
+            size--;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Lưu vị trí đọc hiện tại làm checkpoint sau khi batch đã ghi xuống DB, xoá các segment không còn cần.
+     */
+    synchronized void commit() {
+        long previousSegment = checkpointSegment;
+        checkpointSequence++;
+        // Ghi đè slot cũ hơn, slot kia vẫn giữ checkpoint trước nếu lần ghi này bị cắt ngang
+        int slot = (int) (checkpointSequence & 1) * CHECKPOINT_SLOT_SIZE;
+        int offset = readBuffer.position();
+        checkpoint.putLong(slot, checkpointSequence);
+        checkpoint.putLong(slot + 8, readSegment);
+        checkpoint.putInt(slot + 16, offset);
+        checkpoint.putInt(slot + 20, checksum(checkpointSequence, readSegment, offset));
+        checkpointSegment = readSegment;
+        if (checkpointSegment > previousSegment) {
+            deleteSegmentsBefore(checkpointSegment);
+        }
+    }
+
+    /**
+     * Ép dữ liệu đã map xuống đĩa. Không gọi thì log vẫn an toàn khi process crash
+     * (page cache của OS), chỉ có thể mất phần chưa flush khi mất điện.
+     */
+    synchronized void sync() {
+        writeBuffer.force();
+        checkpoint.force();
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    private void recover() throws IOException {
+        long savedSegment = -1;
+        int savedOffset = 0;
+        checkpointSequence = 0;
+        for (int slot = 0; slot < 2 * CHECKPOINT_SLOT_SIZE; slot += CHECKPOINT_SLOT_SIZE) {
+            long sequence = checkpoint.getLong(slot);
+            long segment = checkpoint.getLong(slot + 8);
+            int offset = checkpoint.getInt(slot + 16);
+            boolean valid = sequence > 0 && segment >= 0 && offset >= 0
+                    && checkpoint.getInt(slot + 20) == checksum(sequence, segment, offset);
+            if (valid && sequence > checkpointSequence) {
+                checkpointSequence = sequence;
+                savedSegment = segment;
+                savedOffset = offset;
+            }
+        }
+        long oldest = oldestSegment();
+        if (savedSegment < 0 || savedSegment < oldest) {
+            // Không có checkpoint dùng được: các segment trước checkpoint đã bị xoá nên segment cũ nhất
+            // còn lại là nơi bắt đầu an toàn, không được quay về segment 0
+            if (checkpointSequence > 0 || oldest > 0) {
+                System.err.println("Ingest log " + name + ": no usable checkpoint, replaying from segment " + oldest);
+            }
+            savedSegment = oldest;
+            savedOffset = 0;
+        }
+        checkpointSegment = savedSegment;
+        readSegment = savedSegment;
+        readBuffer = openForRead(readSegment);
+        readBuffer.position(Math.min(savedOffset, segmentSize));
+
+        // Tìm vị trí ghi cuối cùng và đếm số bản ghi chưa được checkpoint
+        size = 0;
+        writeSegment = readSegment;
+        MappedByteBuffer scan = readBuffer.duplicate();
+        int position = scan.position();
+        while (true) {
+            int length = position + 4 <= segmentSize ? scan.getInt(position) : -1;
+            if (length > 0 && position + 4 + length <= segmentSize) {
+                size++;
+                position += 4 + length;
+            } else if (length < 0 && Files.exists(segmentPath(writeSegment + 1))) {
+                writeSegment++;
+                scan = map(segmentPath(writeSegment), segmentSize);
+                position = 0;
+            } else {
+                break;
+            }
+        }
+        writeBuffer = writeSegment == readSegment ? readBuffer.duplicate() : scan;
+        writeBuffer.position(position);
+    }
+
+    /**
+     * @return số segment nhỏ nhất còn trên đĩa, 0 nếu chưa có segment nào
+     */
+    private long oldestSegment() throws IOException {
+        String prefix = name + "-";
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(fileName -> fileName.startsWith(prefix) && fileName.endsWith(".log"))
+                    .mapToLong(fileName -> Long.parseLong(fileName.substring(prefix.length(), fileName.length() - 4)))
+                    .min()
+                    .orElse(0);
+        }
+    }
+
+    private static int checksum(long sequence, long segment, int offset) {
+        CRC32 crc = new CRC32();
+        ByteBuffer fields = ByteBuffer.allocate(20).putLong(sequence).putLong(segment).putInt(offset);
+        crc.update(fields.array());
+        return (int) crc.getValue();
+    }
+
+    private void deleteSegmentsBefore(long segment) {
+        String prefix = name + "-";
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(path -> {
+                String fileName = path.getFileName().toString();
+                return fileName.startsWith(prefix) && fileName.endsWith(".log")
+                        && Long.parseLong(fileName.substring(prefix.length(), fileName.length() - 4)) < segment;
+            }).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    System.err.println("Failed to delete ingest segment " + path + ": " + e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("Failed to list ingest segments in " + directory + ": " + e.getMessage());
+        }
+    }
+
+    private MappedByteBuffer openForRead(long segment) throws IOException {
+        return map(segmentPath(segment), segmentSize);
+    }
+
+    private int putMetric(Integer value, int flag) {
+        writeBuffer.putInt(value != null ? value : 0);
+        return value != null ? flag : 0;
+    }
+
+    private SensorEntity decode(MappedByteBuffer buffer, int length) {
+        int start = buffer.position();
+        buffer.position(start + 4);
+        long timestamp = buffer.getLong();
+        int mask = buffer.get();
+        int temperature = buffer.getInt();
+        int humidity = buffer.getInt();
+        int light = buffer.getInt();
+        int wind = buffer.getInt();
+        byte[] deviceId = new byte[buffer.getShort()];
+        buffer.get(deviceId);
+        buffer.position(start + 4 + length);
+
+        SensorEntity reading = new SensorEntity();
+        reading.setTimestamp((mask & HAS_TIMESTAMP) != 0
+                ? LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneOffset.UTC) : null);
+        reading.setTemperature((mask & HAS_TEMPERATURE) != 0 ? temperature : null);
+        reading.setHumidity((mask & HAS_HUMIDITY) != 0 ? humidity : null);
+        reading.setLight((mask & HAS_LIGHT) != 0 ? light : null);
+        reading.setWind((mask & HAS_WIND) != 0 ? wind : null);
+        reading.setDeviceId(deviceId.length > 0 ? new String(deviceId, StandardCharsets.UTF_8) : null);
+        return reading;
+    }
+
+    private Path segmentPath(long segment) {
+        return directory.resolve(String.format("%s-%012d.log", name, segment));
+    }
+
+    private static MappedByteBuffer map(Path path, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+}
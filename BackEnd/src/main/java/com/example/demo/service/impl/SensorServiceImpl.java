@@ -1,92 +1,205 @@
 package com.example.demo.service.impl;
 
 import com.example.demo.converter.SensorDTOConverter;
+import com.example.demo.model.HistoryPageDTO;
+import com.example.demo.model.KeysetCursor;
 import com.example.demo.model.SensorDTO;
+import com.example.demo.model.SensorRowDTO;
+import com.example.demo.repository.HistoryRowRepository;
 import com.example.demo.repository.SensorRepository;
 import com.example.demo.repository.entity.SensorEntity;
+import com.example.demo.repository.specification.HistoryFilter;
+import com.example.demo.service.HistoryCacheService;
+import com.example.demo.service.LatestStateService;
+import com.example.demo.service.SensorRollupService;
 import com.example.demo.service.SensorService;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @Service
 public class SensorServiceImpl implements SensorService {
+
+    // Cột được phép làm sortBy ở phân trang offset
+    private static final Set<String> SORTABLE = Set.of("id", "deviceId", "temperature", "humidity", "light", "wind", "timestamp");
+
     @Autowired
     private SensorRepository sensorRepository;
     @Autowired
+    private HistoryRowRepository historyRowRepository;
+    @Autowired
     private SensorDTOConverter sensorDTOConverter;
+    @Autowired
+    private LatestStateService latestStateService;
+    @Autowired
+    private SensorRollupService sensorRollupService;
+    @Autowired
+    private HistoryCacheService historyCacheService;
 
     @Override
-    public Map<String, Object> getSensor(Map<String, Object> params) {
-        Integer temperature = params.containsKey("temperature") ? Integer.valueOf(params.get("temperature").toString()) : null;
-        Integer humidity = params.containsKey("humidity") ? Integer.valueOf(params.get("humidity").toString()) : null;
-        Integer light = params.containsKey("light") ? Integer.valueOf(params.get("light").toString()) : null;
-        Integer wind = params.containsKey("wind") ? Integer.valueOf(params.get("wind").toString()) : null;
-
-        LocalDateTime exactTimestamp = null;
+    @Transactional(readOnly = true)
+    public HistoryPageDTO<SensorRowDTO> getSensor(Map<String, Object> params) {
+        // Chỉ các tham số có mặt mới thành điều kiện WHERE; metric hỗ trợ lọc khoảng qua <metric>Min/<metric>Max
+        Specification<SensorEntity> filter = HistoryFilter.<SensorEntity>of(params)
+                .equal("deviceId")
+                .intRange("temperature")
+                .intRange("humidity")
+                .intRange("light")
+                .intRange("wind")
+                .timestampRange("timestamp")
+                .build();
 
-        // Kiểm tra và xử lý tham số timestamp
-        if (params.containsKey("timestamp")) {
-            String timestampParam = params.get("timestamp").toString();
+        // Get pageSize and pageNumber from params
+        int pageSize = HistoryFilter.intParam(params, "pageSize", 10, 1, HistoryFilter.MAX_PAGE_SIZE);
+        int pageNumber = HistoryFilter.intParam(params, "pageNumber", 0, 0, Integer.MAX_VALUE);
 
-            // Nếu timestamp có định dạng "dd/MM/yyyy, HH:mm:ss"
-            DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern("dd/MM/yyyy, HH:mm:ss");
-            exactTimestamp = LocalDateTime.parse(timestampParam, dateTimeFormatter);
+        // Chế độ cursor (keyset): trang N có chi phí như trang đầu, không cần COUNT(*)
+        if (params.containsKey("cursor") || "cursor".equals(params.get("paging"))) {
+            HistoryFilter.requireCursorOrder(params);
+            return getSensorByCursor(filter, pageSize, params);
         }
 
-        // Get pageSize and pageNumber from params
-        int pageSize = params.containsKey("pageSize") ? Integer.parseInt(params.get("pageSize").toString()) : 10;
-        int pageNumber = params.containsKey("pageNumber") ? Integer.parseInt(params.get("pageNumber").toString()) : 0;
+        Sort sort = HistoryFilter.sort(params, SORTABLE);
+        int offset = HistoryFilter.offset(pageNumber, pageSize);
 
-        // Handle sorting
-        String sortBy = params.containsKey("sortBy") ? params.get("sortBy").toString() : "timestamp";
-        String sortDirection = params.containsKey("sortDirection") ? params.get("sortDirection").toString() : "desc";
-        Sort sort = Sort.by(Sort.Direction.fromString(sortDirection), sortBy);
+        // Đọc thẳng thành record, không hydrate entity
+        List<SensorRowDTO> rows = historyRowRepository.findSensorRows(filter, sort, offset, pageSize);
 
-        Pageable pageable = PageRequest.of(pageNumber, pageSize, sort);
+        // Như Page của Spring Data: trang cuối chưa đầy thì suy ra tổng, không cần COUNT
+        long totalItems = rows.size() < pageSize && (offset == 0 || !rows.isEmpty())
+                ? (long) offset + rows.size()
+                : sensorRepository.count(filter);
+        return HistoryPageDTO.offset(rows, pageSize, pageNumber, totalItems);
+    }
 
-        // Gọi repository với Pageable và điều kiện chính xác
-        Page<SensorEntity> sensorEntities = sensorRepository.findByExactTimestamp(
-                temperature, humidity, light, wind, exactTimestamp, pageable
-        );
 
-        // Chuyển đổi từ Page<SensorEntity> sang List<SensorDTO>
-        List<SensorDTO> result = sensorDTOConverter.toSensorDTOs(sensorEntities.getContent());
+    private HistoryPageDTO<SensorRowDTO> getSensorByCursor(Specification<SensorEntity> filter, int pageSize,
+                                                           Map<String, Object> params) {
+        KeysetCursor cursor = params.containsKey("cursor") ? KeysetCursor.decode(params.get("cursor").toString()) : null;
+        boolean backward = cursor != null && cursor.isBackward();
+        // Trang mới nhất trước; khi lùi về trang trước thì seek theo chiều ngược lại rồi đảo kết quả
+        boolean seekAscending = backward;
+        Sort seekOrder = Sort.by(seekAscending ? Sort.Direction.ASC : Sort.Direction.DESC, "timestamp", "id");
+
+        Specification<SensorEntity> seek = cursor != null
+                ? filter.and(HistoryFilter.keyset(cursor.getTimestamp(), cursor.getId(), seekAscending))
+                : filter;
+        // Lấy dư một dòng để biết còn trang tiếp theo hay không, không chạy COUNT
+        List<SensorRowDTO> rows = historyRowRepository.findSensorRows(seek, seekOrder, 0, pageSize + 1);
+
+        boolean more = rows.size() > pageSize;
+        List<SensorRowDTO> page = new ArrayList<>(more ? rows.subList(0, pageSize) : rows);
+        if (backward) {
+            Collections.reverse(page);
+        }
+        boolean hasNext = backward || more;
+        boolean hasPrev = backward ? more : cursor != null;
+
+        String nextCursor = null;
+        String prevCursor = null;
+        if (!page.isEmpty()) {
+            SensorRowDTO first = page.get(0);
+            SensorRowDTO last = page.get(page.size() - 1);
+            nextCursor = hasNext ? KeysetCursor.next(last.timestamp(), last.id()) : null;
+            prevCursor = hasPrev ? KeysetCursor.prev(first.timestamp(), first.id()) : null;
+        }
 
-        // Tạo Map trả về thông tin phân trang
-        Map<String, Object> response = new HashMap<>();
-        response.put("content", result);
-        response.put("currentPage", sensorEntities.getNumber() + 1);
-        response.put("totalItems", sensorEntities.getTotalElements());
-        response.put("totalPages", sensorEntities.getTotalPages());
-        response.put("pageSize", pageSize);
+        // Tổng số bản ghi là tuỳ chọn: withTotal=exact chạy COUNT, withTotal=approx dùng thống kê của bảng
+        String withTotal = params.containsKey("withTotal") ? params.get("withTotal").toString() : "none";
+        Long totalItems = "exact".equalsIgnoreCase(withTotal) ? sensorRepository.count(filter) : null;
+        Long totalItemsApprox = "approx".equalsIgnoreCase(withTotal) ? sensorRepository.estimateCount() : null;
 
-        return response;
+        return HistoryPageDTO.cursor(page, pageSize, nextCursor, prevCursor, totalItems, totalItemsApprox);
     }
 
-
     @Override
     public SensorDTO getLatestSensorData() {
-        // Lấy dữ liệu entity mới nhất từ repository
+        // Đọc từ cache trong bộ nhớ, chỉ xuống DB khi cache chưa có dữ liệu
+        SensorDTO cached = latestStateService.getLatestSensorData();
+        if (cached != null) {
+            return cached;
+        }
         SensorEntity latestEntity = sensorRepository.findTopByOrderByTimestampDesc();
-        sensorDTOConverter.toSensorDTO(latestEntity);
+        if (latestEntity == null) {
+            return null;
+        }
+        latestStateService.updateSensorData(latestEntity);
+        return sensorDTOConverter.toSensorDTO(latestEntity);
+    }
 
+    @Override
+    public SensorDTO getLatestSensorData(String deviceId) {
+        SensorDTO cached = latestStateService.getLatestSensorData(deviceId);
+        if (cached != null) {
+            return cached;
+        }
+        SensorEntity latestEntity = sensorRepository.findTopByDeviceIdOrderByTimestampDesc(deviceId);
+        if (latestEntity == null) {
+            return null;
+        }
+        latestStateService.updateSensorData(latestEntity);
         return sensorDTOConverter.toSensorDTO(latestEntity);
     }
 
     @Override
     public void saveSensorData(SensorEntity sensorData) {
         sensorRepository.save(sensorData);
+        invalidateHistory(List.of(sensorData));
+    }
+
+    @Override
+    @Transactional
+    public void saveSensorData(List<SensorEntity> sensorData) {
+        // Một transaction cho cả batch, Hibernate gom các insert theo hibernate.jdbc.batch_size
+        sensorRepository.saveAll(sensorData);
+        // Cập nhật bảng rollup trong cùng transaction để không lệch với dữ liệu gốc
+        sensorRollupService.accumulate(sensorData);
+        invalidateHistory(sensorData);
+    }
+
+    private void invalidateHistory(List<SensorEntity> sensorData) {
+        // Mỗi thiết bị một lần quét cache với khoảng thời gian của batch; timestamp null thì xoá mọi trang của thiết bị
+        Map<String, LocalDateTime[]> ranges = new HashMap<>();
+        for (SensorEntity reading : sensorData) {
+            LocalDateTime timestamp = reading.getTimestamp();
+            LocalDateTime[] range = ranges.get(reading.getDeviceId());
+            if (range == null) {
+                ranges.put(reading.getDeviceId(), new LocalDateTime[]{timestamp, timestamp});
+            } else if (range[0] != null && timestamp != null) {
+                range[0] = timestamp.isBefore(range[0]) ? timestamp : range[0];
+                range[1] = timestamp.isAfter(range[1]) ? timestamp : range[1];
+            } else {
+                range[0] = null;
+                range[1] = null;
+            }
+        }
+        Runnable invalidate = () -> ranges.forEach((deviceId, range) ->
+                historyCacheService.invalidate(HistoryCacheService.SENSOR, deviceId, range[0], range[1]));
+        // Chỉ xoá sau khi commit, nếu không request đọc song song có thể cache lại dữ liệu trước khi ghi
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidate.run();
+                }
+            });
+        } else {
+            invalidate.run();
+        }
     }
 }
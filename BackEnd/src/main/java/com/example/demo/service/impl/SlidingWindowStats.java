@@ -0,0 +1,294 @@
+package com.example.demo.service.impl;
+
+import com.example.demo.model.MetricStatsDTO;
+
+/**
+ * Thống kê trượt theo thời gian trên ring buffer kiểu nguyên thuỷ cho 4 metric cảm biến.
+ * <p>
+ * Mỗi window giữ tổng, tổng bình phương và tổng cho hồi quy tuyến tính (tốc độ thay đổi), cộng khi mẫu vào
+ * và trừ khi mẫu ra khỏi window; min/max dùng hàng đợi đơn điệu. Thêm mẫu và đọc thống kê đều O(1) khấu hao.
+ * Khi số mẫu trong window vượt capacity, các mẫu cũ nhất bị bỏ trước khi hết thời gian (xem from/to trong kết quả).
+ */
+final class SlidingWindowStats {
+
+    static final int METRICS = 4;
+
+    private final int capacity;
+    private final long[] times;
+    private final int[][] values = new int[METRICS][];
+    private final boolean[][] present = new boolean[METRICS][];
+    private long nextSeq;
+
+    private final Window[] windows;
+
+    SlidingWindowStats(int capacity, long[] windowMillis) {
+        this.capacity = capacity;
+        times = new long[capacity];
+        for (int metric = 0; metric < METRICS; metric++) {
+            values[metric] = new int[capacity];
+            present[metric] = new boolean[capacity];
+        }
+        windows = new Window[windowMillis.length];
+        for (int i = 0; i < windowMillis.length; i++) {
+            windows[i] = new Window(windowMillis[i]);
+        }
+    }
+
+    synchronized void add(long timeMillis, Integer temperature, Integer humidity, Integer light, Integer wind) {
+        long seq = nextSeq;
+        // Slot sắp bị ghi đè phải được đưa ra khỏi mọi window trước
+        if (seq >= capacity) {
+            for (Window window : windows) {
+                window.expireBefore(seq - capacity + 1);
+            }
+        }
+        int slot = (int) (seq % capacity);
+        times[slot] = timeMillis;
+        store(0, slot, temperature);
+        store(1, slot, humidity);
+        store(2, slot, light);
+        store(3, slot, wind);
+        nextSeq = seq + 1;
+
+        for (Window window : windows) {
+            // Thêm trước khi loại mẫu cũ: rebase khi loại tính lại tổng trên mọi mẫu tới nextSeq,
+            // mẫu mới phải đã nằm trong các tổng để không bị cộng hai lần
+            window.add(slot);
+            window.expireOlderThan(timeMillis - window.spanMillis);
+        }
+    }
+
+    /**
+     * @return số mẫu trong window, kết quả từng metric được ghi vào {@code metrics}
+     */
+    synchronized long snapshot(int windowIndex, long nowMillis, MetricStatsDTO[] metrics, long[] range) {
+        Window window = windows[windowIndex];
+        window.expireOlderThan(nowMillis - window.spanMillis);
+        long count = nextSeq - window.tail;
+        range[0] = count > 0 ? times[(int) (window.tail % capacity)] : 0;
+        range[1] = count > 0 ? times[(int) ((nextSeq - 1) % capacity)] : 0;
+        for (int metric = 0; metric < METRICS; metric++) {
+            metrics[metric] = window.stats(metric);
+        }
+        return count;
+    }
+
+    private void store(int metric, int slot, Integer value) {
+        present[metric][slot] = value != null;
+        values[metric][slot] = value != null ? value : 0;
+    }
+
+    private final class Window {
+        private final long spanMillis;
+        private long tail;
+        // Gốc thời gian cho hồi quy, dời theo window để tổng bình phương thời gian không mất độ chính xác
+        private long originMillis = Long.MIN_VALUE;
+        private long removedSinceRebase;
+
+        private final long[] count = new long[METRICS];
+        private final long[] sum = new long[METRICS];
+        private final long[] sumSquares = new long[METRICS];
+        private final double[] sumTime = new double[METRICS];
+        private final double[] sumTimeSquares = new double[METRICS];
+        private final double[] sumTimeValue = new double[METRICS];
+        private final SlotDeque[] minQueue = new SlotDeque[METRICS];
+        private final SlotDeque[] maxQueue = new SlotDeque[METRICS];
+
+        private Window(long spanMillis) {
+            this.spanMillis = spanMillis;
+            for (int metric = 0; metric < METRICS; metric++) {
+                minQueue[metric] = new SlotDeque(capacity);
+                maxQueue[metric] = new SlotDeque(capacity);
+            }
+        }
+
+        private void add(int slot) {
+            if (originMillis == Long.MIN_VALUE) {
+                originMillis = times[slot];
+            }
+            double t = seconds(slot);
+            for (int metric = 0; metric < METRICS; metric++) {
+                if (!present[metric][slot]) {
+                    continue;
+                }
+                int value = values[metric][slot];
+                count[metric]++;
+                sum[metric] += value;
+                sumSquares[metric] += (long) value * value;
+                sumTime[metric] += t;
+                sumTimeSquares[metric] += t * t;
+                sumTimeValue[metric] += t * value;
+
+                int[] metricValues = values[metric];
+                SlotDeque min = minQueue[metric];
+                while (!min.isEmpty() && metricValues[min.peekLast()] >= value) {
+                    min.pollLast();
+                }
+                min.addLast(slot);
+                SlotDeque max = maxQueue[metric];
+                while (!max.isEmpty() && metricValues[max.peekLast()] <= value) {
+                    max.pollLast();
+                }
+                max.addLast(slot);
+            }
+        }
+
+        private void expireOlderThan(long cutoffMillis) {
+            while (tail < nextSeq && times[(int) (tail % capacity)] < cutoffMillis) {
+                remove(tail++);
+            }
+            rebaseIfNeeded();
+        }
+
+        private void expireBefore(long seq) {
+            while (tail < seq) {
+                remove(tail++);
+            }
+            rebaseIfNeeded();
+        }
+
+        /**
+         * Sau mỗi capacity mẫu bị loại, tính lại các tổng theo thời gian với gốc là mẫu cũ nhất còn lại.
+         * Window có tối đa capacity mẫu nên chi phí khấu hao vẫn là O(1) mỗi mẫu.
+         */
+        private void rebaseIfNeeded() {
+            if (removedSinceRebase < capacity) {
+                return;
+            }
+            removedSinceRebase = 0;
+            if (tail == nextSeq) {
+                originMillis = Long.MIN_VALUE;
+                return;
+            }
+            originMillis = times[(int) (tail % capacity)];
+            for (int metric = 0; metric < METRICS; metric++) {
+                sumTime[metric] = 0;
+                sumTimeSquares[metric] = 0;
+                sumTimeValue[metric] = 0;
+            }
+            for (long seq = tail; seq < nextSeq; seq++) {
+                int slot = (int) (seq % capacity);
+                double t = seconds(slot);
+                for (int metric = 0; metric < METRICS; metric++) {
+                    if (present[metric][slot]) {
+                        sumTime[metric] += t;
+                        sumTimeSquares[metric] += t * t;
+                        sumTimeValue[metric] += t * values[metric][slot];
+                    }
+                }
+            }
+        }
+
+        private double seconds(int slot) {
+            return (times[slot] - originMillis) / 1000.0;
+        }
+
+        private void remove(long seq) {
+            removedSinceRebase++;
+            int slot = (int) (seq % capacity);
+            double t = seconds(slot);
+            for (int metric = 0; metric < METRICS; metric++) {
+                if (!present[metric][slot]) {
+                    continue;
+                }
+                int value = values[metric][slot];
+                if (--count[metric] == 0) {
+                    // Window rỗng: đặt lại tổng để sai số cộng/trừ số thực không tích luỹ
+                    sum[metric] = 0;
+                    sumSquares[metric] = 0;
+                    sumTime[metric] = 0;
+                    sumTimeSquares[metric] = 0;
+                    sumTimeValue[metric] = 0;
+                } else {
+                    sum[metric] -= value;
+                    sumSquares[metric] -= (long) value * value;
+                    sumTime[metric] -= t;
+                    sumTimeSquares[metric] -= t * t;
+                    sumTimeValue[metric] -= t * value;
+                }
+                // Mẫu ra theo đúng thứ tự vào nên chỉ có thể là phần tử đầu hàng đợi
+                if (!minQueue[metric].isEmpty() && minQueue[metric].peekFirst() == slot) {
+                    minQueue[metric].pollFirst();
+                }
+                if (!maxQueue[metric].isEmpty() && maxQueue[metric].peekFirst() == slot) {
+                    maxQueue[metric].pollFirst();
+                }
+            }
+        }
+
+        private MetricStatsDTO stats(int metric) {
+            long n = count[metric];
+            MetricStatsDTO dto = new MetricStatsDTO().setCount(n);
+            if (n == 0) {
+                return dto;
+            }
+            double mean = (double) sum[metric] / n;
+            double variance = Math.max(0, (double) sumSquares[metric] / n - mean * mean);
+            dto.setAvg(mean)
+                    .setMin(values[metric][minQueue[metric].peekFirst()])
+                    .setMax(values[metric][maxQueue[metric].peekFirst()])
+                    .setStddev(Math.sqrt(variance));
+
+            // Độ dốc hồi quy tuyến tính giá trị theo thời gian, đổi sang đơn vị / phút
+            double denominator = n * sumTimeSquares[metric] - sumTime[metric] * sumTime[metric];
+            if (n > 1 && denominator > 1e-9) {
+                double slope = (n * sumTimeValue[metric] - sumTime[metric] * sum[metric]) / denominator;
+                dto.setRatePerMinute(slope * 60);
+            }
+            return dto;
+        }
+    }
+
+    /**
+     * Hàng đợi hai đầu các chỉ số slot trên mảng int, tự tăng kích thước tới capacity.
+     * Hàng đợi đơn điệu thường rất ngắn nên bắt đầu nhỏ để không tốn bộ nhớ cho mỗi node.
+     */
+    private static final class SlotDeque {
+        private final int maxCapacity;
+        private int[] items = new int[16];
+        private int head;
+        private int size;
+
+        private SlotDeque(int maxCapacity) {
+            this.maxCapacity = maxCapacity;
+        }
+
+        private boolean isEmpty() {
+            return size == 0;
+        }
+
+        private int peekFirst() {
+            return items[head];
+        }
+
+        private int peekLast() {
+            return items[(head + size - 1) % items.length];
+        }
+
+        private void pollFirst() {
+            head = (head + 1) % items.length;
+            size--;
+        }
+
+        private void pollLast() {
+            size--;
+        }
+
+        private void addLast(int slot) {
+            if (size == items.length) {
+                grow();
+            }
+            items[(head + size) % items.length] = slot;
+            size++;
+        }
+
+        private void grow() {
+            int[] grown = new int[Math.min(Math.max(items.length * 2, 16), Math.max(maxCapacity, 16))];
+            for (int i = 0; i < size; i++) {
+                grown[i] = items[(head + i) % items.length];
+            }
+            items = grown;
+            head = 0;
+        }
+    }
+}
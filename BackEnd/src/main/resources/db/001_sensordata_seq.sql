@@ -0,0 +1,12 @@
+-- Bảng sequence cho SensorEntity (Hibernate giả lập sequence bằng bảng trên MySQL).
+-- allocationSize = 50 nên mỗi lần lấy id chỉ cần một round trip cho 50 bản ghi.
+CREATE TABLE IF NOT EXISTS sensordata_seq (
+    next_val BIGINT NOT NULL
+) ENGINE = InnoDB;
+
+-- Optimizer pooled coi giá trị đọc được là đầu trên của block: lần đầu cấp id từ next_val - 49 tới next_val,
+-- nên khởi tạo MAX(id) + 50 (= allocationSize) để không trùng id đã có. Chạy lại script không thêm dòng thứ hai.
+INSERT INTO sensordata_seq (next_val)
+SELECT seed.next_val
+FROM (SELECT COALESCE(MAX(id), 0) + 50 AS next_val FROM sensordata) seed
+WHERE NOT EXISTS (SELECT 1 FROM sensordata_seq);
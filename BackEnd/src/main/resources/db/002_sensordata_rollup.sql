@@ -0,0 +1,54 @@
+-- Bảng tổng hợp theo phút / giờ / ngày, được ingest cập nhật dần (INSERT ... ON DUPLICATE KEY UPDATE).
+-- <metric>_count chỉ đếm mẫu có giá trị (NULL không tính là 0): avg = <metric>_sum / <metric>_count;
+-- <metric>_min / _max là NULL khi bucket chưa có mẫu nào của chỉ số đó.
+CREATE TABLE IF NOT EXISTS sensordata_rollup (
+    bucket            VARCHAR(8)  NOT NULL,
+    bucket_start      DATETIME    NOT NULL,
+    sample_count      BIGINT      NOT NULL,
+    temperature_count BIGINT      NOT NULL,
+    temperature_sum   BIGINT      NOT NULL,
+    temperature_min   INT         NULL,
+    temperature_max   INT         NULL,
+    humidity_count    BIGINT      NOT NULL,
+    humidity_sum      BIGINT      NOT NULL,
+    humidity_min      INT         NULL,
+    humidity_max      INT         NULL,
+    light_count       BIGINT      NOT NULL,
+    light_sum         BIGINT      NOT NULL,
+    light_min         INT         NULL,
+    light_max         INT         NULL,
+    wind_count        BIGINT      NOT NULL,
+    wind_sum          BIGINT      NOT NULL,
+    wind_min          INT         NULL,
+    wind_max          INT         NULL,
+    PRIMARY KEY (bucket, bucket_start)
+) ENGINE = InnoDB;
+
+-- Khởi tạo một lần từ dữ liệu đã có; sau đó ingest tự cập nhật.
+-- COUNT(col) / SUM / MIN / MAX đều bỏ qua NULL; SUM của nhóm toàn NULL là NULL nên đưa về 0.
+INSERT INTO sensordata_rollup
+SELECT 'MINUTE', DATE_FORMAT(timestamp, '%Y-%m-%d %H:%i:00'), COUNT(*),
+       COUNT(temperature), COALESCE(SUM(temperature), 0), MIN(temperature), MAX(temperature),
+       COUNT(humidity), COALESCE(SUM(humidity), 0), MIN(humidity), MAX(humidity),
+       COUNT(light), COALESCE(SUM(light), 0), MIN(light), MAX(light),
+       COUNT(wind), COALESCE(SUM(wind), 0), MIN(wind), MAX(wind)
+FROM sensordata WHERE timestamp IS NOT NULL
+GROUP BY DATE_FORMAT(timestamp, '%Y-%m-%d %H:%i:00');
+
+INSERT INTO sensordata_rollup
+SELECT 'HOUR', DATE_FORMAT(bucket_start, '%Y-%m-%d %H:00:00'), SUM(sample_count),
+       SUM(temperature_count), SUM(temperature_sum), MIN(temperature_min), MAX(temperature_max),
+       SUM(humidity_count), SUM(humidity_sum), MIN(humidity_min), MAX(humidity_max),
+       SUM(light_count), SUM(light_sum), MIN(light_min), MAX(light_max),
+       SUM(wind_count), SUM(wind_sum), MIN(wind_min), MAX(wind_max)
+FROM sensordata_rollup WHERE bucket = 'MINUTE'
+GROUP BY DATE_FORMAT(bucket_start, '%Y-%m-%d %H:00:00');
+
+INSERT INTO sensordata_rollup
+SELECT 'DAY', DATE(bucket_start), SUM(sample_count),
+       SUM(temperature_count), SUM(temperature_sum), MIN(temperature_min), MAX(temperature_max),
+       SUM(humidity_count), SUM(humidity_sum), MIN(humidity_min), MAX(humidity_max),
+       SUM(light_count), SUM(light_sum), MIN(light_min), MAX(light_max),
+       SUM(wind_count), SUM(wind_sum), MIN(wind_min), MAX(wind_max)
+FROM sensordata_rollup WHERE bucket = 'HOUR'
+GROUP BY DATE(bucket_start);
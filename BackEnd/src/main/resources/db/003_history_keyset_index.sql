@@ -0,0 +1,3 @@
+-- Index phục vụ phân trang keyset (seek theo timestamp, id) cho /sensor và /led.
+CREATE INDEX idx_sensordata_timestamp_id ON sensordata (timestamp, id);
+CREATE INDEX idx_ledcontrol_timestamp_id ON ledcontrol (timestamp, id);
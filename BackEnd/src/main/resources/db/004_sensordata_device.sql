@@ -0,0 +1,3 @@
+-- Thêm chiều thiết bị cho sensordata; bản ghi cũ thuộc node mặc định (topic "sensors").
+ALTER TABLE sensordata ADD COLUMN device_id VARCHAR(64) NOT NULL DEFAULT 'default';
+CREATE INDEX idx_sensordata_device_timestamp_id ON sensordata (device_id, timestamp, id);
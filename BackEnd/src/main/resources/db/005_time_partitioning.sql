@@ -0,0 +1,49 @@
+-- Phân vùng theo tháng cho sensordata và ledcontrol.
+-- Khoá chính phải chứa cột phân vùng nên đổi thành (id, timestamp).
+-- Sau khi chạy script, DataRetentionService tự tạo trước các partition tháng tới
+-- và xoá nguyên partition cũ (DROP PARTITION) thay cho DELETE từng dòng.
+-- Mốc partition tính theo tháng lúc chạy script: p_history chứa mọi thứ trước tháng này,
+-- pYYYYMM là tháng này, pmax chỉ chứa dữ liệu tương lai nên REORGANIZE về sau gần như không tốn chi phí.
+--
+-- Điều kiện trước: cột timestamp phải NOT NULL (là cột phân vùng và nằm trong khoá chính), nhưng bản cũ
+-- cho phép NULL nên MODIFY sẽ lỗi nếu còn dòng như vậy. Các dòng đó không có thời điểm nào để điền bù,
+-- nên được chuyển sang sensordata_untimed / ledcontrol_untimed (cùng cấu trúc) để xem xét thủ công
+-- thay vì bịa timestamp hay xoá mất. Kiểm tra trước khi chạy:
+--   SELECT COUNT(*) FROM sensordata WHERE timestamp IS NULL;
+--   SELECT COUNT(*) FROM ledcontrol WHERE timestamp IS NULL;
+CREATE TABLE IF NOT EXISTS sensordata_untimed LIKE sensordata;
+INSERT INTO sensordata_untimed SELECT * FROM sensordata WHERE timestamp IS NULL;
+DELETE FROM sensordata WHERE timestamp IS NULL;
+
+CREATE TABLE IF NOT EXISTS ledcontrol_untimed LIKE ledcontrol;
+INSERT INTO ledcontrol_untimed SELECT * FROM ledcontrol WHERE timestamp IS NULL;
+DELETE FROM ledcontrol WHERE timestamp IS NULL;
+
+ALTER TABLE sensordata
+    MODIFY timestamp DATETIME NOT NULL,
+    DROP PRIMARY KEY,
+    ADD PRIMARY KEY (id, timestamp);
+
+ALTER TABLE ledcontrol
+    MODIFY timestamp DATETIME NOT NULL,
+    DROP PRIMARY KEY,
+    ADD PRIMARY KEY (id, timestamp);
+
+-- VALUES LESS THAN chỉ nhận hằng số nên câu lệnh được ghép rồi chạy bằng PREPARE
+SET @month_start = DATE_FORMAT(CURDATE(), '%Y-%m-01');
+SET @partitions = CONCAT(
+    ' PARTITION BY RANGE COLUMNS (timestamp) (',
+    'PARTITION p_history VALUES LESS THAN (''', @month_start, '''), ',
+    'PARTITION p', DATE_FORMAT(CURDATE(), '%Y%m'),
+    ' VALUES LESS THAN (''', DATE_FORMAT(DATE_ADD(@month_start, INTERVAL 1 MONTH), '%Y-%m-%d'), '''), ',
+    'PARTITION pmax VALUES LESS THAN (MAXVALUE))');
+
+SET @statement = CONCAT('ALTER TABLE sensordata', @partitions);
+PREPARE partition_table FROM @statement;
+EXECUTE partition_table;
+DEALLOCATE PREPARE partition_table;
+
+SET @statement = CONCAT('ALTER TABLE ledcontrol', @partitions);
+PREPARE partition_table FROM @statement;
+EXECUTE partition_table;
+DEALLOCATE PREPARE partition_table;
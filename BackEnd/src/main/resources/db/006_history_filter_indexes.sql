@@ -0,0 +1,13 @@
+-- Index cho bộ lọc lịch sử dựng bằng Specification (HistoryFilter).
+-- Mỗi bộ lọc bằng (device_id, devicename, active) đứng trước (timestamp, id) để vừa range scan theo from/to
+-- vừa đọc sẵn theo thứ tự sắp xếp của keyset, không cần filesort.
+-- sensordata: (timestamp, id) và (device_id, timestamp, id) đã có từ 003/004.
+CREATE INDEX idx_ledcontrol_device_timestamp_id ON ledcontrol (devicename, timestamp, id);
+CREATE INDEX idx_ledcontrol_active_timestamp_id ON ledcontrol (active, timestamp, id);
+
+-- Lọc theo khoảng giá trị metric (temperatureMin/Max, ...) khi không giới hạn thời gian.
+-- Khi có from/to, MySQL ưu tiên index thời gian và kiểm tra metric trên từng dòng trong khoảng đó.
+CREATE INDEX idx_sensordata_temperature ON sensordata (temperature);
+CREATE INDEX idx_sensordata_humidity ON sensordata (humidity);
+CREATE INDEX idx_sensordata_light ON sensordata (light);
+CREATE INDEX idx_sensordata_wind ON sensordata (wind);
@@ -0,0 +1,214 @@
+package com.example.demo.startup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Đo thời gian khởi động tới khi ứng dụng sẵn sàng, mỗi lần chạy là một JVM mới, với các biến thể:
+ * mặc định, CDS (archive tạo từ một lần chạy huấn luyện), Spring AOT và AOT + CDS.
+ * <p>
+ * Ứng dụng chạy trên H2 in-memory và một broker MQTT không tồn tại, để thấy kết nối MQTT không còn nằm trên
+ * đường khởi động. CDS chỉ archive class từ file jar nên target/classes được đóng gói thành jar trước.
+ * Cấu hình qua system property {@code startup.*} (xem profile startup trong pom.xml).
+ */
+public class StartupBenchmark {
+
+    private static final String MAIN_CLASS = "com.example.demo.DemoApplication";
+    private static final Pattern STARTED = Pattern.compile(
+            "Started \\S+ in ([0-9.]+) seconds \\(process running for ([0-9.]+)\\)");
+
+    public static void main(String[] args) throws Exception {
+        int runs = Integer.getInteger("startup.runs", 3);
+        String output = System.getProperty("startup.output", "target/startup-result.json");
+        Path workDirectory = Path.of(System.getProperty("startup.work-directory", "target/startup"));
+        Files.createDirectories(workDirectory);
+
+        String classpath = jarOnlyClasspath(workDirectory);
+        boolean aotAvailable = Files.exists(Path.of("target/classes/com/example/demo/DemoApplication__ApplicationContextInitializer.class"));
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("runs", runs);
+        report.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+        report.put("default", measure("default", classpath, List.of(), runs));
+
+        Path archive = workDirectory.resolve("app.jsa");
+        train(classpath, List.of(), archive);
+        report.put("cds", measure("cds", classpath, List.of("-XX:SharedArchiveFile=" + archive), runs));
+
+        if (aotAvailable) {
+            List<String> aot = List.of("-Dspring.aot.enabled=true");
+            report.put("aot", measure("aot", classpath, aot, runs));
+
+            Path aotArchive = workDirectory.resolve("app-aot.jsa");
+            train(classpath, aot, aotArchive);
+            report.put("aot+cds", measure("aot+cds", classpath,
+                    List.of("-Dspring.aot.enabled=true", "-XX:SharedArchiveFile=" + aotArchive), runs));
+        } else {
+            System.out.println("No AOT output in target/classes, skipping aot variants (run spring-boot:process-aot)");
+        }
+
+        ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        System.out.println(mapper.writeValueAsString(report));
+        File file = new File(output);
+        file.getParentFile().mkdirs();
+        mapper.writeValue(file, report);
+        System.out.println("Startup report written to " + file.getAbsolutePath());
+    }
+
+    private static Map<String, Object> measure(String variant, String classpath, List<String> jvmArgs, int runs)
+            throws Exception {
+        List<Double> wallMs = new ArrayList<>();
+        List<Double> startedMs = new ArrayList<>();
+        List<Double> processMs = new ArrayList<>();
+        for (int i = 0; i < runs; i++) {
+            double[] result = startOnce(classpath, jvmArgs);
+            wallMs.add(result[0]);
+            startedMs.add(result[1]);
+            processMs.add(result[2]);
+            System.out.printf("%s run %d: ready after %.0f ms (Spring %.0f ms, JVM uptime %.0f ms)%n",
+                    variant, i + 1, result[0], result[1], result[2]);
+        }
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("jvmArgs", jvmArgs);
+        summary.put("wallMedianMs", median(wallMs));
+        summary.put("startedInMedianMs", median(startedMs));
+        summary.put("processUptimeMedianMs", median(processMs));
+        summary.put("wallMs", wallMs);
+        return summary;
+    }
+
+    /**
+     * @return {thời gian từ lúc tạo process tới dòng "Started", thời gian Spring báo, uptime JVM Spring báo}
+     */
+    private static double[] startOnce(String classpath, List<String> jvmArgs) throws Exception {
+        long start = System.nanoTime();
+        Process process = launch(classpath, jvmArgs, false);
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Matcher matcher = STARTED.matcher(line);
+                if (matcher.find()) {
+                    double wall = (System.nanoTime() - start) / 1e6;
+                    return new double[]{wall, Double.parseDouble(matcher.group(1)) * 1000,
+                            Double.parseDouble(matcher.group(2)) * 1000};
+                }
+            }
+        } finally {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        }
+        throw new IllegalStateException("Application exited before it was ready: exit code " + process.exitValue());
+    }
+
+    /**
+     * Chạy huấn luyện: context refresh xong thì thoát, JVM ghi các class đã nạp vào archive.
+     */
+    private static void train(String classpath, List<String> jvmArgs, Path archive) throws Exception {
+        Files.deleteIfExists(archive);
+        List<String> trainingArgs = new ArrayList<>(jvmArgs);
+        trainingArgs.add("-XX:ArchiveClassesAtExit=" + archive);
+        trainingArgs.add("-Dspring.context.exit=onRefresh");
+        Process process = launch(classpath, trainingArgs, true);
+        if (!process.waitFor(10, TimeUnit.MINUTES) || !Files.exists(archive)) {
+            process.destroyForcibly();
+            throw new IllegalStateException("CDS training run did not produce " + archive);
+        }
+        System.out.println("CDS archive " + archive + " (" + Files.size(archive) / 1024 + " KB)");
+    }
+
+    private static Process launch(String classpath, List<String> jvmArgs, boolean discardOutput) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmArgs);
+        command.add("-cp");
+        command.add(classpath);
+        command.add(MAIN_CLASS);
+        command.add("--server.port=0");
+        command.add("--iot.mqtt.broker-url=tcp://127.0.0.1:" + freePort());
+        command.add("--iot.mqtt.client-id=startup-benchmark");
+        command.add("--iot.ingest.wal.directory=target/startup/wal");
+        command.add("--spring.datasource.url=jdbc:h2:mem:startup;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+        command.add("--spring.datasource.username=sa");
+        command.add("--spring.datasource.password=");
+        command.add("--spring.jpa.hibernate.ddl-auto=create-drop");
+        command.add("--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect");
+        command.add("--logging.level.root=WARN");
+        // Dòng "Started ... in ... seconds" được log bằng logger của main class
+        command.add("--logging.level." + MAIN_CLASS + "=INFO");
+        ProcessBuilder builder = new ProcessBuilder(command).redirectErrorStream(true);
+        if (discardOutput) {
+            builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        }
+        return builder.start();
+    }
+
+    /**
+     * Classpath của profile chỉ gồm jar: thư mục target/classes được đóng gói thành jar, các thư mục khác
+     * (test-classes chứa chính harness này) bị bỏ.
+     */
+    private static String jarOnlyClasspath(Path workDirectory) throws IOException {
+        List<String> entries = new ArrayList<>();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            Path path = Path.of(entry);
+            if (Files.isDirectory(path)) {
+                if (path.endsWith("classes")) {
+                    Path jar = workDirectory.resolve("app.jar");
+                    jar(path, jar);
+                    entries.add(jar.toAbsolutePath().toString());
+                }
+            } else if (entry.endsWith(".jar")) {
+                entries.add(entry);
+            }
+        }
+        return String.join(File.pathSeparator, entries);
+    }
+
+    private static void jar(Path directory, Path jar) throws IOException {
+        try (OutputStream file = Files.newOutputStream(jar);
+             JarOutputStream out = new JarOutputStream(file);
+             Stream<Path> files = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) files.filter(Files::isRegularFile).sorted()::iterator) {
+                out.putNextEntry(new JarEntry(directory.relativize(path).toString().replace(File.separatorChar, '/')));
+                Files.copy(path, out);
+                out.closeEntry();
+            }
+        }
+    }
+
+    private static double median(List<Double> values) {
+        List<Double> sorted = new ArrayList<>(values);
+        sorted.sort(null);
+        int middle = sorted.size() / 2;
+        return sorted.size() % 2 == 1 ? sorted.get(middle) : (sorted.get(middle - 1) + sorted.get(middle)) / 2;
+    }
+
+    private static int freePort() throws IOException {
+        // Cổng vừa được giải phóng, không có broker: kết nối MQTT bị từ chối và chạy lại nền với backoff
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
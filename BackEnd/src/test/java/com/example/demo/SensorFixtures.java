@@ -0,0 +1,44 @@
+package com.example.demo;
+
+import com.example.demo.repository.entity.SensorEntity;
+
+import java.time.LocalDateTime;
+
+/**
+ * Bản ghi cảm biến dùng chung cho các test.
+ */
+public final class SensorFixtures {
+
+    private SensorFixtures() {
+    }
+
+    public static SensorEntity reading(String deviceId) {
+        return reading(deviceId, 25);
+    }
+
+    /**
+     * Bản ghi đủ bốn metric, nhiệt độ cho trước, timestamp là thời điểm hiện tại.
+     */
+    public static SensorEntity reading(String deviceId, int temperature) {
+        return reading(deviceId, LocalDateTime.now(), temperature, 50, 300, 2);
+    }
+
+    /**
+     * Bản ghi không gắn thiết bị (như node cũ publish lên "sensors"), thời điểm và nhiệt độ cho trước.
+     */
+    public static SensorEntity reading(LocalDateTime timestamp, int temperature) {
+        return reading(null, timestamp, temperature, 50, 300, 2);
+    }
+
+    public static SensorEntity reading(String deviceId, LocalDateTime timestamp,
+                                       Integer temperature, Integer humidity, Integer light, Integer wind) {
+        SensorEntity reading = new SensorEntity();
+        reading.setDeviceId(deviceId);
+        reading.setTimestamp(timestamp);
+        reading.setTemperature(temperature);
+        reading.setHumidity(humidity);
+        reading.setLight(light);
+        reading.setWind(wind);
+        return reading;
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.demo.config;
+
+import com.example.demo.converter.SensorBinaryCodec;
+import com.example.demo.converter.SensorPayloadDecoder;
+import com.example.demo.repository.entity.SensorEntity;
+import com.example.demo.service.LatestStateService;
+import com.example.demo.service.LiveStatsService;
+import com.example.demo.service.LiveStreamService;
+import com.example.demo.service.RuleEngineService;
+import com.example.demo.service.SensorIngestService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MqttConfigTest {
+
+    // Đồng hồ của node lệch xa so với backend
+    private static final long SKEWED_MILLIS = 1_500_000_000_000L;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SensorIngestService sensorIngestService = mock(SensorIngestService.class);
+    private final LatestStateService latestStateService = mock(LatestStateService.class);
+    private final RuleEngineService ruleEngineService = mock(RuleEngineService.class);
+    private final LiveStatsService liveStatsService = mock(LiveStatsService.class);
+    private final MqttConfig config = new MqttConfig();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(config, "sensorPayloadDecoder", new SensorPayloadDecoder());
+        ReflectionTestUtils.setField(config, "sensorBinaryCodec", new SensorBinaryCodec());
+        ReflectionTestUtils.setField(config, "sensorIngestService", sensorIngestService);
+        ReflectionTestUtils.setField(config, "latestStateService", latestStateService);
+        ReflectionTestUtils.setField(config, "liveStreamService", mock(LiveStreamService.class));
+        ReflectionTestUtils.setField(config, "ruleEngineService", ruleEngineService);
+        ReflectionTestUtils.setField(config, "liveStatsService", liveStatsService);
+        ReflectionTestUtils.setField(config, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(config, "username", "user");
+        ReflectionTestUtils.setField(config, "password", "secret");
+        config.mqttConnectionManager(mock(MqttClient.class));
+        when(sensorIngestService.submit(any())).thenReturn(true);
+    }
+
+    @Test
+    void treatsJsonReadingAsLiveWhateverTheNodeClockSays() {
+        receive("sensors/node-1", ("{\"temperature\":31,\"timestamp\":" + SKEWED_MILLIS + "}").getBytes());
+
+        ArgumentCaptor<SensorEntity> evaluated = ArgumentCaptor.forClass(SensorEntity.class);
+        verify(ruleEngineService).evaluate(evaluated.capture());
+        assertThat(evaluated.getValue().getDeviceId()).isEqualTo("node-1");
+        assertThat(evaluated.getValue().getTemperature()).isEqualTo(31);
+        verify(liveStatsService).record(evaluated.getValue());
+        verify(latestStateService).updateSensorData(evaluated.getValue());
+        assertThat(meterRegistry.get("iot.mqtt.readings.stale").counter().count()).isZero();
+    }
+
+    @Test
+    void storesEveryReadingOfBatchedFrameButOnlyTheNewestIsLive() {
+        byte[] frame = SensorBinaryCodec.encode(new long[]{SKEWED_MILLIS, SKEWED_MILLIS + 1_000, SKEWED_MILLIS + 2_000},
+                new Integer[]{20, 21, 22}, new Integer[]{60, 60, 60}, new Integer[]{300, 300, 300}, new Integer[]{2, 2, 2});
+
+        receive("sensors/node-1", frame);
+
+        verify(sensorIngestService, times(3)).submit(any());
+        ArgumentCaptor<SensorEntity> evaluated = ArgumentCaptor.forClass(SensorEntity.class);
+        verify(ruleEngineService).evaluate(evaluated.capture());
+        assertThat(evaluated.getValue().getTemperature()).isEqualTo(22);
+        verify(liveStatsService).record(evaluated.getValue());
+        verify(latestStateService).updateSensorData(evaluated.getValue());
+        assertThat(meterRegistry.get("iot.mqtt.readings.stale").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void dropsMalformedFrameAndInvalidDeviceId() {
+        receive("sensors/node-1", new byte[]{SensorBinaryCodec.MAGIC, 1, 3});
+        receive("sensors/bad device", "{\"temperature\":31}".getBytes());
+
+        verify(sensorIngestService, times(0)).submit(any());
+        assertThat(meterRegistry.get("iot.mqtt.messages.malformed").tag("topic", "sensors/+").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("iot.mqtt.messages.rejected").counter().count()).isEqualTo(1);
+    }
+
+    private void receive(String topic, byte[] payload) {
+        ReflectionTestUtils.invokeMethod(config, "handleSensorMessage", topic, new MqttMessage(payload));
+    }
+}
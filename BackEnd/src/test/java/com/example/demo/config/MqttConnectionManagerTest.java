@@ -0,0 +1,103 @@
+package com.example.demo.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.eclipse.paho.client.mqttv3.IMqttMessageListener;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MqttConnectionManagerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final MqttClient client = mock(MqttClient.class);
+    private final IMqttMessageListener listener = (topic, message) -> { };
+    private final List<Long> attempts = new CopyOnWriteArrayList<>();
+    private final AtomicInteger failuresLeft = new AtomicInteger();
+    private volatile boolean connected;
+    private MqttConnectionManager connection;
+
+    @BeforeEach
+    void setUp() throws MqttException {
+        when(client.isConnected()).thenAnswer(invocation -> connected);
+        doAnswer(invocation -> {
+            attempts.add(System.nanoTime());
+            if (failuresLeft.getAndDecrement() > 0) {
+                throw new MqttException(MqttException.REASON_CODE_SERVER_CONNECT_ERROR);
+            }
+            connected = true;
+            return null;
+        }).when(client).connect(any(MqttConnectOptions.class));
+        connection = new MqttConnectionManager(client, new MqttConnectOptions(), 50, 100, meterRegistry);
+        connection.subscribe("sensors", listener);
+    }
+
+    @AfterEach
+    void stop() {
+        connection.stop();
+    }
+
+    @Test
+    void retriesInBackgroundWithCappedBackoffThenSubscribes() throws Exception {
+        failuresLeft.set(3);
+
+        connection.start();
+        // Broker chưa sẵn sàng không chặn luồng khởi động
+        assertThat(connected).isFalse();
+
+        await(() -> connected && meterRegistry.counter("iot.mqtt.connect.attempts", "result", "success").count() == 1);
+        assertThat(meterRegistry.counter("iot.mqtt.connect.attempts", "result", "failure").count()).isEqualTo(3);
+        assertThat(attempts).hasSize(4);
+        assertThat(attempts.get(1) - attempts.get(0)).isGreaterThanOrEqualTo(45_000_000L);
+        assertThat(attempts.get(2) - attempts.get(1)).isGreaterThanOrEqualTo(95_000_000L);
+        assertThat(attempts.get(3) - attempts.get(2)).isGreaterThanOrEqualTo(95_000_000L).isLessThan(1_000_000_000L);
+        verify(client).subscribe("sensors", listener);
+        assertThat(meterRegistry.get("iot.mqtt.connected").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    void reconnectsAndResubscribesAfterConnectionLost() throws Exception {
+        connection.start();
+        await(() -> connected);
+        ArgumentCaptor<MqttCallback> callback = ArgumentCaptor.forClass(MqttCallback.class);
+        verify(client).setCallback(callback.capture());
+
+        // Đăng ký khi đang kết nối được áp dụng ngay
+        connection.subscribe("fan", listener);
+        verify(client).subscribe("fan", listener);
+
+        connected = false;
+        callback.getValue().connectionLost(new MqttException(MqttException.REASON_CODE_CONNECTION_LOST));
+
+        await(() -> connected && attempts.size() == 2);
+        await(() -> meterRegistry.counter("iot.mqtt.connect.attempts", "result", "success").count() == 2);
+        verify(client, times(2)).subscribe(eq("sensors"), any(IMqttMessageListener.class));
+        verify(client, times(2)).subscribe(eq("fan"), any(IMqttMessageListener.class));
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("condition not met in time").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
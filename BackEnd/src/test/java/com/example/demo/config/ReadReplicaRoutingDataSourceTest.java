@@ -0,0 +1,135 @@
+package com.example.demo.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Hai H2 nhúng thay cho primary và replica, mỗi DB trả về tên của chính nó để biết câu lệnh chạy ở đâu
+class ReadReplicaRoutingDataSourceTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final JdbcTemplate primary = new JdbcTemplate(database("primary"));
+    private final JdbcTemplate replicaAdmin = new JdbcTemplate(database("replica"));
+    private final FailingDataSource replica = new FailingDataSource(replicaAdmin.getDataSource());
+    private ReadReplicaRoutingDataSource routing;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate readOnly;
+    private TransactionTemplate readWrite;
+
+    @BeforeEach
+    void setUp() {
+        primary.execute("CREATE TABLE node (name VARCHAR(16))");
+        primary.update("INSERT INTO node VALUES ('primary')");
+        replicaAdmin.execute("CREATE TABLE node (name VARCHAR(16))");
+        replicaAdmin.update("INSERT INTO node VALUES ('replica')");
+        // Bảng giả cho lag-query: một dòng, cột đầu là độ trễ tính bằng giây
+        replicaAdmin.execute("CREATE TABLE replica_lag (seconds INT)");
+        replicaAdmin.update("INSERT INTO replica_lag VALUES (1)");
+
+        routing = new ReadReplicaRoutingDataSource(primary.getDataSource(), replica, 5000,
+                "SELECT seconds FROM replica_lag", meterRegistry);
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(routing);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        readWrite = new TransactionTemplate(transactionManager);
+    }
+
+    @AfterEach
+    void tearDown() {
+        primary.execute("DROP ALL OBJECTS");
+        replicaAdmin.execute("DROP ALL OBJECTS");
+    }
+
+    @Test
+    void routesOnlyReadOnlyTransactionsToCheckedReplica() {
+        // Chưa kiểm tra lần nào thì chưa dùng replica
+        assertThat(readOnlyNode()).isEqualTo("primary");
+
+        routing.checkReplica();
+
+        assertThat(readOnlyNode()).isEqualTo("replica");
+        String writeNode = readWrite.execute(status -> node());
+        assertThat(writeNode).isEqualTo("primary");
+        assertThat(node()).isEqualTo("primary");
+        assertThat(meterRegistry.counter("iot.datasource.reads", "target", "replica").count()).isEqualTo(1);
+        assertThat(meterRegistry.counter("iot.datasource.reads", "target", "primary").count()).isEqualTo(1);
+        assertThat(meterRegistry.get("iot.datasource.replica.lag").gauge().value()).isEqualTo(1000);
+    }
+
+    @Test
+    void fallsBackToPrimaryWhileLagIsTooHighOrUnknown() {
+        routing.checkReplica();
+        assertThat(readOnlyNode()).isEqualTo("replica");
+
+        replicaAdmin.update("UPDATE replica_lag SET seconds = 10");
+        routing.checkReplica();
+        assertThat(readOnlyNode()).isEqualTo("primary");
+
+        // Replication dừng: độ trễ NULL
+        replicaAdmin.update("UPDATE replica_lag SET seconds = NULL");
+        routing.checkReplica();
+        assertThat(readOnlyNode()).isEqualTo("primary");
+        assertThat(meterRegistry.get("iot.datasource.replica.usable").gauge().value()).isZero();
+
+        replicaAdmin.update("UPDATE replica_lag SET seconds = 0");
+        routing.checkReplica();
+        assertThat(readOnlyNode()).isEqualTo("replica");
+    }
+
+    @Test
+    void failsOverToPrimaryAsSoonAsReplicaConnectionFails() {
+        routing.checkReplica();
+        replica.down = true;
+
+        assertThat(readOnlyNode()).isEqualTo("primary");
+
+        // Replica trở lại nhưng chỉ được dùng sau lần kiểm tra tiếp theo
+        replica.down = false;
+        assertThat(readOnlyNode()).isEqualTo("primary");
+        routing.checkReplica();
+        assertThat(readOnlyNode()).isEqualTo("replica");
+    }
+
+    private String readOnlyNode() {
+        return readOnly.execute(status -> node());
+    }
+
+    private String node() {
+        return jdbcTemplate.queryForObject("SELECT name FROM node", String.class);
+    }
+
+    private static DriverManagerDataSource database(String name) {
+        return new DriverManagerDataSource("jdbc:h2:mem:" + name + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+    }
+
+    private static final class FailingDataSource extends DelegatingDataSource {
+        private volatile boolean down;
+
+        private FailingDataSource(DataSource target) {
+            super(target);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            if (down) {
+                throw new SQLException("Connection refused");
+            }
+            return super.getConnection();
+        }
+    }
+}
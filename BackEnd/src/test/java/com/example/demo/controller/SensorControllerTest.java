@@ -0,0 +1,110 @@
+package com.example.demo.controller;
+
+import com.example.demo.model.CachedPage;
+import com.example.demo.model.KeysetCursor;
+import com.example.demo.model.SensorRowDTO;
+import com.example.demo.repository.HistoryRowRepository;
+import com.example.demo.repository.SensorRepository;
+import com.example.demo.service.HistoryCacheService;
+import com.example.demo.service.LiveStatsService;
+import com.example.demo.service.impl.SensorServiceImpl;
+import jakarta.servlet.ServletException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.hamcrest.Matchers.containsString;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class SensorControllerTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 3, 1, 10, 0);
+
+    private final HistoryRowRepository historyRowRepository = mock(HistoryRowRepository.class);
+    private final LiveStatsService liveStatsService = mock(LiveStatsService.class);
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        SensorServiceImpl sensorService = new SensorServiceImpl();
+        ReflectionTestUtils.setField(sensorService, "historyRowRepository", historyRowRepository);
+        ReflectionTestUtils.setField(sensorService, "sensorRepository", mock(SensorRepository.class));
+
+        // Cache trong suốt: luôn gọi loader
+        HistoryCacheService historyCacheService = mock(HistoryCacheService.class);
+        when(historyCacheService.get(anyString(), anyMap(), any())).thenAnswer(invocation ->
+                new CachedPage<>(((Supplier<?>) invocation.getArgument(2)).get(), "\"etag\""));
+
+        SensorController controller = new SensorController();
+        ReflectionTestUtils.setField(controller, "sensorService", sensorService);
+        ReflectionTestUtils.setField(controller, "historyCacheService", historyCacheService);
+        ReflectionTestUtils.setField(controller, "liveStatsService", liveStatsService);
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).setControllerAdvice(new ApiExceptionHandler()).build();
+    }
+
+    @Test
+    void followsNextCursorNewestFirst() throws Exception {
+        when(historyRowRepository.findSensorRows(any(), any(), anyInt(), anyInt()))
+                .thenReturn(List.of(row(3, NOW.plusMinutes(3)), row(2, NOW.plusMinutes(2)), row(1, NOW.plusMinutes(1))));
+
+        mockMvc.perform(get("/sensor").param("paging", "cursor").param("pageSize", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.nextCursor").value(KeysetCursor.next(NOW.plusMinutes(2), 2L)))
+                .andExpect(jsonPath("$.prevCursor").doesNotExist());
+
+        verify(historyRowRepository).findSensorRows(any(), eq(Sort.by(Sort.Direction.DESC, "timestamp", "id")), eq(0), eq(3));
+    }
+
+    @Test
+    void rejectsSortParametersInCursorMode() throws Exception {
+        mockMvc.perform(get("/sensor").param("paging", "cursor").param("sortBy", "temperature"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/sensor").param("cursor", KeysetCursor.next(NOW, 1L)).param("sortDirection", "asc"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string(containsString("sortDirection")));
+    }
+
+    @Test
+    void rejectsInvalidPagingParameters() throws Exception {
+        mockMvc.perform(get("/sensor").param("cursor", "tampered")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/sensor").param("pageSize", "ten")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/sensor").param("pageSize", "0")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/sensor").param("pageSize", "1000").param("pageNumber", "2147484"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/sensor").param("sortBy", "password")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/sensor").param("sortDirection", "sideways")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/sensor").param("from", "yesterday")).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void doesNotTurnServerSideIllegalArgumentIntoBadRequest() {
+        when(liveStatsService.getStats("5m", null)).thenThrow(new IllegalArgumentException("bug"));
+
+        assertThatThrownBy(() -> mockMvc.perform(get("/sensor/stats")))
+                .isInstanceOf(ServletException.class)
+                .hasCauseInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static SensorRowDTO row(long id, LocalDateTime timestamp) {
+        return new SensorRowDTO(id, "node-1", 25, 50, 300, 2, timestamp);
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.demo.converter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SensorBinaryCodecTest {
+
+    private static final long BASE = 1_700_000_000_000L;
+
+    private final SensorBinaryCodec codec = new SensorBinaryCodec();
+    private final List<long[]> readings = new ArrayList<>();
+
+    @Test
+    void decodesEveryReadingOfValidFrame() {
+        byte[] frame = SensorBinaryCodec.encode(
+                new long[]{BASE, BASE + 1_000, BASE + 0xFFFFFFFFL},
+                new Integer[]{25, -12, null},
+                new Integer[]{60, null, 0},
+                new Integer[]{null, 32767, 1},
+                new Integer[]{3, -32767, 2});
+
+        assertThat(SensorBinaryCodec.isBinary(frame)).isTrue();
+        assertThat(codec.decode(frame, this::collect)).isEqualTo(3);
+        assertThat(readings).containsExactly(
+                new long[]{BASE, 25, 60, SensorBinaryCodec.MISSING, 3},
+                new long[]{BASE + 1_000, -12, SensorBinaryCodec.MISSING, 32767, -32767},
+                new long[]{BASE + 0xFFFFFFFFL, SensorBinaryCodec.MISSING, 0, 1, 2});
+        assertThat(codec.getDecodedCount()).isEqualTo(3);
+        assertThat(codec.getMalformedCount()).isZero();
+    }
+
+    @Test
+    void rejectsMalformedFramesWithoutEmittingReadings() {
+        byte[] valid = SensorBinaryCodec.encode(new long[]{BASE, BASE + 500},
+                new Integer[]{25, 26}, new Integer[]{60, 61}, new Integer[]{300, 301}, new Integer[]{2, 3});
+
+        byte[] wrongVersion = valid.clone();
+        wrongVersion[1] = 2;
+        byte[] noReadings = Arrays.copyOf(valid, SensorBinaryCodec.HEADER_SIZE);
+        noReadings[2] = 0;
+        byte[] countTooHigh = valid.clone();
+        countTooHigh[2] = 3;
+        byte[] countTooLow = valid.clone();
+        countTooLow[2] = 1;
+
+        List<byte[]> malformed = List.of(
+                new byte[0],
+                new byte[]{SensorBinaryCodec.MAGIC},
+                Arrays.copyOf(valid, SensorBinaryCodec.HEADER_SIZE - 1),
+                "{\"temperature\":25}".getBytes(),
+                wrongVersion,
+                noReadings,
+                countTooHigh,
+                countTooLow,
+                Arrays.copyOf(valid, valid.length - 1),
+                Arrays.copyOf(valid, valid.length + 1));
+        for (byte[] frame : malformed) {
+            assertThat(codec.decode(frame, this::collect)).as(Arrays.toString(frame)).isEqualTo(-1);
+        }
+
+        assertThat(readings).isEmpty();
+        assertThat(codec.getMalformedCount()).isEqualTo(malformed.size());
+        assertThat(codec.getDecodedCount()).isZero();
+    }
+
+    @Test
+    void refusesToEncodeValuesTheFrameCannotCarry() {
+        Integer[] one = {1};
+        assertThatThrownBy(() -> SensorBinaryCodec.encode(new long[0], new Integer[0], new Integer[0], new Integer[0], new Integer[0]))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> SensorBinaryCodec.encode(new long[256], new Integer[256], new Integer[256], new Integer[256], new Integer[256]))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> SensorBinaryCodec.encode(new long[]{BASE, BASE - 1},
+                new Integer[]{1, 1}, new Integer[]{1, 1}, new Integer[]{1, 1}, new Integer[]{1, 1}))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> SensorBinaryCodec.encode(new long[]{BASE}, new Integer[]{40_000}, one, one, one))
+                .isInstanceOf(IllegalArgumentException.class);
+        // -32768 là giá trị đánh dấu "không có", không được dùng làm giá trị thật
+        assertThatThrownBy(() -> SensorBinaryCodec.encode(new long[]{BASE}, new Integer[]{SensorBinaryCodec.MISSING}, one, one, one))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private void collect(long epochMillis, int temperature, int humidity, int light, int wind) {
+        readings.add(new long[]{epochMillis, temperature, humidity, light, wind});
+    }
+}
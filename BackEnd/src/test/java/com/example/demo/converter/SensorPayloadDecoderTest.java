@@ -0,0 +1,85 @@
+package com.example.demo.converter;
+
+import com.example.demo.repository.entity.SensorEntity;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class SensorPayloadDecoderTest {
+
+    private static final Instant INSTANT = Instant.parse("2024-03-01T03:15:30Z");
+
+    private final SensorPayloadDecoder decoder = new SensorPayloadDecoder();
+
+    @Test
+    void acceptsStringNumbersAndRoundsFractions() {
+        SensorEntity reading = decode("{\"temperature\":\"25\",\"humidity\":\" 60.5 \",\"light\":299.4,\"wind\":-2.6}");
+
+        assertThat(reading.getTemperature()).isEqualTo(25);
+        assertThat(reading.getHumidity()).isEqualTo(61);
+        assertThat(reading.getLight()).isEqualTo(299);
+        assertThat(reading.getWind()).isEqualTo(-3);
+    }
+
+    @Test
+    void keepsNullAndMissingFieldsAsNullAndSkipsUnknownFields() {
+        SensorEntity reading = decode("{\"temperature\":null,\"humidity\":40,\"meta\":{\"fw\":[1,2]}}");
+
+        assertThat(reading.getTemperature()).isNull();
+        assertThat(reading.getHumidity()).isEqualTo(40);
+        assertThat(reading.getLight()).isNull();
+        assertThat(reading.getWind()).isNull();
+        assertThat(reading.getTimestamp()).isCloseTo(LocalDateTime.now(), within(5, ChronoUnit.SECONDS));
+    }
+
+    @Test
+    void rejectsOutOfRangeAndNonNumericValues() {
+        assertMalformed("{\"temperature\":2147483648}");
+        assertMalformed("{\"temperature\":1e12}");
+        assertMalformed("{\"temperature\":-2147483648.6}");
+        assertMalformed("{\"temperature\":\"NaN\"}");
+        assertMalformed("{\"temperature\":\"warm\"}");
+        assertMalformed("{\"temperature\":true}");
+        assertMalformed("{\"temperature\":[25]}");
+        assertThat(decoder.getMalformedCount()).isEqualTo(7);
+        assertThat(decoder.getDecodedCount()).isZero();
+    }
+
+    @Test
+    void readsEpochMillisLocalAndOffsetTimestamps() {
+        LocalDateTime local = LocalDateTime.ofInstant(INSTANT, ZoneId.systemDefault());
+
+        assertThat(decode("{\"timestamp\":" + INSTANT.toEpochMilli() + "}").getTimestamp()).isEqualTo(local);
+        assertThat(decode("{\"timestamp\":\"2024-03-01T03:15:30Z\"}").getTimestamp()).isEqualTo(local);
+        assertThat(decode("{\"timestamp\":\"2024-03-01T10:15:30+07:00\"}").getTimestamp()).isEqualTo(local);
+        assertThat(decode("{\"timestamp\":\"2024-03-01T10:15:30\"}").getTimestamp())
+                .isEqualTo(LocalDateTime.of(2024, 3, 1, 10, 15, 30));
+    }
+
+    @Test
+    void rejectsBadTimestampsAndNonObjectPayloads() {
+        assertMalformed("{\"timestamp\":\"01/03/2024 10:15\"}");
+        assertMalformed("{\"timestamp\":\"2024-03-01T10:15:30+25:00\"}");
+        assertMalformed("{\"timestamp\":1.5}");
+        assertMalformed("[1,2,3]");
+        assertMalformed("{\"temperature\":25");
+        assertMalformed("");
+    }
+
+    private SensorEntity decode(String json) {
+        SensorEntity reading = decoder.decode(json.getBytes(StandardCharsets.UTF_8));
+        assertThat(reading).as(json).isNotNull();
+        return reading;
+    }
+
+    private void assertMalformed(String json) {
+        assertThat(decoder.decode(json.getBytes(StandardCharsets.UTF_8))).as(json).isNull();
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.demo.model;
+
+import com.example.demo.exception.InvalidRequestException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class KeysetCursorTest {
+
+    private static final LocalDateTime TIMESTAMP = LocalDateTime.of(2024, 3, 1, 10, 15, 30, 123_000_000);
+
+    @Test
+    void roundTripsNextAndPrevCursors() {
+        KeysetCursor next = KeysetCursor.decode(KeysetCursor.next(TIMESTAMP, 42L));
+        KeysetCursor prev = KeysetCursor.decode(KeysetCursor.prev(TIMESTAMP, 42L));
+
+        assertThat(next.isBackward()).isFalse();
+        assertThat(next.getTimestamp()).isEqualTo(TIMESTAMP);
+        assertThat(next.getId()).isEqualTo(42L);
+        assertThat(prev.isBackward()).isTrue();
+        assertThat(prev.getTimestamp()).isEqualTo(TIMESTAMP);
+        // Chuỗi cursor đi trong query string: base64 url-safe, không padding
+        assertThat(KeysetCursor.next(TIMESTAMP, Long.MAX_VALUE)).matches("[A-Za-z0-9_-]+");
+    }
+
+    @Test
+    void rejectsTamperedCursorsAsInvalidRequest() {
+        assertInvalid("not base64!");
+        assertInvalid(encode("n|2024-03-01T10:15:30"));
+        assertInvalid(encode("n|yesterday|42"));
+        assertInvalid(encode("n|2024-03-01T10:15:30|42 OR 1=1"));
+        assertInvalid(encode(""));
+        String valid = KeysetCursor.next(TIMESTAMP, 42L);
+        assertInvalid(valid.substring(0, valid.length() / 2));
+    }
+
+    private static void assertInvalid(String cursor) {
+        assertThatThrownBy(() -> KeysetCursor.decode(cursor))
+                .isInstanceOf(InvalidRequestException.class)
+                .hasMessageStartingWith("Invalid cursor");
+    }
+
+    private static String encode(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.LedRowDTO;
+import com.example.demo.model.SensorRowDTO;
+import com.example.demo.repository.entity.LedEntity;
+import com.example.demo.repository.entity.SensorEntity;
+import com.example.demo.repository.specification.HistoryFilter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static com.example.demo.SensorFixtures.reading;
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Hibernate phải tìm được constructor của record (component int nhận giá trị từ cb.coalesce) trên DB thật
+@DataJpaTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect"
+})
+@Import({HistoryRowRepository.class, HistoryRowRepositoryTest.Metrics.class})
+class HistoryRowRepositoryTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 3, 1, 10, 0);
+
+    @Autowired
+    private HistoryRowRepository historyRowRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void readsSensorRowsWithMissingMetricsAsZero() {
+        entityManager.persist(reading("node-1", START, 21, 60, 300, 2));
+        entityManager.persist(reading("node-1", START.plusMinutes(1), null, 55, null, 3));
+        entityManager.persist(reading("node-2", START.plusMinutes(2), 23, 50, 310, 4));
+        entityManager.flush();
+
+        Specification<SensorEntity> filter = HistoryFilter.<SensorEntity>of(Map.of("deviceId", "node-1")).equal("deviceId").build();
+        List<SensorRowDTO> rows = historyRowRepository.findSensorRows(filter, Sort.by(Sort.Direction.DESC, "timestamp"), 0, 10);
+
+        assertThat(rows).extracting(SensorRowDTO::timestamp).containsExactly(START.plusMinutes(1), START);
+        assertThat(rows.get(0).temperature()).isZero();
+        assertThat(rows.get(0).light()).isZero();
+        assertThat(rows.get(0).humidity()).isEqualTo(55);
+        assertThat(rows.get(1)).isEqualTo(new SensorRowDTO(rows.get(1).id(), "node-1", 21, 60, 300, 2, START));
+        assertThat(meterRegistry.get("iot.history.query").tag("resource", "sensor").tag("state", "success").timer().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void readsLedRowsPageByOffset() {
+        for (int i = 0; i < 5; i++) {
+            LedEntity led = new LedEntity();
+            led.setDeviceName(i % 2 == 0 ? "fan" : "lightbulb");
+            led.setActive(i % 2 == 0 ? "on" : "off");
+            led.setTimestamp(START.plusMinutes(i));
+            entityManager.persist(led);
+        }
+        entityManager.flush();
+
+        List<LedRowDTO> rows = historyRowRepository.findLedRows(Specification.where(null),
+                Sort.by(Sort.Direction.ASC, "timestamp"), 2, 2);
+
+        assertThat(rows).extracting(LedRowDTO::timestamp).containsExactly(START.plusMinutes(2), START.plusMinutes(3));
+        assertThat(rows).extracting(LedRowDTO::deviceName).containsExactly("fan", "lightbulb");
+        assertThat(rows).extracting(LedRowDTO::active).containsExactly("on", "off");
+    }
+
+    @TestConfiguration
+    static class Metrics {
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+}
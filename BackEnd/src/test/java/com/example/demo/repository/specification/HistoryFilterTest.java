@@ -0,0 +1,113 @@
+package com.example.demo.repository.specification;
+
+import com.example.demo.repository.LedRepository;
+import com.example.demo.repository.SensorRepository;
+import com.example.demo.repository.entity.LedEntity;
+import com.example.demo.repository.entity.SensorEntity;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static com.example.demo.SensorFixtures.reading;
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Predicate sinh ra phải chạy được trên DB thật, không chỉ dựng được Specification
+@DataJpaTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect"
+})
+class HistoryFilterTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 3, 1, 10, 0);
+
+    @Autowired
+    private SensorRepository sensorRepository;
+
+    @Autowired
+    private LedRepository ledRepository;
+
+    @BeforeEach
+    void seed() {
+        sensorRepository.saveAll(List.of(
+                reading("node-1", START, 18, 50, 300, 2),
+                reading("node-1", START.plusMinutes(1), 22, 50, 300, 2),
+                reading("node-1", START.plusMinutes(2), 25, 50, 300, 2),
+                reading("node-1", START.plusMinutes(3), 30, 50, 300, 2),
+                reading("node-2", START.plusMinutes(1), 22, 50, 300, 2)));
+        ledRepository.saveAll(List.of(
+                led("fan", "on", START),
+                led("fan", "off", START.plusMinutes(1)),
+                led("lightbulb", "on", START.plusMinutes(2))));
+    }
+
+    @Test
+    void matchesEverythingWithoutParams() {
+        assertThat(sensorRepository.findAll(sensorFilter(Map.of()))).hasSize(5);
+        assertThat(ledRepository.findAll(HistoryFilter.<LedEntity>of(Map.of())
+                .equal("deviceName").equal("active").timestampRange("timestamp").build())).hasSize(3);
+    }
+
+    @Test
+    void combinesPresentFiltersWithInclusiveRanges() {
+        List<SensorEntity> rows = sensorRepository.findAll(sensorFilter(Map.of(
+                "deviceId", "node-1",
+                "temperatureMin", "22",
+                "temperatureMax", "30",
+                "to", "01/03/2024, 10:02:00")), Sort.by("timestamp"));
+
+        assertThat(rows).extracting(SensorEntity::getTemperature).containsExactly(22, 25);
+    }
+
+    @Test
+    void acceptsIsoTimestampsAndExactMatch() {
+        assertThat(sensorRepository.findAll(sensorFilter(Map.of("from", "2024-03-01T10:02:00"))))
+                .extracting(SensorEntity::getTemperature).containsExactlyInAnyOrder(25, 30);
+        assertThat(sensorRepository.findAll(sensorFilter(Map.of("timestamp", "01/03/2024, 10:01:00", "temperature", "22"))))
+                .extracting(SensorEntity::getDeviceId).containsExactlyInAnyOrder("node-1", "node-2");
+        assertThat(ledRepository.findAll(HistoryFilter.<LedEntity>of(Map.of("deviceName", "fan", "active", "on"))
+                .equal("deviceName").equal("active").build()))
+                .extracting(LedEntity::getTimestamp).containsExactly(START);
+    }
+
+    @Test
+    void seeksPastCursorInBothDirections() {
+        List<SensorEntity> all = sensorRepository.findAll(Sort.by("timestamp", "id"));
+        // Hai bản ghi cùng timestamp: thứ tự trong trang được phân định bằng id
+        SensorEntity cursor = all.get(1);
+
+        List<SensorEntity> after = sensorRepository.findAll(
+                HistoryFilter.keyset(cursor.getTimestamp(), cursor.getId(), true), Sort.by("timestamp", "id"));
+        List<SensorEntity> before = sensorRepository.findAll(
+                HistoryFilter.keyset(cursor.getTimestamp(), cursor.getId(), false), Sort.by("timestamp", "id"));
+
+        assertThat(after).extracting(SensorEntity::getId).containsExactlyElementsOf(ids(all.subList(2, 5)));
+        assertThat(before).extracting(SensorEntity::getId).containsExactly(all.get(0).getId());
+    }
+
+    private static Specification<SensorEntity> sensorFilter(Map<String, Object> params) {
+        return HistoryFilter.<SensorEntity>of(params)
+                .equal("deviceId")
+                .intRange("temperature")
+                .timestampRange("timestamp")
+                .build();
+    }
+
+    private static List<Long> ids(List<SensorEntity> rows) {
+        return rows.stream().map(SensorEntity::getId).toList();
+    }
+
+    private static LedEntity led(String deviceName, String active, LocalDateTime timestamp) {
+        LedEntity led = new LedEntity();
+        led.setDeviceName(deviceName);
+        led.setActive(active);
+        led.setTimestamp(timestamp);
+        return led;
+    }
+}
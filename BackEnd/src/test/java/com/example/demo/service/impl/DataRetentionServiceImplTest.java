@@ -0,0 +1,101 @@
+package com.example.demo.service.impl;
+
+import com.example.demo.service.HistoryCacheService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DataRetentionServiceImplTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final DataRetentionServiceImpl service = new DataRetentionServiceImpl();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(service, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(service, "historyCacheService", mock(HistoryCacheService.class));
+        ReflectionTestUtils.setField(service, "partitionsAhead", 1);
+        ReflectionTestUtils.setField(service, "sensorRawMonths", 3);
+        ReflectionTestUtils.setField(service, "ledMonths", 12);
+        ReflectionTestUtils.setField(service, "minuteRollupDays", 30);
+        ReflectionTestUtils.setField(service, "hourRollupMonths", 24);
+    }
+
+    @Test
+    void downsamplesAndDropsOnlyPartitionsPastCutoff() {
+        LocalDate cutoff = LocalDate.now().minusMonths(3).withDayOfMonth(1);
+        String expired = "'" + cutoff.minusMonths(1) + " 00:00:00'";
+        String current = "'" + YearMonth.now().plusMonths(1).atDay(1) + "'";
+        partitions("sensordata", new String[]{"p_history", expired}, new String[]{"pcurrent", current},
+                new String[]{"pmax", "MAXVALUE"});
+        partitions("ledcontrol", new String[]{"p_history", expired}, new String[]{"pmax", "MAXVALUE"});
+        LocalDateTime oldest = cutoff.minusMonths(2).atTime(8, 0);
+        when(jdbcTemplate.queryForObject(startsWith("SELECT MIN(timestamp)"), any(RowMapper.class)))
+                .thenReturn(new LocalDateTime[]{oldest, oldest.plusDays(20)});
+        // Đã có rollup giờ (do ingest duy trì) nhưng chưa có rollup ngày
+        when(jdbcTemplate.queryForObject(anyString(), eq(Integer.class), eq("HOUR"), any(), any())).thenReturn(5);
+        when(jdbcTemplate.queryForObject(anyString(), eq(Integer.class), eq("DAY"), any(), any())).thenReturn(0);
+
+        service.applyRetention();
+
+        ArgumentCaptor<String> ddl = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate, atLeastOnce()).execute(ddl.capture());
+        // ledcontrol giữ 12 tháng nên p_history của nó chưa hết hạn
+        assertThat(ddl.getAllValues()).containsExactly("ALTER TABLE sensordata DROP PARTITION p_history");
+
+        ArgumentCaptor<String> inserts = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate, atLeastOnce()).update(inserts.capture());
+        assertThat(inserts.getAllValues()).hasSize(1);
+        assertThat(inserts.getAllValues().get(0))
+                .startsWith("INSERT INTO sensordata_rollup SELECT 'DAY'")
+                .contains("COUNT(temperature), COALESCE(SUM(temperature), 0), MIN(temperature)")
+                .doesNotContain("COALESCE(temperature, 0)");
+    }
+
+    @Test
+    void skipsPartitionMaintenanceOnUnpartitionedTables() {
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class), eq("sensordata")))
+                .thenReturn(List.of("p_history", "pmax"));
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class), eq("ledcontrol"))).thenReturn(List.of());
+
+        service.createFuturePartitions();
+
+        ArgumentCaptor<String> ddl = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate, atLeastOnce()).execute(ddl.capture());
+        YearMonth month = YearMonth.now();
+        assertThat(ddl.getAllValues()).containsExactly(
+                "ALTER TABLE sensordata REORGANIZE PARTITION pmax INTO (PARTITION " + partition(month)
+                        + " VALUES LESS THAN ('" + month.plusMonths(1).atDay(1) + "'), PARTITION pmax VALUES LESS THAN (MAXVALUE))",
+                "ALTER TABLE sensordata REORGANIZE PARTITION pmax INTO (PARTITION " + partition(month.plusMonths(1))
+                        + " VALUES LESS THAN ('" + month.plusMonths(2).atDay(1) + "'), PARTITION pmax VALUES LESS THAN (MAXVALUE))");
+        verify(jdbcTemplate, never()).execute(startsWith("ALTER TABLE ledcontrol"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void partitions(String table, String[]... partitions) {
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), eq(table))).thenReturn(List.of(partitions));
+    }
+
+    private static String partition(YearMonth month) {
+        return String.format("p%d%02d", month.getYear(), month.getMonthValue());
+    }
+}
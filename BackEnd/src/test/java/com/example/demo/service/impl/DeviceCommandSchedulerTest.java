@@ -0,0 +1,163 @@
+package com.example.demo.service.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+class DeviceCommandSchedulerTest {
+
+    private static final long TIMEOUT_MS = 5000;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final PendingCommandRegistry pendingCommandRegistry = new PendingCommandRegistry();
+    private final MqttClient mqttClient = mock(MqttClient.class);
+    private final List<String> published = new CopyOnWriteArrayList<>();
+    private DeviceCommandScheduler scheduler;
+
+    @AfterEach
+    void stop() {
+        if (scheduler != null) {
+            scheduler.stop();
+        }
+    }
+
+    @Test
+    void coalescesSameActionAndSupersedesOutdatedQueuedCommand() throws Exception {
+        scheduler = create(false, 3, 10_000);
+
+        CompletableFuture<String> first = scheduler.submit("fan", "on", TIMEOUT_MS);
+        CompletableFuture<String> sameAsInFlight = scheduler.submit("fan", "on", TIMEOUT_MS);
+        CompletableFuture<String> queued = scheduler.submit("fan", "off", TIMEOUT_MS);
+        CompletableFuture<String> sameAsQueued = scheduler.submit("fan", "off", TIMEOUT_MS);
+        // Quay lại "on": trạng thái "off" đang chờ đã cũ, lệnh mới dùng chung lệnh đang gửi
+        CompletableFuture<String> latest = scheduler.submit("fan", "on", TIMEOUT_MS);
+
+        assertCancelled(queued);
+        assertCancelled(sameAsQueued);
+        awaitPublished(1);
+        assertThat(pendingCommandRegistry.complete("fan", null, "on")).isNotNull();
+
+        assertThat(first.get(1, TimeUnit.SECONDS)).isEqualTo("on");
+        assertThat(sameAsInFlight.get(1, TimeUnit.SECONDS)).isEqualTo("on");
+        assertThat(latest.get(1, TimeUnit.SECONDS)).isEqualTo("on");
+        assertThat(published).containsExactly("fan:on");
+        assertThat(meterRegistry.get("iot.control.coalesced").counter().count()).isEqualTo(3);
+        assertThat(meterRegistry.get("iot.control.superseded").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void sendsQueuedCommandOnceWindowFrees() throws Exception {
+        scheduler = create(false, 3, 10_000);
+
+        CompletableFuture<String> on = scheduler.submit("fan", "on", TIMEOUT_MS);
+        CompletableFuture<String> off = scheduler.submit("fan", "off", TIMEOUT_MS);
+        awaitPublished(1);
+        assertThat(off).isNotDone();
+
+        pendingCommandRegistry.complete("fan", null, "on");
+        awaitPublished(2);
+        pendingCommandRegistry.complete("fan", null, "off");
+
+        assertThat(on.get(1, TimeUnit.SECONDS)).isEqualTo("on");
+        assertThat(off.get(1, TimeUnit.SECONDS)).isEqualTo("off");
+        assertThat(published).containsExactly("fan:on", "fan:off");
+    }
+
+    @Test
+    void resendsWithSameCorrelationIdUntilMaxAttempts() throws Exception {
+        scheduler = create(true, 3, 20);
+
+        CompletableFuture<String> result = scheduler.submit("fan", "on", TIMEOUT_MS);
+        awaitPublished(3);
+        Thread.sleep(200);
+
+        assertThat(published).hasSize(3).containsOnly(published.get(0));
+        assertThat(published.get(0)).startsWith("fan:on" + PendingCommandRegistry.CORRELATION_SEPARATOR);
+        String correlationId = published.get(0).substring(published.get(0).indexOf(PendingCommandRegistry.CORRELATION_SEPARATOR) + 1);
+        assertThat(pendingCommandRegistry.complete("fan", correlationId, "on")).isNotNull();
+        assertThat(result.get(1, TimeUnit.SECONDS)).isEqualTo("on");
+        assertThat(meterRegistry.get("iot.control.publishes").tag("attempt", "retry").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void givesUpRetryInFavourOfNewerState() throws Exception {
+        scheduler = create(false, 3, 100);
+
+        CompletableFuture<String> on = scheduler.submit("fan", "on", TIMEOUT_MS);
+        CompletableFuture<String> off = scheduler.submit("fan", "off", TIMEOUT_MS);
+
+        assertCancelled(on);
+        awaitPublished(2);
+        assertThat(published).containsExactly("fan:on", "fan:off");
+        pendingCommandRegistry.complete("fan", null, "off");
+        assertThat(off.get(1, TimeUnit.SECONDS)).isEqualTo("off");
+    }
+
+    @Test
+    void failsAfterLastPublishAttemptFails() throws Exception {
+        scheduler = create(false, 2, 20);
+        doThrow(new MqttException(MqttException.REASON_CODE_CLIENT_NOT_CONNECTED))
+                .when(mqttClient).publish(anyString(), any(byte[].class), anyInt(), anyBoolean());
+
+        CompletableFuture<String> result = scheduler.submit("fan", "on", TIMEOUT_MS);
+
+        assertThatThrownBy(() -> result.get(1, TimeUnit.SECONDS)).hasCauseInstanceOf(MqttException.class);
+        // Registry tự gỡ lệnh trong một stage khác của future, có thể chạy sau waiter
+        long deadline = System.currentTimeMillis() + 1000;
+        while (pendingCommandRegistry.size() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(pendingCommandRegistry.size()).isZero();
+    }
+
+    private DeviceCommandScheduler create(boolean correlationIdEnabled, int maxAttempts, long retryBackoffMs) throws MqttException {
+        doAnswer(invocation -> {
+            published.add(invocation.getArgument(0) + ":" + new String((byte[]) invocation.getArgument(1)));
+            return null;
+        }).when(mqttClient).publish(anyString(), any(byte[].class), anyInt(), anyBoolean());
+        DeviceCommandScheduler service = new DeviceCommandScheduler();
+        ReflectionTestUtils.setField(service, "pendingCommandRegistry", pendingCommandRegistry);
+        ReflectionTestUtils.setField(service, "mqttClient", mqttClient);
+        ReflectionTestUtils.setField(service, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(service, "controlTimeoutMs", TIMEOUT_MS);
+        ReflectionTestUtils.setField(service, "correlationIdEnabled", correlationIdEnabled);
+        ReflectionTestUtils.setField(service, "qos", 1);
+        ReflectionTestUtils.setField(service, "maxInFlight", 1);
+        ReflectionTestUtils.setField(service, "maxAttempts", maxAttempts);
+        ReflectionTestUtils.setField(service, "retryBackoffMs", retryBackoffMs);
+        ReflectionTestUtils.setField(service, "publishThreads", 2);
+        service.start();
+        return service;
+    }
+
+    private static void assertCancelled(CompletableFuture<String> future) {
+        assertThatThrownBy(() -> future.get(1, TimeUnit.SECONDS)).isInstanceOf(CancellationException.class);
+    }
+
+    private void awaitPublished(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (published.size() < count) {
+            assertThat(System.currentTimeMillis()).as("commands not published in time").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.demo.service.impl;
+
+import com.example.demo.model.ExportFormat;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ExportServiceImplTest {
+
+    private final JdbcTemplate jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+            "jdbc:h2:mem:export;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1"));
+    private final ExportServiceImpl export = new ExportServiceImpl();
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.execute("CREATE TABLE sensordata (id BIGINT PRIMARY KEY, device_id VARCHAR(64), temperature INT,"
+                + " humidity INT, light INT, wind INT, timestamp DATETIME)");
+        jdbcTemplate.execute("CREATE TABLE ledcontrol (id BIGINT PRIMARY KEY, devicename VARCHAR(255),"
+                + " active VARCHAR(255), timestamp DATETIME)");
+        jdbcTemplate.update("INSERT INTO sensordata VALUES (1, 'node-1', 25, 60, NULL, 2, '2024-03-01 10:00:00')");
+        jdbcTemplate.update("INSERT INTO sensordata VALUES (2, 'node-2', 26, 61, 300, 3, '2024-03-01 10:01:00')");
+        jdbcTemplate.update("INSERT INTO ledcontrol VALUES (1, 'fan', 'on', '2024-03-01 10:00:00')");
+        jdbcTemplate.update("INSERT INTO ledcontrol VALUES (2, ?, ?, '2024-03-01 10:01:00')",
+                "fan, \"big\"", "line\nbreak\\\u0001");
+        ReflectionTestUtils.setField(export, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(export, "fetchSize", 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+    }
+
+    @Test
+    void writesCsvWithEmptyCellsForMissingMetrics() throws IOException {
+        StringWriter out = new StringWriter();
+
+        export.exportSensor(Map.of("deviceId", "node-1"), ExportFormat.CSV, out);
+
+        assertThat(out.toString()).isEqualTo("id,deviceId,temperature,humidity,light,wind,timestamp\n"
+                + "1,node-1,25,60,,2,2024-03-01T10:00:00\n");
+    }
+
+    @Test
+    void quotesCsvCellsContainingSeparatorsQuotesOrLineBreaks() throws IOException {
+        StringWriter out = new StringWriter();
+
+        export.exportLed(Map.of("from", "2024-03-01T10:01:00"), ExportFormat.CSV, out);
+
+        assertThat(out.toString()).isEqualTo("id,deviceName,active,timestamp\n"
+                + "2,\"fan, \"\"big\"\"\",\"line\nbreak\\\u0001\",2024-03-01T10:01:00\n");
+    }
+
+    @Test
+    void escapesJsonStringsAndWritesNullForMissingMetrics() throws IOException {
+        StringWriter out = new StringWriter();
+
+        export.exportLed(Map.of(), ExportFormat.NDJSON, out);
+        export.exportSensor(Map.of("to", "01/03/2024, 10:00:00"), ExportFormat.NDJSON, out);
+
+        assertThat(out.toString()).isEqualTo(
+                "{\"id\":1,\"deviceName\":\"fan\",\"active\":\"on\",\"timestamp\":\"2024-03-01T10:00:00\"}\n"
+                        + "{\"id\":2,\"deviceName\":\"fan, \\\"big\\\"\",\"active\":\"line\\u000abreak\\\\\\u0001\","
+                        + "\"timestamp\":\"2024-03-01T10:01:00\"}\n"
+                        + "{\"id\":1,\"deviceId\":\"node-1\",\"temperature\":25,\"humidity\":60,\"light\":null,"
+                        + "\"wind\":2,\"timestamp\":\"2024-03-01T10:00:00\"}\n");
+    }
+
+    @Test
+    void stopsReadingWhenClientDisconnects() {
+        Writer disconnected = new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        assertThatThrownBy(() -> export.exportSensor(Map.of(), ExportFormat.NDJSON, disconnected))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Broken pipe");
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.demo.service.impl;
+
+import com.example.demo.model.KeysetCursor;
+import com.example.demo.service.HistoryCacheService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HistoryCacheServiceImplTest {
+
+    private static final String SENSOR = HistoryCacheService.SENSOR;
+    private static final LocalDateTime MARCH_10 = LocalDateTime.of(2024, 3, 10, 12, 0);
+
+    private final HistoryCacheServiceImpl cache = new HistoryCacheServiceImpl();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(cache, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(cache, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "maxEntries", 100);
+        ReflectionTestUtils.setField(cache, "ttlMs", 600_000L);
+        ReflectionTestUtils.setField(cache, "replicaUrl", "");
+        cache.start();
+    }
+
+    @Test
+    void invalidatesOnlyEntriesWhoseRangeOverlapsTheWrite() {
+        Map<String, Object> march = params("node-1", "2024-03-01T00:00:00", "2024-03-31T23:59:59");
+        Map<String, Object> april = params("node-1", "2024-04-01T00:00:00", "2024-04-30T23:59:59");
+        Map<String, Object> openEnded = params("node-1", "2024-03-01T00:00:00", null);
+        Map<String, Object> otherDevice = params("node-2", "2024-03-01T00:00:00", "2024-03-31T23:59:59");
+        Map<String, Object> allDevices = params(null, null, null);
+        for (Map<String, Object> query : List.of(march, april, openEnded, otherDevice, allDevices)) {
+            load(query);
+        }
+
+        cache.invalidate(SENSOR, "node-1", MARCH_10, MARCH_10);
+
+        assertReloaded(march, true);
+        assertReloaded(april, false);
+        assertReloaded(openEnded, true);
+        assertReloaded(otherDevice, false);
+        assertReloaded(allDevices, true);
+    }
+
+    @Test
+    void treatsWriteOnRangeBoundaryAsOverlapping() {
+        Map<String, Object> march = params("node-1", "2024-03-01T00:00:00", "2024-03-31T23:59:59");
+        load(march);
+
+        cache.invalidate(SENSOR, "node-1", LocalDateTime.of(2024, 3, 31, 23, 59, 59), LocalDateTime.of(2024, 4, 1, 1, 0));
+        assertReloaded(march, true);
+
+        cache.invalidate(SENSOR, "node-1", LocalDateTime.of(2024, 4, 1, 0, 0), LocalDateTime.of(2024, 4, 1, 1, 0));
+        assertReloaded(march, false);
+    }
+
+    @Test
+    void narrowsCursorPageRangeToRowsAfterTheCursor() {
+        // Trang sau (giảm dần theo thời gian) chỉ chứa các dòng cũ hơn cursor
+        Map<String, Object> nextPage = params("node-1", null, null);
+        nextPage.put("cursor", KeysetCursor.next(MARCH_10, 42L));
+        Map<String, Object> withTotal = new HashMap<>(nextPage);
+        withTotal.put("withTotal", "exact");
+        load(nextPage);
+        load(withTotal);
+
+        LocalDateTime newer = MARCH_10.plusDays(5);
+        cache.invalidate(SENSOR, "node-1", newer, newer);
+        assertReloaded(nextPage, false);
+        // Tổng số dòng đếm trên cả bộ lọc nên vẫn phải xoá
+        assertReloaded(withTotal, true);
+
+        LocalDateTime older = MARCH_10.minusDays(5);
+        cache.invalidate(SENSOR, "node-1", older, older);
+        assertReloaded(nextPage, true);
+    }
+
+    @Test
+    void doesNotCachePageReadDuringConcurrentWrite() {
+        Map<String, Object> query = params("node-1", null, null);
+        cache.get(SENSOR, query, () -> {
+            loads.incrementAndGet();
+            cache.invalidate(SENSOR, "node-1", MARCH_10, MARCH_10);
+            return "stale";
+        });
+
+        assertReloaded(query, true);
+        assertReloaded(query, false);
+    }
+
+    private void load(Map<String, Object> query) {
+        cache.get(SENSOR, query, () -> {
+            loads.incrementAndGet();
+            return "page";
+        });
+    }
+
+    private void assertReloaded(Map<String, Object> query, boolean reloaded) {
+        int before = loads.get();
+        load(query);
+        assertThat(loads.get() - before).as("reloads of %s", query).isEqualTo(reloaded ? 1 : 0);
+    }
+
+    private static Map<String, Object> params(String deviceId, String from, String to) {
+        Map<String, Object> params = new HashMap<>();
+        // Như @RequestParam Map: tham số không gửi thì không có key
+        if (deviceId != null) {
+            params.put("deviceId", deviceId);
+        }
+        if (from != null) {
+            params.put("from", from);
+        }
+        if (to != null) {
+            params.put("to", to);
+        }
+        params.put("page", 0);
+        params.put("size", 10);
+        return params;
+    }
+}
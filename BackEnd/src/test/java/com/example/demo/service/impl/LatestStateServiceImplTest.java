@@ -0,0 +1,75 @@
+package com.example.demo.service.impl;
+
+import com.example.demo.converter.SensorDTOConverter;
+import com.example.demo.repository.LedRepository;
+import com.example.demo.repository.SensorRepository;
+import com.example.demo.repository.entity.LedEntity;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+import static com.example.demo.SensorFixtures.reading;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class LatestStateServiceImplTest {
+
+    private final SensorRepository sensorRepository = mock(SensorRepository.class);
+    private final LedRepository ledRepository = mock(LedRepository.class);
+    private final LatestStateServiceImpl latestState = new LatestStateServiceImpl();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(latestState, "sensorRepository", sensorRepository);
+        ReflectionTestUtils.setField(latestState, "ledRepository", ledRepository);
+        ReflectionTestUtils.setField(latestState, "sensorDTOConverter", new SensorDTOConverter());
+    }
+
+    @Test
+    void warmsUpFromDatabaseAndMarksFailedDevicesUnknown() {
+        LocalDateTime now = LocalDateTime.now();
+        when(sensorRepository.findTopByOrderByTimestampDesc()).thenReturn(reading(now, 30));
+        LedEntity fan = new LedEntity();
+        fan.setDeviceName("fan");
+        fan.setActive("on");
+        when(ledRepository.findTopByDeviceNameOrderByTimestampDesc("fan")).thenReturn(fan);
+        when(ledRepository.findTopByDeviceNameOrderByTimestampDesc("lightbulb"))
+                .thenThrow(new IllegalStateException("Database is down"));
+
+        latestState.warmUp();
+
+        assertThat(latestState.getLatestSensorData().getTemperature()).isEqualTo(30);
+        assertThat(latestState.getDeviceStatuses())
+                .containsEntry("fan", "on")
+                .containsEntry("airConditioner", "unknown")
+                .containsEntry("lightbulb", "unknown")
+                .containsEntry("warning", "unknown");
+    }
+
+    @Test
+    void keepsNewerReadingWhenOlderOneArrivesLate() {
+        LocalDateTime now = LocalDateTime.now();
+        latestState.updateSensorData(reading(now, 30));
+        latestState.updateSensorData(reading(now.minusSeconds(5), 20));
+
+        assertThat(latestState.getLatestSensorData().getTemperature()).isEqualTo(30);
+
+        latestState.updateSensorData(reading(now.plusSeconds(5), 25));
+        assertThat(latestState.getLatestSensorData().getTemperature()).isEqualTo(25);
+    }
+
+    @Test
+    void replacesStatusSnapshotWithoutChangingOneAlreadyReturned() {
+        latestState.warmUp();
+        Map<String, String> before = latestState.getDeviceStatuses();
+
+        latestState.updateDeviceStatus("fan", "on");
+
+        assertThat(before).containsEntry("fan", "unknown");
+        assertThat(latestState.getDeviceStatuses()).containsEntry("fan", "on");
+    }
+}
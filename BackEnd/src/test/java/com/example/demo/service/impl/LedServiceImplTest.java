@@ -0,0 +1,193 @@
+package com.example.demo.service.impl;
+
+import com.example.demo.config.MqttConnectionManager;
+import com.example.demo.model.ControlResultDTO;
+import com.example.demo.model.LedDTO;
+import com.example.demo.repository.LedRepository;
+import com.example.demo.repository.entity.LedEntity;
+import com.example.demo.service.HistoryCacheService;
+import com.example.demo.service.LatestStateService;
+import com.example.demo.service.LiveStreamService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class LedServiceImplTest {
+
+    private static final long TIMEOUT_MS = 5000;
+
+    private final PendingCommandRegistry pendingCommandRegistry = new PendingCommandRegistry();
+    private final MqttClient mqttClient = mock(MqttClient.class);
+    private final LedRepository ledRepository = mock(LedRepository.class);
+    private final LatestStateService latestStateService = mock(LatestStateService.class);
+    private final List<String> published = new CopyOnWriteArrayList<>();
+    private DeviceCommandScheduler scheduler;
+
+    @AfterEach
+    void stop() {
+        if (scheduler != null) {
+            scheduler.stop();
+        }
+    }
+
+    @Test
+    void rejectsUnknownDeviceWithoutPublishing() throws Exception {
+        LedServiceImpl service = create(true);
+
+        ResponseEntity<String> response = service.controlLed("sensors/node-1", "on").get(1, TimeUnit.SECONDS);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(published).isEmpty();
+        assertThat(pendingCommandRegistry.size()).isZero();
+    }
+
+    @Test
+    void completesCommandByEchoedCorrelationId() throws Exception {
+        LedServiceImpl service = create(true);
+
+        CompletableFuture<ResponseEntity<String>> response = service.controlLed("fan", "on");
+        awaitPublished(1);
+        String payload = published.get(0).substring("fan:".length());
+        assertThat(payload).startsWith("on" + PendingCommandRegistry.CORRELATION_SEPARATOR);
+
+        // Xác nhận mang correlation ID lạ (ví dụ của lệnh đã hết hạn) không hoàn thành lệnh đang chờ
+        confirm(service, "fan", "on|deadbeef");
+        assertThat(response).isNotDone();
+
+        confirm(service, "fan", payload);
+        assertThat(response.get(1, TimeUnit.SECONDS).getStatusCode()).isEqualTo(HttpStatus.OK);
+    }
+
+    @Test
+    void matchesOldestPendingCommandForLegacyFirmware() {
+        pendingCommandRegistry.register("fan", "on", TIMEOUT_MS);
+        PendingCommandRegistry.PendingCommand second = pendingCommandRegistry.register("fan", "off", TIMEOUT_MS);
+        PendingCommandRegistry.PendingCommand light = pendingCommandRegistry.register("lightbulb", "on", TIMEOUT_MS);
+
+        PendingCommandRegistry.PendingCommand matched = pendingCommandRegistry.complete("fan", null, "on");
+
+        assertThat(matched.getAction()).isEqualTo("on");
+        assertThat(second.getFuture()).isNotDone();
+        assertThat(light.getFuture()).isNotDone();
+        // Correlation ID của thiết bị khác không được khớp chéo
+        assertThat(pendingCommandRegistry.complete("fan", light.getCorrelationId(), "on")).isNull();
+        assertThat(pendingCommandRegistry.complete("fan", second.getCorrelationId(), "off")).isSameAs(second);
+    }
+
+    @Test
+    void ignoresRepeatedConfirmationThatDoesNotChangeState() throws Exception {
+        LedServiceImpl service = create(false);
+        when(latestStateService.getDeviceStatuses()).thenReturn(Map.of("fan", "off"));
+
+        CompletableFuture<ResponseEntity<String>> response = service.controlLed("fan", "on");
+        awaitPublished(1);
+        confirm(service, "fan", "on");
+        assertThat(response.get(1, TimeUnit.SECONDS).getStatusCode()).isEqualTo(HttpStatus.OK);
+
+        when(latestStateService.getDeviceStatuses()).thenReturn(Map.of("fan", "on"));
+        confirm(service, "fan", "on");
+
+        verify(ledRepository, times(1)).save(any(LedEntity.class));
+        verify(latestStateService, never()).updateDeviceStatus("fan", "off");
+    }
+
+    @Test
+    void sendsBatchAtOnceAndWaitsForOneSharedDeadline() throws Exception {
+        LedServiceImpl service = create(false);
+        ReflectionTestUtils.setField(service, "controlTimeoutMs", 1000L);
+
+        long start = System.currentTimeMillis();
+        CompletableFuture<List<ControlResultDTO>> results = service.controlLeds(List.of(
+                command("lightbulb", "on"), command("fan", "on"), command("airConditioner", "off")));
+        // Lệnh sau không phải chờ lệnh trước được xác nhận hay hết timeout mới được gửi
+        awaitPublished(3);
+        assertThat(System.currentTimeMillis() - start).isLessThan(500);
+        confirm(service, "fan", "on");
+        confirm(service, "airConditioner", "off");
+
+        List<ControlResultDTO> done = results.get(5, TimeUnit.SECONDS);
+        assertThat(done).extracting(ControlResultDTO::getDeviceName)
+                .containsExactly("lightbulb", "fan", "airConditioner");
+        assertThat(done).extracting(ControlResultDTO::getStatus).containsExactly(408, 200, 200);
+        assertThat(done).extracting(ControlResultDTO::isSuccess).containsExactly(false, true, true);
+        // Lệnh không được xác nhận hết hạn theo deadline chung của cả lô
+        assertThat(System.currentTimeMillis() - start).isLessThan(2000);
+    }
+
+    private LedServiceImpl create(boolean correlationIdEnabled) throws MqttException {
+        doAnswer(invocation -> {
+            published.add(invocation.getArgument(0) + ":" + new String((byte[]) invocation.getArgument(1)));
+            return null;
+        }).when(mqttClient).publish(anyString(), any(byte[].class), anyInt(), anyBoolean());
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        scheduler = new DeviceCommandScheduler();
+        ReflectionTestUtils.setField(scheduler, "pendingCommandRegistry", pendingCommandRegistry);
+        ReflectionTestUtils.setField(scheduler, "mqttClient", mqttClient);
+        ReflectionTestUtils.setField(scheduler, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(scheduler, "controlTimeoutMs", TIMEOUT_MS);
+        ReflectionTestUtils.setField(scheduler, "correlationIdEnabled", correlationIdEnabled);
+        ReflectionTestUtils.setField(scheduler, "qos", 1);
+        ReflectionTestUtils.setField(scheduler, "maxInFlight", 1);
+        ReflectionTestUtils.setField(scheduler, "maxAttempts", 1);
+        ReflectionTestUtils.setField(scheduler, "retryBackoffMs", TIMEOUT_MS);
+        ReflectionTestUtils.setField(scheduler, "publishThreads", 1);
+        scheduler.start();
+
+        LedServiceImpl service = new LedServiceImpl();
+        ReflectionTestUtils.setField(service, "ledRepository", ledRepository);
+        ReflectionTestUtils.setField(service, "mqttConnectionManager", mock(MqttConnectionManager.class));
+        ReflectionTestUtils.setField(service, "latestStateService", latestStateService);
+        ReflectionTestUtils.setField(service, "liveStreamService", mock(LiveStreamService.class));
+        ReflectionTestUtils.setField(service, "historyCacheService", mock(HistoryCacheService.class));
+        ReflectionTestUtils.setField(service, "pendingCommandRegistry", pendingCommandRegistry);
+        ReflectionTestUtils.setField(service, "deviceCommandScheduler", scheduler);
+        ReflectionTestUtils.setField(service, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(service, "controlTimeoutMs", TIMEOUT_MS);
+        when(latestStateService.getDeviceStatuses()).thenReturn(Map.of());
+        return service;
+    }
+
+    private static LedDTO command(String deviceName, String active) {
+        LedDTO command = new LedDTO();
+        command.setDeviceName(deviceName);
+        command.setActive(active);
+        return command;
+    }
+
+    private static void confirm(LedServiceImpl service, String deviceName, String payload) {
+        ReflectionTestUtils.invokeMethod(service, "handleConfirmation", deviceName + "/confirmation",
+                new MqttMessage(payload.getBytes()));
+    }
+
+    private void awaitPublished(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (published.size() < count) {
+            assertThat(System.currentTimeMillis()).as("commands not published in time").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
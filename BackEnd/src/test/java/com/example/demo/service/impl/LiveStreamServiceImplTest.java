@@ -0,0 +1,167 @@
+package com.example.demo.service.impl;
+
+import com.example.demo.model.SensorDTO;
+import com.example.demo.service.LatestStateService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class LiveStreamServiceImplTest {
+
+    private final LatestStateService latestStateService = mock(LatestStateService.class);
+    private final CountDownLatch unblock = new CountDownLatch(1);
+    private LiveStreamServiceImpl stream;
+
+    @AfterEach
+    void stop() {
+        unblock.countDown();
+        if (stream != null) {
+            stream.stop();
+        }
+    }
+
+    @Test
+    void sendsSnapshotThenPublishedEvents() throws Exception {
+        SensorDTO latest = sensor(25);
+        when(latestStateService.getLatestSensorData()).thenReturn(latest);
+        when(latestStateService.getDeviceStatuses()).thenReturn(Map.of("fan", "on"));
+        stream = create(64, 1, 60000);
+        Client client = connect(false);
+
+        stream.publishSensorData(sensor(30));
+        stream.publishDeviceStatus("fan", "off");
+
+        await(() -> client.events().size() == 4);
+        assertThat(client.events().get(0)).contains("event:sensor", "\"temperature\":25");
+        assertThat(client.events().get(1)).contains("event:device", "\"deviceName\":\"fan\"", "\"active\":\"on\"");
+        assertThat(client.events().get(2)).contains("event:sensor", "\"temperature\":30");
+        assertThat(client.events().get(3)).contains("event:device", "\"active\":\"off\"");
+    }
+
+    @Test
+    void dropsSubscriberWhoseBufferFills() throws Exception {
+        when(latestStateService.getDeviceStatuses()).thenReturn(Map.of());
+        stream = create(2, 2, 60000);
+        Client stalled = connect(true);
+        Client healthy = connect(false);
+
+        // Client đọc kịp không bị ảnh hưởng dù buffer cũng chỉ có 2 chỗ
+        for (int i = 0; i < 5; i++) {
+            stream.publishSensorData(sensor(i));
+            int sent = i + 1;
+            await(() -> healthy.events().size() == sent);
+        }
+
+        assertThat(stream.getSubscriberCount()).isEqualTo(1);
+        unblock.countDown();
+        await(() -> stalled.completed);
+    }
+
+    @Test
+    void dropsSubscriberWhoseSendStallsWithoutBlockingOthers() throws Exception {
+        when(latestStateService.getDeviceStatuses()).thenReturn(Map.of());
+        stream = create(64, 1, 200);
+        Client stalled = connect(true);
+        stream.publishSensorData(sensor(1));
+        await(() -> stalled.events().size() == 1);
+
+        // Luồng dispatch duy nhất đang kẹt trong lần send của client trên
+        Client healthy = connect(false);
+        stream.publishSensorData(sensor(2));
+
+        await(() -> healthy.events().size() == 1 && stream.getSubscriberCount() == 1);
+        unblock.countDown();
+        await(() -> stalled.completed);
+    }
+
+    private LiveStreamServiceImpl create(int bufferSize, int dispatchThreads, long sendTimeoutMs) {
+        LiveStreamServiceImpl service = new LiveStreamServiceImpl();
+        ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        ReflectionTestUtils.setField(service, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(service, "latestStateService", latestStateService);
+        ReflectionTestUtils.setField(service, "bufferSize", bufferSize);
+        ReflectionTestUtils.setField(service, "dispatchThreads", dispatchThreads);
+        ReflectionTestUtils.setField(service, "emitterTimeoutMs", 60000L);
+        ReflectionTestUtils.setField(service, "heartbeatIntervalMs", 60000L);
+        ReflectionTestUtils.setField(service, "sendTimeoutMs", sendTimeoutMs);
+        service.start();
+        return service;
+    }
+
+    /**
+     * Gắn emitter vào một handler giả thay cho response của servlet container.
+     * Handler của client stalled ghi nhận event rồi treo tới cuối test như socket không được đọc.
+     */
+    @SuppressWarnings("unchecked")
+    private Client connect(boolean stalled) throws Exception {
+        SseEmitter emitter = stream.subscribe();
+        Client client = new Client();
+        Class<?> handlerType = Class.forName(ResponseBodyEmitter.class.getName() + "$Handler");
+        Object handler = Proxy.newProxyInstance(handlerType.getClassLoader(), new Class<?>[]{handlerType},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "send":
+                            // Các event gửi trước khi handler được gắn tới trong cùng một lần send
+                            for (ResponseBodyEmitter.DataWithMediaType part : (Set<ResponseBodyEmitter.DataWithMediaType>) args[0]) {
+                                client.received.add(String.valueOf(part.getData()));
+                            }
+                            if (stalled) {
+                                unblock.await();
+                            }
+                            break;
+                        case "complete":
+                        case "completeWithError":
+                            client.completed = true;
+                            break;
+                        default:
+                            break;
+                    }
+                    return null;
+                });
+        ReflectionTestUtils.invokeMethod(emitter, "initialize", handler);
+        return client;
+    }
+
+    private static SensorDTO sensor(int temperature) {
+        SensorDTO sensor = new SensorDTO();
+        sensor.setTemperature(temperature);
+        return sensor;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("condition not met in time").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static final class Client {
+        private final List<String> received = new CopyOnWriteArrayList<>();
+        private volatile boolean completed;
+
+        // Mỗi event SSE kết thúc bằng một dòng trống, không phụ thuộc cách các lần send được gộp
+        private List<String> events() {
+            String text = String.join("", received);
+            return text.isEmpty() ? List.of() : List.of(text.split("\n\n"));
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.demo.service.impl;
+
+import com.example.demo.exception.InvalidRequestException;
+import com.example.demo.model.RuleDTO;
+import com.example.demo.service.LedService;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.example.demo.SensorFixtures.reading;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RuleEngineServiceImplTest {
+
+    @TempDir
+    Path directory;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<String> commands = new CopyOnWriteArrayList<>();
+    private RuleEngineServiceImpl engine;
+
+    @AfterEach
+    void stop() throws InterruptedException {
+        if (engine != null) {
+            engine.stop();
+        }
+    }
+
+    @Test
+    void firesOnceAndClearsOnlyPastHysteresis() throws Exception {
+        engine = create("classpath:rules.json");
+        engine.setRules(List.of(fanRule("hot", 0)));
+
+        for (int temperature : new int[]{29, 31, 35, 30, 29, 28, 31}) {
+            engine.evaluate(reading("node-1", temperature));
+        }
+
+        awaitCommands(3);
+        assertThat(commands).containsExactly("fan:on", "fan:off", "fan:on");
+    }
+
+    @Test
+    void keepsStateDuringCooldownAndRetriesOnNextReading() throws Exception {
+        engine = create("classpath:rules.json");
+        engine.setRules(List.of(fanRule("hot", 300)));
+
+        engine.evaluate(reading("node-1", 31));
+        engine.evaluate(reading("node-1", 20));
+        assertThat(fired()).isEqualTo(1);
+
+        Thread.sleep(350);
+        engine.evaluate(reading("node-1", 20));
+        awaitCommands(2);
+        assertThat(commands).containsExactly("fan:on", "fan:off");
+    }
+
+    @Test
+    void tracksStatePerNode() throws Exception {
+        engine = create("classpath:rules.json");
+        engine.setRules(List.of(fanRule("hot", 0)));
+
+        engine.evaluate(reading("node-1", 31));
+        engine.evaluate(reading("node-2", 31));
+        engine.evaluate(reading("node-1", 32));
+        engine.evaluate(reading("node-2", 20));
+
+        awaitCommands(3);
+        assertThat(commands).containsExactly("fan:on", "fan:on", "fan:off");
+    }
+
+    @Test
+    void keepsActivationOfUnchangedRulesAcrossReplace() throws Exception {
+        engine = create("classpath:rules.json");
+        engine.setRules(List.of(fanRule("hot", 0)));
+        engine.evaluate(reading("node-1", 31));
+
+        RuleDTO light = new RuleDTO().setId("dark").setMetric("light").setOperator("<").setThreshold(100)
+                .setTargetDevice("lightbulb").setAction("on").setClearAction("off");
+        engine.setRules(List.of(fanRule("hot", 0).setThreshold(33).setHysteresis(3), light));
+
+        // "hot" vẫn đang kích hoạt: không bật lại, nhả theo ngưỡng mới (33 - 3)
+        engine.evaluate(reading("node-1", 34));
+        engine.evaluate(reading("node-1", 30));
+        awaitCommands(2);
+        assertThat(commands).containsExactly("fan:on", "fan:off");
+    }
+
+    @Test
+    void rejectsRuleForUnknownTargetDeviceAndKeepsCurrentRules() {
+        engine = create("classpath:rules.json");
+        engine.setRules(List.of(fanRule("hot", 0)));
+
+        assertThatThrownBy(() -> engine.setRules(List.of(fanRule("hot", 0).setTargetDevice("sensors/node-1"))))
+                .isInstanceOf(InvalidRequestException.class)
+                .hasMessageContaining("sensors/node-1");
+        assertThat(engine.getRules()).extracting(RuleDTO::getTargetDevice).containsExactly("fan");
+    }
+
+    @Test
+    void doesNotLoseStateWhenRulesAreReplacedDuringEvaluation() throws Exception {
+        engine = create("classpath:rules.json");
+        engine.setRules(List.of(fanRule("hot", 0)));
+
+        Thread readings = new Thread(() -> {
+            for (int i = 0; i < 20_000; i++) {
+                engine.evaluate(reading("node-1", i % 2 == 0 ? 31 : 20));
+            }
+        });
+        readings.start();
+        while (readings.isAlive()) {
+            engine.setRules(List.of(fanRule("hot", 0)));
+        }
+        readings.join();
+
+        // Trạng thái bị mất khi thay luật sẽ gửi lại "on" hai lần liên tiếp (hoặc "off")
+        awaitCommands(20_000);
+        for (int i = 0; i < commands.size(); i++) {
+            assertThat(commands.get(i)).as("command " + i).isEqualTo(i % 2 == 0 ? "fan:on" : "fan:off");
+        }
+    }
+
+    @Test
+    void savesReplacedRulesToFileLocation() throws Exception {
+        Path file = directory.resolve("rules.json");
+        Files.writeString(file, "[]");
+        engine = create(file.toUri().toString());
+
+        engine.setRules(List.of(fanRule("hot", 0)));
+
+        List<RuleDTO> saved = new ObjectMapper().readValue(file.toFile(), new TypeReference<List<RuleDTO>>() {
+        });
+        assertThat(saved).extracting(RuleDTO::getId).containsExactly("hot");
+        assertThat(directory.resolve("rules.json.tmp")).doesNotExist();
+    }
+
+    private RuleEngineServiceImpl create(String rulesLocation) {
+        LedService ledService = mock(LedService.class);
+        when(ledService.controlLed(anyString(), anyString())).thenAnswer(invocation -> {
+            commands.add(invocation.getArgument(0) + ":" + invocation.getArgument(1));
+            return CompletableFuture.completedFuture(ResponseEntity.ok("ok"));
+        });
+        RuleEngineServiceImpl service = new RuleEngineServiceImpl();
+        ReflectionTestUtils.setField(service, "ledService", ledService);
+        ReflectionTestUtils.setField(service, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(service, "resourceLoader", new DefaultResourceLoader());
+        ReflectionTestUtils.setField(service, "rulesLocation", rulesLocation);
+        return service;
+    }
+
+    private static RuleDTO fanRule(String id, long cooldownMs) {
+        return new RuleDTO().setId(id).setMetric("temperature").setOperator(">").setThreshold(30).setHysteresis(2)
+                .setTargetDevice("fan").setAction("on").setClearAction("off").setCooldownMs(cooldownMs);
+    }
+
+    private double fired() {
+        return meterRegistry.find("iot.rules.fired").counters().stream().mapToDouble(counter -> counter.count()).sum();
+    }
+
+    private void awaitCommands(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (commands.size() < count) {
+            assertThat(System.currentTimeMillis()).as("commands not sent in time").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+        // Lệnh thừa (nếu có) cũng đã được gửi trên cùng luồng rule-action
+        Thread.sleep(50);
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.demo.service.impl;
+
+import com.example.demo.SensorFixtures;
+import com.example.demo.repository.entity.SensorEntity;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.ToIntFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SensorCompressorTest {
+
+    private static final double[] DEADBAND = {0, 1, 5, 0};
+    private static final double[] TOLERANCE = {1, 2, 20, 1};
+    private static final long HEARTBEAT_MS = 600_000;
+    private static final LocalDateTime START = LocalDateTime.of(2024, 3, 1, 0, 0);
+
+    private final List<SensorEntity> stored = new ArrayList<>();
+
+    @Test
+    void reconstructsSyntheticTraceWithinDeadbandPlusTolerance() {
+        List<SensorEntity> trace = trace(7200, 42);
+        SensorCompressor compressor = new SensorCompressor(DEADBAND, TOLERANCE, HEARTBEAT_MS);
+        for (SensorEntity reading : trace) {
+            assertThat(compressor.offer(reading, stored::add)).isTrue();
+        }
+        compressor.flush(stored::add);
+
+        assertThat(stored.size()).isLessThan(trace.size() / 2);
+        assertThat(stored).extracting(SensorCompressorTest::millis).isSorted().doesNotHaveDuplicates();
+        assertThat(stored.get(0)).isSameAs(trace.get(0));
+        assertThat(stored.get(stored.size() - 1)).isSameAs(trace.get(trace.size() - 1));
+
+        assertWithinBound(trace, 0, SensorEntity::getTemperature);
+        assertWithinBound(trace, 1, SensorEntity::getHumidity);
+        assertWithinBound(trace, 2, SensorEntity::getLight);
+        assertWithinBound(trace, 3, SensorEntity::getWind);
+    }
+
+    @Test
+    void storesAtLeastOncePerHeartbeatOnFlatSignal() {
+        SensorCompressor compressor = new SensorCompressor(DEADBAND, TOLERANCE, HEARTBEAT_MS);
+        for (int second = 0; second < 3600; second++) {
+            compressor.offer(reading(second, 25, 60, 300, 2), stored::add);
+        }
+
+        for (int i = 1; i < stored.size(); i++) {
+            assertThat(millis(stored.get(i)) - millis(stored.get(i - 1))).isLessThanOrEqualTo(HEARTBEAT_MS);
+        }
+        assertThat(3_599_000 - millis(stored.get(stored.size() - 1))).isLessThan(HEARTBEAT_MS);
+    }
+
+    @Test
+    void storesOutOfOrderAndIncompleteReadingsAsIs() {
+        SensorCompressor compressor = new SensorCompressor(DEADBAND, TOLERANCE, HEARTBEAT_MS);
+        for (int second = 0; second < 10; second++) {
+            compressor.offer(reading(second, 25, 60, 300, 2), stored::add);
+        }
+        SensorEntity late = reading(5, 30, 60, 300, 2);
+        compressor.offer(late, stored::add);
+        SensorEntity incomplete = reading(20, 25, 60, 300, 2);
+        incomplete.setLight(null);
+        compressor.offer(incomplete, stored::add);
+
+        assertThat(stored).contains(late, incomplete);
+        // Điểm đang giữ trước bản ghi sai thứ tự được lưu trước nó
+        assertThat(stored.indexOf(late)).isPositive();
+        assertThat(millis(stored.get(stored.indexOf(late) - 1))).isEqualTo(9_000);
+    }
+
+    private void assertWithinBound(List<SensorEntity> trace, int metric, ToIntFunction<SensorEntity> value) {
+        double bound = DEADBAND[metric] + TOLERANCE[metric] + 1e-9;
+        int next = 1;
+        for (SensorEntity reading : trace) {
+            long time = millis(reading);
+            while (millis(stored.get(next)) < time) {
+                next++;
+            }
+            SensorEntity left = stored.get(next - 1);
+            SensorEntity right = stored.get(next);
+            double fraction = millis(right) == millis(left) ? 0
+                    : (double) (time - millis(left)) / (millis(right) - millis(left));
+            double reconstructed = value.applyAsInt(left) + fraction * (value.applyAsInt(right) - value.applyAsInt(left));
+            assertThat(Math.abs(value.applyAsInt(reading) - reconstructed))
+                    .as("%s at %d ms", SensorCompressor.METRICS[metric], time)
+                    .isLessThanOrEqualTo(bound);
+        }
+    }
+
+    /**
+     * Mỗi giây một bản ghi: dao động chậm theo hình sin, cộng nhiễu nhỏ và vài bước nhảy đột ngột.
+     */
+    private static List<SensorEntity> trace(int seconds, long seed) {
+        Random random = new Random(seed);
+        List<SensorEntity> trace = new ArrayList<>(seconds);
+        for (int second = 0; second < seconds; second++) {
+            double phase = second / 600.0;
+            int step = second % 1800 < 900 ? 0 : 3;
+            trace.add(reading(second,
+                    (int) Math.round(25 + 3 * Math.sin(phase) + step + random.nextGaussian() * 0.4),
+                    (int) Math.round(60 + 10 * Math.cos(phase / 2) + random.nextGaussian()),
+                    (int) Math.round(Math.max(0, 400 * Math.sin(phase / 4)) + random.nextGaussian() * 5),
+                    (int) Math.round(3 + Math.abs(random.nextGaussian()))));
+        }
+        return trace;
+    }
+
+    private static SensorEntity reading(int second, int temperature, int humidity, int light, int wind) {
+        return SensorFixtures.reading("node-1", START.plusSeconds(second), temperature, humidity, light, wind);
+    }
+
+    private static long millis(SensorEntity reading) {
+        return reading.getTimestamp().toInstant(ZoneOffset.UTC).toEpochMilli()
+                - START.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+}
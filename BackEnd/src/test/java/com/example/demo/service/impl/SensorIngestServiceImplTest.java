@@ -0,0 +1,237 @@
+package com.example.demo.service.impl;
+
+import com.example.demo.repository.entity.SensorEntity;
+import com.example.demo.service.SensorService;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static com.example.demo.SensorFixtures.reading;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class SensorIngestServiceImplTest {
+
+    @TempDir
+    Path walDirectory;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<SensorEntity> saved = new CopyOnWriteArrayList<>();
+    private SensorIngestServiceImpl ingest;
+    private volatile boolean databaseDown;
+
+    @AfterEach
+    void stop() throws InterruptedException {
+        if (ingest != null) {
+            ingest.stop();
+        }
+    }
+
+    @Test
+    void recordsBatchSizeCommitLatencyAndQueueDepth() throws Exception {
+        ingest = create(false, 1);
+        for (int i = 0; i < 25; i++) {
+            ingest.submit(reading("node-1", i));
+        }
+
+        // Độ trễ commit được ghi sau khi batch đã lưu xong
+        await(() -> meterRegistry.get("iot.ingest.commit.latency").timer().count() == 25);
+        DistributionSummary batchSizes = meterRegistry.get("iot.ingest.batch.size").summary();
+        assertThat(batchSizes.totalAmount()).isEqualTo(25);
+        assertThat(batchSizes.max()).isLessThanOrEqualTo(10);
+        assertThat(meterRegistry.get("iot.ingest.queue.depth").gauge().value()).isZero();
+        assertThat(meterRegistry.get("iot.ingest.dropped").functionCounter().count()).isZero();
+    }
+
+    @Test
+    void keepsReadingOrderPerDeviceAcrossShards() throws Exception {
+        ingest = create(false, 4);
+        for (int i = 0; i < 200; i++) {
+            ingest.submit(reading("node-" + i % 8, i));
+        }
+
+        await(() -> saved.size() == 200);
+        for (int device = 0; device < 8; device++) {
+            String deviceId = "node-" + device;
+            assertThat(saved.stream().filter(reading -> reading.getDeviceId().equals(deviceId)).toList())
+                    .extracting(SensorEntity::getTemperature)
+                    .hasSize(25)
+                    .isSortedAccordingTo(Comparator.naturalOrder());
+        }
+    }
+
+    @Test
+    void skipsReadingRejectedByDatabaseAndKeepsTheRestOfTheBatch() throws Exception {
+        ingest = create(false, 1);
+        for (int i = 0; i < 7; i++) {
+            ingest.submit(reading(i == 3 ? "too-long" : "node-" + i));
+        }
+
+        await(() -> saved.size() == 6);
+        assertThat(saved).extracting(SensorEntity::getDeviceId).doesNotContain("too-long");
+        assertThat(meterRegistry.counter("iot.ingest.rejected").count()).isEqualTo(1);
+    }
+
+    @Test
+    void checkpointsLogPastRejectedReading() throws Exception {
+        ingest = create(true, 1);
+        ingest.submit(reading("node-1"));
+        ingest.submit(reading("too-long"));
+        ingest.submit(reading("node-2"));
+
+        await(() -> saved.size() == 2 && ingest.getQueueSize() == 0);
+        ingest.stop();
+
+        // Khởi động lại trên cùng thư mục WAL: không còn gì để ghi lại
+        saved.clear();
+        ingest = create(true, 1);
+        Thread.sleep(300);
+        assertThat(saved).isEmpty();
+        assertThat(ingest.getQueueSize()).isZero();
+    }
+
+    @Test
+    void rejectsReadingThatDoesNotFitTheLogWithoutThrowing() throws Exception {
+        ingest = create(true, 1);
+
+        assertThat(ingest.submit(reading("x".repeat(300)))).isFalse();
+        assertThat(ingest.submit(reading("node-1"))).isTrue();
+        await(() -> saved.size() == 1);
+    }
+
+    @Test
+    void redistributesPendingLogWhenShardCountChanges() throws Exception {
+        databaseDown = true;
+        ingest = create(true, 4);
+        for (int i = 0; i < 40; i++) {
+            ingest.submit(reading("node-" + i % 8, i));
+        }
+        ingest.stop();
+
+        databaseDown = false;
+        ingest = create(true, 3);
+        await(() -> saved.size() == 40);
+        assertThat(walDirectory.resolve("resharding")).doesNotExist();
+        for (int device = 0; device < 8; device++) {
+            String deviceId = "node-" + device;
+            assertThat(saved.stream().filter(reading -> reading.getDeviceId().equals(deviceId)).toList())
+                    .extracting(SensorEntity::getTemperature)
+                    .isSortedAccordingTo(Comparator.naturalOrder());
+        }
+        ingest.stop();
+
+        // Log mới đã trống, khởi động lại với cùng số shard không ghi lại gì
+        saved.clear();
+        ingest = create(true, 3);
+        Thread.sleep(300);
+        assertThat(saved).isEmpty();
+    }
+
+    @Test
+    void dropNewestKeepsQueuedReadingsWhenBufferIsFull() throws Exception {
+        ingest = stalledWriter(SensorIngestServiceImpl.OverflowPolicy.DROP_NEWEST);
+        for (int i = 1; i <= 150; i++) {
+            ingest.submit(reading("node-1", i));
+        }
+        assertThat(ingest.getQueueSize()).isEqualTo(100);
+        assertThat(meterRegistry.get("iot.ingest.dropped").functionCounter().count()).isEqualTo(50);
+
+        databaseDown = false;
+        await(() -> saved.size() == 101);
+        assertThat(saved).extracting(SensorEntity::getTemperature).doesNotContain(101, 150);
+    }
+
+    @Test
+    void dropOldestEvictsQueuedReadingsToMakeRoom() throws Exception {
+        ingest = stalledWriter(SensorIngestServiceImpl.OverflowPolicy.DROP_OLDEST);
+        for (int i = 1; i <= 150; i++) {
+            ingest.submit(reading("node-1", i));
+        }
+        assertThat(ingest.getQueueSize()).isEqualTo(100);
+        assertThat(meterRegistry.get("iot.ingest.dropped").functionCounter().count()).isEqualTo(50);
+
+        databaseDown = false;
+        await(() -> saved.size() == 101);
+        assertThat(saved).extracting(SensorEntity::getTemperature).contains(51, 150).doesNotContain(1, 50);
+    }
+
+    @Test
+    void blockWaitsForRoomThenDropsAfterTimeout() throws Exception {
+        ingest = stalledWriter(SensorIngestServiceImpl.OverflowPolicy.BLOCK);
+        for (int i = 1; i <= 100; i++) {
+            assertThat(ingest.submit(reading("node-1", i))).isTrue();
+        }
+
+        long start = System.nanoTime();
+        assertThat(ingest.submit(reading("node-1", 101))).isFalse();
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(90_000_000L);
+        assertThat(meterRegistry.get("iot.ingest.dropped").functionCounter().count()).isEqualTo(1);
+    }
+
+    // Writer giữ bản ghi 0 và thử lại mãi vì DB lỗi, hàng đợi (100) chỉ còn chỗ cho bản ghi mới
+    private SensorIngestServiceImpl stalledWriter(SensorIngestServiceImpl.OverflowPolicy policy) throws Exception {
+        databaseDown = true;
+        SensorIngestServiceImpl service = create(false, 1, policy);
+        service.submit(reading("node-1", 0));
+        await(() -> meterRegistry.counter("iot.ingest.flush.failures").count() > 0);
+        return service;
+    }
+
+    private SensorIngestServiceImpl create(boolean walEnabled, int shardCount) throws Exception {
+        return create(walEnabled, shardCount, SensorIngestServiceImpl.OverflowPolicy.BLOCK);
+    }
+
+    private SensorIngestServiceImpl create(boolean walEnabled, int shardCount,
+                                           SensorIngestServiceImpl.OverflowPolicy overflowPolicy) throws Exception {
+        // Như DB thật: cả batch rollback khi có một bản ghi vi phạm ràng buộc
+        SensorService sensorService = mock(SensorService.class);
+        doAnswer(invocation -> {
+            List<SensorEntity> batch = invocation.getArgument(0);
+            if (databaseDown) {
+                throw new QueryTimeoutException("Database is down");
+            }
+            if (batch.stream().anyMatch(reading -> "too-long".equals(reading.getDeviceId()))) {
+                throw new DataIntegrityViolationException("Data too long for column 'device_id'");
+            }
+            saved.addAll(batch);
+            return null;
+        }).when(sensorService).saveSensorData(anyList());
+        SensorIngestServiceImpl service = new SensorIngestServiceImpl();
+        ReflectionTestUtils.setField(service, "sensorService", sensorService);
+        ReflectionTestUtils.setField(service, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(service, "shardCount", shardCount);
+        ReflectionTestUtils.setField(service, "queueCapacity", 100);
+        ReflectionTestUtils.setField(service, "batchSize", 10);
+        ReflectionTestUtils.setField(service, "flushIntervalMs", 50L);
+        ReflectionTestUtils.setField(service, "overflowPolicy", overflowPolicy);
+        ReflectionTestUtils.setField(service, "blockTimeoutMs", 100L);
+        ReflectionTestUtils.setField(service, "retryMaxBackoffMs", 1000L);
+        ReflectionTestUtils.setField(service, "walEnabled", walEnabled);
+        ReflectionTestUtils.setField(service, "walDirectory", walDirectory.toString());
+        ReflectionTestUtils.setField(service, "walSegmentSizeMb", 1);
+        ReflectionTestUtils.setField(service, "walMaxSegments", 4);
+        service.start();
+        return service;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("condition not met in time").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.demo.service.impl;
+
+import com.example.demo.converter.SensorAggregateDTOConverter;
+import com.example.demo.model.RollupBucket;
+import com.example.demo.model.SensorAggregateDTO;
+import com.example.demo.repository.entity.SensorRollupEntity;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.example.demo.SensorFixtures.reading;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class SensorRollupServiceImplTest {
+
+    private static final LocalDateTime MINUTE = LocalDateTime.of(2024, 3, 1, 10, 15);
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+
+    @Test
+    void skipsNullMetricsInsteadOfCountingThemAsZero() {
+        SensorRollupServiceImpl service = new SensorRollupServiceImpl();
+        ReflectionTestUtils.setField(service, "jdbcTemplate", jdbcTemplate);
+
+        service.accumulate(List.of(
+                reading("node-1", MINUTE.plusSeconds(1), 20, 60, null, null),
+                reading("node-1", MINUTE.plusSeconds(2), null, 40, null, null),
+                reading("node-1", MINUTE.plusSeconds(3), 30, null, null, null)));
+
+        Object[] minute = rows().stream().filter(row -> "MINUTE".equals(row[0])).findFirst().orElseThrow();
+        // sample_count, rồi (count, sum, min, max) cho temperature, humidity, light, wind
+        assertThat(Arrays.copyOfRange(minute, 2, 19)).containsExactly(3L,
+                2L, 50L, 20, 30,
+                2L, 100L, 40, 60,
+                0L, 0L, null, null,
+                0L, 0L, null, null);
+    }
+
+    @Test
+    void upsertKeepsExistingExtremumWhenOneSideIsNull() {
+        SensorRollupServiceImpl service = new SensorRollupServiceImpl();
+        ReflectionTestUtils.setField(service, "jdbcTemplate", jdbcTemplate);
+
+        service.accumulate(List.of(reading("node-1", MINUTE, 20, 60, 300, 2)));
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate).batchUpdate(sql.capture(), ArgumentMatchers.<List<Object[]>>any());
+        assertThat(sql.getValue())
+                .contains("temperature_count = temperature_count + VALUES(temperature_count)")
+                .contains("temperature_min = LEAST(COALESCE(temperature_min, VALUES(temperature_min)), "
+                        + "COALESCE(VALUES(temperature_min), temperature_min))");
+        assertThat(sql.getValue().chars().filter(c -> c == '?').count()).isEqualTo(19);
+        assertThat(rows()).extracting(row -> row[0]).containsExactly("MINUTE", "HOUR", "DAY");
+    }
+
+    @Test
+    void averagesOverSamplesThatCarryTheMetric() {
+        SensorRollupEntity entity = new SensorRollupEntity();
+        entity.setBucket(RollupBucket.HOUR);
+        entity.setBucketStart(MINUTE.withMinute(0));
+        entity.setSampleCount(4L);
+        entity.setTemperatureCount(2L);
+        entity.setTemperatureSum(50L);
+        entity.setTemperatureMin(20);
+        entity.setTemperatureMax(30);
+        entity.setHumidityCount(0L);
+        entity.setHumiditySum(0L);
+        entity.setLightCount(4L);
+        entity.setLightSum(1200L);
+        entity.setWindCount(0L);
+        entity.setWindSum(0L);
+
+        SensorAggregateDTO dto = new SensorAggregateDTOConverter().toSensorAggregateDTO(entity);
+
+        assertThat(dto.getCount()).isEqualTo(4L);
+        assertThat(dto.getTemperature().getAvg()).isEqualTo(25.0);
+        assertThat(dto.getHumidity().getAvg()).isNull();
+        assertThat(dto.getHumidity().getMin()).isNull();
+        assertThat(dto.getLight().getAvg()).isEqualTo(300.0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object[]> rows() {
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(anyString(), rows.capture());
+        return rows.getValue();
+    }
+}
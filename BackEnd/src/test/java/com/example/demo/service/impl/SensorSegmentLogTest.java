@@ -0,0 +1,164 @@
+package com.example.demo.service.impl;
+
+import com.example.demo.repository.entity.SensorEntity;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static com.example.demo.SensorFixtures.reading;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SensorSegmentLogTest {
+
+    // Nhỏ hơn kích thước tối thiểu nên mỗi segment chỉ chứa khoảng 15 bản ghi
+    private static final int SEGMENT_SIZE = 1;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysRecordsAfterCheckpointOnRestart() throws Exception {
+        SensorSegmentLog log = new SensorSegmentLog(directory, "shard-0", SEGMENT_SIZE, 8);
+        for (int i = 0; i < 5; i++) {
+            assertThat(log.append(reading("node-1", i))).isTrue();
+        }
+        List<SensorEntity> batch = new ArrayList<>();
+        assertThat(log.read(batch, 3, 0)).isEqualTo(3);
+        log.commit();
+
+        SensorSegmentLog reopened = new SensorSegmentLog(directory, "shard-0", SEGMENT_SIZE, 8);
+        assertThat(reopened.size()).isEqualTo(2);
+        List<SensorEntity> replayed = new ArrayList<>();
+        reopened.read(replayed, 10, 0);
+        assertThat(replayed).extracting(SensorEntity::getTemperature).containsExactly(3, 4);
+    }
+
+    @Test
+    void replaysReadButUncommittedRecords() throws Exception {
+        SensorSegmentLog log = new SensorSegmentLog(directory, "shard-0", SEGMENT_SIZE, 8);
+        for (int i = 0; i < 3; i++) {
+            log.append(reading("node-1", i));
+        }
+        log.read(new ArrayList<>(), 3, 0);
+
+        // Batch chưa ghi được xuống DB thì process dừng: phải đọc lại được cả ba
+        SensorSegmentLog reopened = new SensorSegmentLog(directory, "shard-0", SEGMENT_SIZE, 8);
+        assertThat(reopened.size()).isEqualTo(3);
+    }
+
+    @Test
+    void keepsMissingMetricsAndDeviceIdAcrossRestart() throws Exception {
+        SensorSegmentLog log = new SensorSegmentLog(directory, "shard-0", SEGMENT_SIZE, 8);
+        SensorEntity partial = new SensorEntity();
+        partial.setHumidity(61);
+        partial.setTimestamp(LocalDateTime.of(2024, 3, 1, 12, 30, 15));
+        log.append(partial);
+        log.append(new SensorEntity());
+
+        List<SensorEntity> replayed = new ArrayList<>();
+        new SensorSegmentLog(directory, "shard-0", SEGMENT_SIZE, 8).read(replayed, 10, 0);
+        assertThat(replayed).hasSize(2);
+        assertThat(replayed.get(0).getHumidity()).isEqualTo(61);
+        assertThat(replayed.get(0).getTemperature()).isNull();
+        assertThat(replayed.get(0).getDeviceId()).isNull();
+        assertThat(replayed.get(0).getTimestamp()).isEqualTo(partial.getTimestamp());
+        assertThat(replayed.get(1).getTimestamp()).isNull();
+    }
+
+    @Test
+    void deletesCommittedSegmentsAndContinuesAcrossSegments() throws Exception {
+        SensorSegmentLog log = new SensorSegmentLog(directory, "shard-0", SEGMENT_SIZE, 8);
+        for (int i = 0; i < 40; i++) {
+            assertThat(log.append(reading("node-1", i))).isTrue();
+        }
+        assertThat(segments()).hasSizeGreaterThan(1);
+
+        List<SensorEntity> batch = new ArrayList<>();
+        while (log.read(batch, 7, 0) > 0) {
+            log.commit();
+        }
+        assertThat(batch).extracting(SensorEntity::getTemperature).isSortedAccordingTo(Integer::compare).hasSize(40);
+        assertThat(segments()).hasSize(1);
+
+        SensorSegmentLog reopened = new SensorSegmentLog(directory, "shard-0", SEGMENT_SIZE, 8);
+        assertThat(reopened.size()).isZero();
+        reopened.append(reading("node-1", 40));
+        List<SensorEntity> next = new ArrayList<>();
+        reopened.read(next, 10, 0);
+        assertThat(next).extracting(SensorEntity::getTemperature).containsExactly(40);
+    }
+
+    @Test
+    void refusesAppendWhenSegmentLimitIsReachedUntilCommit() throws Exception {
+        SensorSegmentLog log = new SensorSegmentLog(directory, "shard-0", SEGMENT_SIZE, 2);
+        int appended = 0;
+        while (log.append(reading("node-1", appended))) {
+            appended++;
+        }
+        assertThat(appended).isPositive();
+        assertThat(log.size()).isEqualTo(appended);
+
+        log.read(new ArrayList<>(), appended, 0);
+        log.commit();
+        assertThat(log.append(reading("node-1", appended))).isTrue();
+    }
+
+    @Test
+    void replaysFromOldestRemainingSegmentWhenCheckpointIsCorrupt() throws Exception {
+        SensorSegmentLog log = new SensorSegmentLog(directory, "shard-0", SEGMENT_SIZE, 8);
+        for (int i = 0; i < 40; i++) {
+            log.append(reading("node-1", i));
+        }
+        List<SensorEntity> batch = new ArrayList<>();
+        log.read(batch, 20, 0);
+        log.commit();
+        assertThat(segments()).noneMatch(path -> path.endsWith("shard-0-000000000000.log"));
+
+        // Cả hai slot hỏng: đọc lại từ đầu segment cũ nhất còn lại, không mất bản ghi nào chưa checkpoint
+        Files.write(directory.resolve("shard-0.checkpoint"), new byte[48]);
+        SensorSegmentLog reopened = new SensorSegmentLog(directory, "shard-0", SEGMENT_SIZE, 8);
+        List<SensorEntity> replayed = new ArrayList<>();
+        reopened.read(replayed, 100, 0);
+        int first = replayed.get(0).getTemperature();
+        assertThat(first).isBetween(1, 20);
+        assertThat(replayed).extracting(SensorEntity::getTemperature)
+                .containsExactlyElementsOf(IntStream.range(first, 40).boxed().toList());
+        assertThat(segments()).noneMatch(path -> path.endsWith("shard-0-000000000000.log"));
+    }
+
+    @Test
+    void fallsBackToPreviousCheckpointWhenLatestSlotIsTorn() throws Exception {
+        SensorSegmentLog log = new SensorSegmentLog(directory, "shard-0", SEGMENT_SIZE, 8);
+        for (int i = 0; i < 6; i++) {
+            log.append(reading("node-1", i));
+        }
+        log.read(new ArrayList<>(), 2, 0);
+        log.commit();
+        log.read(new ArrayList<>(), 2, 0);
+        log.commit();
+
+        // Lần commit thứ hai ghi vào slot 0 (số thứ tự 2): làm hỏng CRC như khi crash giữa chừng
+        Path checkpoint = directory.resolve("shard-0.checkpoint");
+        byte[] content = Files.readAllBytes(checkpoint);
+        content[20] ^= 1;
+        Files.write(checkpoint, content);
+
+        SensorSegmentLog reopened = new SensorSegmentLog(directory, "shard-0", SEGMENT_SIZE, 8);
+        List<SensorEntity> replayed = new ArrayList<>();
+        reopened.read(replayed, 10, 0);
+        assertThat(replayed).extracting(SensorEntity::getTemperature).containsExactly(2, 3, 4, 5);
+    }
+
+    private List<Path> segments() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".log")).toList();
+        }
+    }
+}
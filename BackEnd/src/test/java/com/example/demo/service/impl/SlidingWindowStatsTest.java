@@ -0,0 +1,120 @@
+package com.example.demo.service.impl;
+
+import com.example.demo.model.MetricStatsDTO;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class SlidingWindowStatsTest {
+
+    private static final long[] WINDOWS = {10_000, 60_000};
+
+    private final MetricStatsDTO[] metrics = new MetricStatsDTO[SlidingWindowStats.METRICS];
+    private final long[] range = new long[2];
+
+    @Test
+    void expiresMinAndMaxWithTheSamplesThatHeldThem() {
+        SlidingWindowStats stats = new SlidingWindowStats(100, WINDOWS);
+        stats.add(0, 10, null, null, null);
+        stats.add(1_000, 40, null, null, null);
+        stats.add(5_000, 20, null, null, null);
+        stats.add(9_000, 30, null, null, null);
+
+        assertThat(stats.snapshot(0, 9_000, metrics, range)).isEqualTo(4);
+        assertThat(metrics[0].getMin()).isEqualTo(10);
+        assertThat(metrics[0].getMax()).isEqualTo(40);
+
+        // Mẫu 10 (t = 0) ra khỏi window 10s, rồi tới mẫu 40 (t = 1s)
+        stats.snapshot(0, 10_500, metrics, range);
+        assertThat(metrics[0].getMin()).isEqualTo(20);
+        assertThat(metrics[0].getMax()).isEqualTo(40);
+        assertThat(stats.snapshot(0, 11_500, metrics, range)).isEqualTo(2);
+        assertThat(metrics[0].getMin()).isEqualTo(20);
+        assertThat(metrics[0].getMax()).isEqualTo(30);
+        assertThat(range).containsExactly(5_000, 9_000);
+
+        // Window dài hơn vẫn giữ đủ mẫu
+        assertThat(stats.snapshot(1, 11_500, metrics, range)).isEqualTo(4);
+        assertThat(metrics[0].getMin()).isEqualTo(10);
+    }
+
+    @Test
+    void emptiesWindowWhenAllSamplesExpire() {
+        SlidingWindowStats stats = new SlidingWindowStats(100, WINDOWS);
+        stats.add(0, 10, 20, 30, 40);
+
+        assertThat(stats.snapshot(0, 20_000, metrics, range)).isZero();
+        assertThat(metrics[0].getCount()).isZero();
+        assertThat(metrics[0].getAvg()).isNull();
+        assertThat(range).containsExactly(0, 0);
+    }
+
+    @Test
+    void dropsOldestSamplesBeyondCapacityBeforeTheyExpire() {
+        SlidingWindowStats stats = new SlidingWindowStats(4, WINDOWS);
+        for (int i = 0; i < 6; i++) {
+            stats.add(i * 1_000L, i, null, null, null);
+        }
+
+        assertThat(stats.snapshot(1, 5_000, metrics, range)).isEqualTo(4);
+        assertThat(metrics[0].getMin()).isEqualTo(2);
+        assertThat(metrics[0].getAvg()).isEqualTo(3.5);
+        assertThat(range).containsExactly(2_000, 5_000);
+    }
+
+    @Test
+    void matchesBruteForceOnRandomSeries() {
+        int capacity = 50;
+        SlidingWindowStats stats = new SlidingWindowStats(capacity, WINDOWS);
+        List<long[]> samples = new ArrayList<>();
+        Random random = new Random(7);
+        long time = 0;
+        long now = 0;
+        for (int i = 0; i < 3000; i++) {
+            time += random.nextInt(2_000);
+            Integer temperature = random.nextInt(10) == 0 ? null : 20 + random.nextInt(15);
+            int humidity = 40 + random.nextInt(50);
+            stats.add(time, temperature, humidity, null, null);
+            samples.add(new long[]{time, temperature != null ? temperature : Long.MIN_VALUE, humidity});
+
+            // Như trong LiveStatsServiceImpl: thời điểm đọc không lùi lại
+            now = Math.max(now, time + random.nextInt(3_000));
+            for (int window = 0; window < WINDOWS.length; window++) {
+                long count = stats.snapshot(window, now, metrics, range);
+                long cutoff = now - WINDOWS[window];
+                List<long[]> expected = samples.subList(Math.max(0, samples.size() - capacity), samples.size())
+                        .stream().filter(sample -> sample[0] >= cutoff).toList();
+                assertThat(count).isEqualTo(expected.size());
+                assertMatches(metrics[0], expected, 1);
+                assertMatches(metrics[1], expected, 2);
+                assertThat(metrics[2].getCount()).isZero();
+            }
+        }
+    }
+
+    private static void assertMatches(MetricStatsDTO actual, List<long[]> samples, int column) {
+        List<long[]> present = samples.stream().filter(sample -> sample[column] != Long.MIN_VALUE).toList();
+        assertThat(actual.getCount()).isEqualTo(present.size());
+        if (present.isEmpty()) {
+            return;
+        }
+        double mean = present.stream().mapToLong(sample -> sample[column]).average().orElseThrow();
+        double variance = present.stream().mapToDouble(sample -> Math.pow(sample[column] - mean, 2)).sum() / present.size();
+        assertThat(actual.getAvg()).isCloseTo(mean, within(1e-9));
+        assertThat(actual.getStddev()).isCloseTo(Math.sqrt(variance), within(1e-6));
+        assertThat(actual.getMin()).isEqualTo((int) present.stream().mapToLong(sample -> sample[column]).min().orElseThrow());
+        assertThat(actual.getMax()).isEqualTo((int) present.stream().mapToLong(sample -> sample[column]).max().orElseThrow());
+
+        double meanTime = present.stream().mapToDouble(sample -> sample[0] / 1000.0).average().orElseThrow();
+        double covariance = present.stream().mapToDouble(sample -> (sample[0] / 1000.0 - meanTime) * (sample[column] - mean)).sum();
+        double timeVariance = present.stream().mapToDouble(sample -> Math.pow(sample[0] / 1000.0 - meanTime, 2)).sum();
+        if (present.size() > 1 && timeVariance > 1e-6) {
+            assertThat(actual.getRatePerMinute()).isCloseTo(covariance / timeVariance * 60, within(1e-6));
+        }
+    }
+}